@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Limits the number of analyses running at the same time. The analyses exceeding the limit wait in a bounded queue and
+ * are started in the order in which they were admitted as the running ones finish. Once the queue is full, new analyses
+ * are rejected, so that a burst of requests can't exhaust the memory and the temporary disk space of the service.
+ */
+@ApplicationScoped
+public class AdmissionController {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionController.class);
+
+    @Inject
+    AnalysisExecutor executor;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "analysis.max-concurrent", defaultValue = "4")
+    int maxConcurrent;
+
+    @ConfigProperty(name = "analysis.max-queued", defaultValue = "16")
+    int maxQueued;
+
+    @ConfigProperty(name = "analysis.retry-after", defaultValue = "60s")
+    Duration retryAfter;
+
+    private final Deque<PendingAnalysis> queue = new ArrayDeque<>();
+
+    private int running;
+
+    private Timer waitTimer;
+
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("analysis.queue.depth", this, AdmissionController::getQueueDepth)
+                .description("Number of analyses waiting to be started")
+                .register(registry);
+        Gauge.builder("analysis.running", this, AdmissionController::getRunning)
+                .description("Number of running analyses")
+                .register(registry);
+        waitTimer = Timer.builder("analysis.queue.wait")
+                .description("Time the analyses spent waiting to be started")
+                .register(registry);
+        rejectedCounter = Counter.builder("analysis.rejected")
+                .description("Number of analyses rejected because the queue was full")
+                .register(registry);
+
+        LOGGER.info("Running up to {} analyses with up to {} analyses queued", maxConcurrent, maxQueued);
+    }
+
+    /**
+     * Starts the analysis if fewer than the maximum number of analyses are running, or queues it otherwise.
+     *
+     * @param id ID of the analysis
+     * @param analysis the analysis
+     * @param cancelled run instead of the analysis if it is cancelled while it is queued
+     * @return false if the analysis was rejected because the queue is full, true otherwise
+     */
+    public boolean submit(String id, Runnable analysis, Runnable cancelled) {
+        // Capture the context of the request, the analysis may be started from the thread of another analysis
+        PendingAnalysis pending = new PendingAnalysis(id, executor.contextualRunnable(analysis), cancelled);
+
+        synchronized (this) {
+            if (running >= maxConcurrent) {
+                if (queue.size() >= maxQueued) {
+                    rejectedCounter.increment();
+                    LOGGER.warn("Analysis with ID {} was rejected, {} analyses are already queued", id, queue.size());
+                    return false;
+                }
+
+                queue.addLast(pending);
+                LOGGER.info("Analysis with ID {} was queued at position {}", id, queue.size());
+                return true;
+            }
+
+            running++;
+        }
+
+        start(pending);
+        return true;
+    }
+
+    /**
+     * Removes the analysis from the queue, if it was not started yet, and runs its cancel action.
+     *
+     * @param id ID of the analysis
+     * @return true if the analysis was waiting in the queue, false otherwise
+     */
+    public boolean cancel(String id) {
+        PendingAnalysis cancelled = null;
+
+        synchronized (this) {
+            Iterator<PendingAnalysis> it = queue.iterator();
+
+            while (it.hasNext()) {
+                PendingAnalysis pending = it.next();
+
+                if (pending.id.equals(id)) {
+                    it.remove();
+                    cancelled = pending;
+                    break;
+                }
+            }
+        }
+
+        if (cancelled == null) {
+            return false;
+        }
+
+        LOGGER.info("Queued analysis with ID {} was cancelled", id);
+        cancelled.cancelled.run();
+        return true;
+    }
+
+    /**
+     * @return the duration after which the rejected clients should retry
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    private void start(PendingAnalysis pending) {
+        waitTimer.record(System.nanoTime() - pending.queuedAt, TimeUnit.NANOSECONDS);
+
+        try {
+            executor.runAsync(pending.analysis).whenComplete((result, throwable) -> finished());
+        } catch (RuntimeException e) {
+            LOGGER.error("Analysis with ID {} couldn't be started", pending.id, e);
+            finished();
+        }
+    }
+
+    private void finished() {
+        PendingAnalysis next;
+
+        synchronized (this) {
+            next = queue.pollFirst();
+
+            if (next == null) {
+                running--;
+                return;
+            }
+        }
+
+        LOGGER.info("Starting queued analysis with ID {}", next.id);
+        start(next);
+    }
+
+    private static final class PendingAnalysis {
+        private final String id;
+
+        private final Runnable analysis;
+
+        private final Runnable cancelled;
+
+        private final long queuedAt = System.nanoTime();
+
+        private PendingAnalysis(String id, Runnable analysis, Runnable cancelled) {
+            this.id = id;
+            this.analysis = analysis;
+            this.cancelled = cancelled;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+
+/**
+ * Resources one analysis may use, shared by all its URLs. The downloaded bytes are charged as the deliverables are
+ * downloaded, and the files and their bytes as DistributionAnalyzer checksums them. Only the archives found in the
+ * deliverables are checksummed and looked up, and those are also the files which are unpacked to disk to analyze
+ * their content, so the file budgets also bound the memory taken by the checksums and the lookups.
+ */
+public final class AnalysisBudget {
+    private final long maxDownloadedBytes;
+
+    private final long maxExtractedBytes;
+
+    private final long maxFiles;
+
+    private final AtomicLong downloadedBytes = new AtomicLong();
+
+    private final AtomicLong extractedBytes = new AtomicLong();
+
+    private final AtomicLong files = new AtomicLong();
+
+    private final AtomicReference<BudgetExceededException> exceeded = new AtomicReference<>();
+
+    /**
+     * @param maxDownloadedBytes the maximum number of bytes downloaded by the analysis, or {@link Long#MAX_VALUE}
+     * @param maxExtractedBytes the maximum size of the checksummed files, or {@link Long#MAX_VALUE}
+     * @param maxFiles the maximum number of checksummed files, or {@link Long#MAX_VALUE}
+     */
+    public AnalysisBudget(long maxDownloadedBytes, long maxExtractedBytes, long maxFiles) {
+        this.maxDownloadedBytes = maxDownloadedBytes;
+        this.maxExtractedBytes = maxExtractedBytes;
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * @return a budget with the same limits and nothing used yet
+     */
+    public AnalysisBudget renew() {
+        return new AnalysisBudget(maxDownloadedBytes, maxExtractedBytes, maxFiles);
+    }
+
+    /**
+     * Charges downloaded bytes.
+     *
+     * @param bytes the number of bytes
+     * @throws BudgetExceededException if the analysis downloaded too much
+     */
+    public void chargeDownload(long bytes) {
+        if (downloadedBytes.addAndGet(bytes) > maxDownloadedBytes) {
+            exceed(
+                    new BudgetExceededException(
+                            "Analysis downloaded more than " + maxDownloadedBytes + " bytes",
+                            false));
+        }
+    }
+
+    /**
+     * Charges a file checksummed by DistributionAnalyzer. DistributionAnalyzer queues a checksum of each configured
+     * type for every file, so a file is only charged for its MD5 checksum, which the lookups always use.
+     *
+     * @param checksum a checksum of the file
+     * @throws BudgetExceededException if the analysis checksummed too many files or too many bytes
+     */
+    public void chargeFile(Checksum checksum) {
+        if (checksum.getValue() == null || checksum.getType() != ChecksumType.md5) {
+            return;
+        }
+
+        long fileCount = files.incrementAndGet();
+        long bytes = extractedBytes.addAndGet(Math.max(checksum.getFileSize(), 0L));
+
+        if (fileCount > maxFiles) {
+            exceed(new BudgetExceededException("Analysis found more than " + maxFiles + " archives", true));
+        }
+
+        if (bytes > maxExtractedBytes) {
+            exceed(
+                    new BudgetExceededException(
+                            "Archives found by the analysis take more than " + maxExtractedBytes + " bytes",
+                            true));
+        }
+    }
+
+    /**
+     * @throws BudgetExceededException if the budget was exceeded
+     */
+    public void throwIfExceeded() {
+        BudgetExceededException e = exceeded.get();
+
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    public long getDownloadedBytes() {
+        return downloadedBytes.get();
+    }
+
+    public long getExtractedBytes() {
+        return extractedBytes.get();
+    }
+
+    public long getFiles() {
+        return files.get();
+    }
+
+    private void exceed(BudgetExceededException e) {
+        exceeded.compareAndSet(null, e);
+        throw exceeded.get();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.pnc.deliverablesanalyzer.model.AnalysisLookups;
+import org.jboss.pnc.deliverablesanalyzer.model.Attributions;
+
+/**
+ * State of a running analysis shared by the analyses of all its URLs.
+ */
+public class AnalysisContext {
+    private final String id;
+
+    private final Attributions baseline;
+
+    private final AnalysisLookups lookups;
+
+    private final CancellationToken cancellationToken;
+
+    private final Path scratchDirectory;
+
+    private final AnalysisBudget budget;
+
+    private final AtomicLong deletedAfterCancel;
+
+    /**
+     * @param id ID of the analysis
+     * @param baseline the attributions of the baseline analysis, or null
+     * @param scratchDirectory the directory for the temporary files of the analysis, deleted once it is finished
+     * @param budget the budget of the analysis
+     */
+    public AnalysisContext(String id, Attributions baseline, Path scratchDirectory, AnalysisBudget budget) {
+        this(id, baseline, new CancellationToken(), scratchDirectory, budget, new AtomicLong());
+    }
+
+    private AnalysisContext(
+            String id,
+            Attributions baseline,
+            CancellationToken cancellationToken,
+            Path scratchDirectory,
+            AnalysisBudget budget,
+            AtomicLong deletedAfterCancel) {
+        this.id = id;
+        this.baseline = baseline;
+        this.lookups = new AnalysisLookups(baseline);
+        this.cancellationToken = cancellationToken;
+        this.scratchDirectory = scratchDirectory;
+        this.budget = budget;
+        this.deletedAfterCancel = deletedAfterCancel;
+    }
+
+    /**
+     * Creates the context of a new attempt of the same analysis, which is cancelled together with this one, but has
+     * its own lookups and a renewed budget.
+     *
+     * @return the context
+     */
+    public AnalysisContext retry() {
+        return new AnalysisContext(
+                id,
+                baseline,
+                cancellationToken,
+                scratchDirectory,
+                budget.renew(),
+                deletedAfterCancel);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public AnalysisLookups getLookups() {
+        return lookups;
+    }
+
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    public Path getScratchDirectory() {
+        return scratchDirectory;
+    }
+
+    public AnalysisBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Records the size of temporary files deleted once the analysis was cancelled, before the scratch directory is.
+     *
+     * @param bytes the size of the files
+     */
+    public void addDeletedAfterCancel(long bytes) {
+        deletedAfterCancel.addAndGet(bytes);
+    }
+
+    /**
+     * @return the size of the temporary files deleted once the analysis was cancelled, before the scratch directory
+     */
+    public long getDeletedAfterCancel() {
+        return deletedAfterCancel.get();
+    }
+
+    /**
+     * Creates a directory for the temporary files of a URL in the scratch directory.
+     *
+     * @return the directory
+     * @throws IOException if the directory can't be created
+     */
+    public Path createUrlDirectory() throws IOException {
+        return Files.createTempDirectory(scratchDirectory, "url-");
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ManagedExecutor;
+import org.eclipse.microprofile.context.ThreadContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Executor running the analyses and the analysis of each of their URLs. These tasks spend most of their time blocked
+ * on downloads and on Koji and PNC calls, so in the {@link ExecutionMode#VIRTUAL} mode, each task gets its own virtual
+ * thread instead of occupying a thread of the shared {@link ManagedExecutor}. The thread context and the MDC of the
+ * submitting thread are propagated in both modes.
+ */
+@ApplicationScoped
+public class AnalysisExecutor implements Executor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnalysisExecutor.class);
+
+    public enum ExecutionMode {
+        PLATFORM, VIRTUAL
+    }
+
+    @Inject
+    ManagedExecutor managedExecutor;
+
+    @Inject
+    ThreadContext threadContext;
+
+    @ConfigProperty(name = "analysis.execution-mode", defaultValue = "PLATFORM")
+    ExecutionMode executionMode;
+
+    private ExecutorService virtualThreadExecutor;
+
+    public AnalysisExecutor() {
+    }
+
+    /**
+     * Creates an executor outside of CDI, which must be initialized with {@link #init()}.
+     *
+     * @param managedExecutor the executor of the platform mode
+     * @param threadContext the thread context to propagate
+     * @param executionMode the execution mode
+     */
+    public AnalysisExecutor(ManagedExecutor managedExecutor, ThreadContext threadContext, ExecutionMode executionMode) {
+        this.managedExecutor = managedExecutor;
+        this.threadContext = threadContext;
+        this.executionMode = executionMode;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (executionMode == ExecutionMode.VIRTUAL) {
+            virtualThreadExecutor = newVirtualThreadExecutor().orElse(null);
+
+            if (virtualThreadExecutor == null) {
+                LOGGER.warn(
+                        "Virtual threads are not supported by Java {}, falling back to platform threads",
+                        System.getProperty("java.version"));
+            }
+        }
+
+        LOGGER.info("Running analyses on {} threads", virtualThreadExecutor != null ? "virtual" : "platform");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.execute(contextualRunnable(command));
+        } else {
+            // The managed executor propagates the thread context, but not the MDC
+            managedExecutor.execute(withMdc(command));
+        }
+    }
+
+    public CompletableFuture<Void> runAsync(Runnable runnable) {
+        if (virtualThreadExecutor != null) {
+            return CompletableFuture.runAsync(runnable, this);
+        }
+
+        return managedExecutor.runAsync(withMdc(runnable));
+    }
+
+    /**
+     * Wraps the runnable, so that it runs with the thread context and the MDC of the current thread.
+     *
+     * @param runnable the runnable
+     * @return the wrapped runnable
+     */
+    public Runnable contextualRunnable(Runnable runnable) {
+        return threadContext.contextualRunnable(withMdc(runnable));
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for each task. The project is built for Java 17, so the factory
+     * method is looked up at runtime.
+     *
+     * @return the executor, or empty if the running Java doesn't support virtual threads
+     */
+    public static Optional<ExecutorService> newVirtualThreadExecutor() {
+        try {
+            return Optional
+                    .of((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Unable to create virtual thread executor", e);
+            return Optional.empty();
+        }
+    }
+
+    private static Runnable withMdc(Runnable command) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+
+        return () -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+
+            if (context != null) {
+                MDC.setContextMap(context);
+            } else {
+                MDC.clear();
+            }
+
+            try {
+                command.run();
+            } finally {
+                if (previous != null) {
+                    MDC.setContextMap(previous);
+                } else {
+                    MDC.clear();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Owns all the tasks of a single analysis. The scope is joined by the thread that opened it, and whenever a task fails,
+ * the analysis is cancelled or its deadline passes, all the sibling tasks are interrupted. Closing the scope waits
+ * until no task is running anymore, so the threads and the files they work on are released before the analysis
+ * reports its result.
+ *
+ * @param <T> the result type of the tasks
+ */
+public final class AnalysisScope<T> implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnalysisScope.class);
+
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30L);
+
+    private final Future<T> cancelMarker = CompletableFuture.completedFuture(null);
+
+    private final BlockingQueue<Future<T>> completedTasks = new LinkedBlockingQueue<>();
+
+    private final CompletionService<T> completionService;
+
+    private final List<Future<T>> tasks = new CopyOnWriteArrayList<>();
+
+    private final long deadlineNanos;
+
+    private final Object lock = new Object();
+
+    private int running;
+
+    private boolean shutdown;
+
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a new scope.
+     *
+     * @param executor the executor running the tasks
+     * @param timeout the maximum duration of the whole scope, or null if the scope has no deadline
+     */
+    public AnalysisScope(Executor executor, Duration timeout) {
+        this.completionService = new ExecutorCompletionService<>(executor, completedTasks);
+        this.deadlineNanos = timeout != null ? System.nanoTime() + timeout.toNanos() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Submits a new task to the scope.
+     *
+     * @param task the task
+     * @return the future of the task
+     */
+    public Future<T> fork(Callable<T> task) {
+        Future<T> future = completionService.submit(track(task));
+        tasks.add(future);
+        return future;
+    }
+
+    /**
+     * Waits for all the forked tasks and returns their results in the order in which they complete. If any task fails,
+     * the remaining tasks are cancelled before the failure is rethrown.
+     *
+     * @return the results of all the tasks
+     * @throws InterruptedException if the waiting thread was interrupted
+     * @throws ExecutionException if any of the tasks failed
+     * @throws TimeoutException if the deadline of the scope passed
+     * @throws CancellationException if the scope was cancelled
+     */
+    public List<T> join() throws InterruptedException, ExecutionException, TimeoutException {
+        int total = tasks.size();
+        List<T> results = new ArrayList<>(total);
+
+        while (results.size() < total) {
+            Future<T> futureTask = deadlineNanos == Long.MAX_VALUE ? completedTasks.take()
+                    : completedTasks.poll(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+            if (futureTask == null) {
+                shutdown();
+                throw new TimeoutException("Deadline of the analysis passed");
+            }
+
+            if (cancelled) {
+                shutdown();
+                throw new CancellationException("Operation was cancelled manually");
+            }
+
+            try {
+                results.add(futureTask.get());
+            } catch (ExecutionException | CancellationException e) {
+                shutdown();
+                throw e;
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Cancels the scope. The thread joining the scope wakes up immediately and cancels all the tasks.
+     */
+    public void cancel() {
+        cancelled = true;
+        completedTasks.add(cancelMarker);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Interrupts all the tasks which are still running and prevents the queued ones from starting.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            if (shutdown) {
+                return;
+            }
+
+            shutdown = true;
+        }
+
+        List<Future<T>> remaining = tasks.stream().filter(future -> !future.isDone()).toList();
+
+        if (!remaining.isEmpty()) {
+            LOGGER.info("Cancelling all remaining tasks: {}", remaining.size());
+            remaining.forEach(future -> future.cancel(true));
+            LOGGER.info("All remaining tasks were cancelled");
+        }
+    }
+
+    /**
+     * Shuts the scope down and waits until none of its tasks is running.
+     */
+    @Override
+    public void close() {
+        shutdown();
+
+        long remainingNanos = SHUTDOWN_TIMEOUT.toNanos();
+        long end = System.nanoTime() + remainingNanos;
+        boolean interrupted = false;
+
+        synchronized (lock) {
+            while (running > 0 && remainingNanos > 0L) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(lock, remainingNanos);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+
+                remainingNanos = end - System.nanoTime();
+            }
+
+            if (running > 0) {
+                LOGGER.warn("{} tasks are still running {} after the analysis was closed", running, SHUTDOWN_TIMEOUT);
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Callable<T> track(Callable<T> task) {
+        return () -> {
+            synchronized (lock) {
+                if (shutdown) {
+                    throw new CancellationException("The analysis was already shut down");
+                }
+
+                running++;
+            }
+
+            try {
+                return task.call();
+            } finally {
+                synchronized (lock) {
+                    running--;
+                    lock.notifyAll();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.infinispan.commons.api.BasicCache;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.build.finder.koji.KojiBuild;
+import org.jboss.pnc.build.finder.koji.KojiJSONUtils;
+import org.jboss.pnc.deliverablesanalyzer.model.Attributions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Cache of the build attributions of the analyses keyed by the ID of the analysis, which the analyses of new versions
+ * of the deliverables use as their baseline. The attributions are kept as the JSON of their builds, so they are bounded
+ * and shared by the caches of Infinispan like the results of the analyses. The entries expire after
+ * {@code analysis.attributions-cache.lifespan}.
+ */
+@ApplicationScoped
+public class AttributionsCache {
+    public static final String CACHE_NAME = "attributions";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AttributionsCache.class);
+
+    @Inject
+    BuildConfig config;
+
+    @Inject
+    CacheStartup cacheStartup;
+
+    @ConfigProperty(name = "analysis.attributions-cache.lifespan", defaultValue = "1d")
+    Duration lifespan;
+
+    private boolean disabled;
+
+    @PostConstruct
+    public void init() {
+        if (Boolean.TRUE.equals(config.getDisableCache())) {
+            LOGGER.info("Attributions cache disabled, the baselines of the analyses are not used");
+            disabled = true;
+        }
+    }
+
+    /**
+     * Returns the attributions of an analysis.
+     *
+     * @param id the ID of the analysis
+     * @return the attributions, or null if the analysis is unknown, has expired, or the cache is not started yet
+     */
+    public Attributions get(String id) {
+        BasicCache<String, String> cache = getCache();
+
+        if (cache == null) {
+            LOGGER.debug("Attributions cache is not available, the baseline {} is not used", id);
+            return null;
+        }
+
+        String json = cache.get(id);
+
+        if (json == null) {
+            return null;
+        }
+
+        try {
+            return fromJson(json);
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Removing unreadable attributions {} from the cache", id, e);
+            cache.remove(id);
+            return null;
+        }
+    }
+
+    /**
+     * Records the attributions of an analysis. The analysis doesn't wait for the write.
+     *
+     * @param id the ID of the analysis
+     * @param attributions the attributions
+     */
+    public void put(String id, Attributions attributions) {
+        BasicCache<String, String> cache = getCache();
+
+        if (cache == null) {
+            return;
+        }
+
+        try {
+            cache.putAsync(id, toJson(attributions), lifespan.toMillis(), TimeUnit.MILLISECONDS)
+                    .whenComplete((result, e) -> {
+                        if (e != null) {
+                            LOGGER.warn("Failed to cache attributions {}: {}", id, e.getMessage());
+                        }
+                    });
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Unable to cache attributions {}", id, e);
+        }
+    }
+
+    private BasicCache<String, String> getCache() {
+        return disabled ? null : cacheStartup.getCache(CACHE_NAME);
+    }
+
+    static String toJson(Attributions attributions) throws JsonProcessingException {
+        Builds builds = new Builds();
+        builds.builds = attributions.toBuilds();
+        return KojiJSONUtils.writeValueAsString(builds);
+    }
+
+    static Attributions fromJson(String json) throws JsonProcessingException {
+        return Attributions.fromBuilds(KojiJSONUtils.readValue(json, Builds.class).builds);
+    }
+
+    /**
+     * JSON of the attributions, the builds keyed like in the result of Build Finder.
+     */
+    public static final class Builds {
+        public Map<BuildSystemInteger, KojiBuild> builds;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+import org.infinispan.client.hotrod.MetadataValue;
+import org.infinispan.client.hotrod.configuration.NearCacheConfiguration;
+import org.infinispan.client.hotrod.near.NearCache;
+import org.infinispan.client.hotrod.near.NearCacheFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Creates the near caches of one remote cache. The Hot Rod client keeps the near cache consistent with the server
+ * through the invalidation events of the server, but the events of a lost connection are never received, so the
+ * entries are also dropped once they are older than the max staleness. The near cache holds at most the max entries of
+ * the configuration, evicting the least useful entries first.
+ */
+public class BoundedNearCacheFactory implements NearCacheFactory {
+    private final Duration maxStaleness;
+
+    private final Ticker ticker;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private volatile BoundedNearCache<?, ?> current;
+
+    /**
+     * Creates the factory of the near caches of a remote cache.
+     *
+     * @param cacheName the name of the remote cache
+     * @param maxStaleness the time after which an entry is fetched again from the server
+     * @param registry the registry of the metrics of the near cache
+     */
+    public BoundedNearCacheFactory(String cacheName, Duration maxStaleness, MeterRegistry registry) {
+        this(cacheName, maxStaleness, registry, Ticker.systemTicker());
+    }
+
+    BoundedNearCacheFactory(String cacheName, Duration maxStaleness, MeterRegistry registry, Ticker ticker) {
+        this.maxStaleness = maxStaleness;
+        this.ticker = ticker;
+        hits = Counter.builder("infinispan.near-cache.hits")
+                .description("Number of reads served by the near cache, each saving a round-trip to the server")
+                .tag("cache", cacheName)
+                .register(registry);
+        misses = Counter.builder("infinispan.near-cache.misses")
+                .description("Number of reads which went to the server")
+                .tag("cache", cacheName)
+                .register(registry);
+        Gauge.builder("infinispan.near-cache.hit-ratio", this, BoundedNearCacheFactory::getHitRatio)
+                .description("Fraction of the reads served by the near cache")
+                .tag("cache", cacheName)
+                .register(registry);
+        Gauge.builder("infinispan.near-cache.size", this, factory -> {
+            BoundedNearCache<?, ?> nearCache = factory.current;
+            return nearCache != null ? nearCache.size() : 0.0d;
+        }).description("Number of entries in the near cache").tag("cache", cacheName).register(registry);
+        FunctionCounter.builder("infinispan.near-cache.evictions", this, factory -> {
+            BoundedNearCache<?, ?> nearCache = factory.current;
+            return nearCache != null ? nearCache.cache.stats().evictionCount() : 0.0d;
+        }).description("Number of entries evicted for size or staleness").tag("cache", cacheName).register(registry);
+    }
+
+    @Override
+    public <K, V> NearCache<K, V> createNearCache(
+            NearCacheConfiguration config,
+            BiConsumer<K, MetadataValue<V>> removedConsumer) {
+        Cache<K, MetadataValue<V>> cache = Caffeine.newBuilder()
+                .maximumSize(config.maxEntries())
+                .expireAfterWrite(maxStaleness)
+                .ticker(ticker)
+                .recordStats()
+                .<K, MetadataValue<V>> removalListener((key, value, cause) -> removedConsumer.accept(key, value))
+                .build();
+        BoundedNearCache<K, V> nearCache = new BoundedNearCache<>(cache);
+
+        // The client creates a new near cache whenever it restarts the remote cache
+        current = nearCache;
+        return nearCache;
+    }
+
+    double getHitRatio() {
+        double reads = hits.count() + misses.count();
+        return reads > 0.0d ? hits.count() / reads : 0.0d;
+    }
+
+    private final class BoundedNearCache<K, V> implements NearCache<K, V> {
+        private final Cache<K, MetadataValue<V>> cache;
+
+        private final ConcurrentMap<K, MetadataValue<V>> map;
+
+        private BoundedNearCache(Cache<K, MetadataValue<V>> cache) {
+            this.cache = cache;
+            this.map = cache.asMap();
+        }
+
+        @Override
+        public boolean putIfAbsent(K key, MetadataValue<V> value) {
+            return map.putIfAbsent(key, value) == null;
+        }
+
+        @Override
+        public boolean replace(K key, MetadataValue<V> prevValue, MetadataValue<V> newValue) {
+            return map.replace(key, prevValue, newValue);
+        }
+
+        @Override
+        public boolean remove(K key) {
+            return map.remove(key) != null;
+        }
+
+        @Override
+        public boolean remove(K key, MetadataValue<V> value) {
+            return map.remove(key, value);
+        }
+
+        @Override
+        public MetadataValue<V> get(K key) {
+            MetadataValue<V> value = map.get(key);
+
+            if (value != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+            }
+
+            return value;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public int size() {
+            return Math.toIntExact(cache.estimatedSize());
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, MetadataValue<V>>> iterator() {
+            return map.entrySet().iterator();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import org.jboss.pnc.api.dto.exception.ReasonedException;
+import org.jboss.pnc.api.enums.ResultStatus;
+
+/**
+ * Exception thrown when an analysis exceeds its {@link AnalysisBudget}.
+ */
+public class BudgetExceededException extends ReasonedException {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean degradable;
+
+    /**
+     * @param reason the exceeded limit
+     * @param degradable whether the analysis can fit the budget if it doesn't analyze the content of nested archives
+     */
+    public BudgetExceededException(String reason, boolean degradable) {
+        super(ResultStatus.FAILED, reason, "Please analyze smaller deliverables or raise the analysis budget.", null);
+        this.degradable = degradable;
+    }
+
+    public boolean isDegradable() {
+        return degradable;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.infinispan.Cache;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.build.finder.core.ConfigDefaults;
+import org.jboss.pnc.common.concurrent.MDCScheduledThreadPoolExecutor;
+import org.jboss.pnc.common.concurrent.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Removes the expired entries of the embedded caches from memory and from their stores, which the expiration reaper
+ * doesn't do as it is disabled. Removing the entries lets the store compact its files once they exceed the compaction
+ * threshold. The maintenance runs every interval, once no more than the max running analyses are running, and anyway
+ * once it is late by another interval, so that it doesn't slow down the analyses but can't be postponed forever.
+ */
+@ApplicationScoped
+public class CacheMaintenance {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheMaintenance.class);
+
+    private static final Duration CHECK_INTERVAL = Duration.ofMinutes(1L);
+
+    @Inject
+    AdmissionController admissionController;
+
+    @Inject
+    BuildConfig config;
+
+    @Inject
+    CacheStartup cacheStartup;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "infinispan.embedded.maintenance.interval", defaultValue = "6h")
+    Duration interval;
+
+    @ConfigProperty(name = "infinispan.embedded.maintenance.max-running", defaultValue = "0")
+    int maxRunning;
+
+    @ConfigProperty(name = "infinispan.mode")
+    CacheProvider.InfinispanMode infinispanMode;
+
+    private volatile Instant lastRun = Instant.now();
+
+    private ScheduledExecutorService scheduler;
+
+    public void onStart(@Observes StartupEvent event) {
+        if (infinispanMode != CacheProvider.InfinispanMode.EMBEDDED || Boolean.TRUE.equals(config.getDisableCache())) {
+            return;
+        }
+
+        scheduler = new MDCScheduledThreadPoolExecutor(1, new NamedThreadFactory("cache-maintenance"));
+        scheduler.scheduleWithFixedDelay(
+                this::check,
+                CHECK_INTERVAL.toMillis(),
+                CHECK_INTERVAL.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns whether the maintenance should run now.
+     *
+     * @param now the current time
+     * @param running the number of running analyses
+     * @return true if the maintenance is due and the load is low, or it is late by another interval
+     */
+    boolean isDue(Instant now, int running) {
+        Duration sinceLastRun = Duration.between(lastRun, now);
+
+        if (sinceLastRun.compareTo(interval) < 0) {
+            return false;
+        }
+
+        return running <= maxRunning || sinceLastRun.compareTo(interval.multipliedBy(2L)) >= 0;
+    }
+
+    private void check() {
+        BasicCacheContainer container = cacheStartup.getCacheManager();
+
+        // The caches are started and preloaded first
+        if (container == null || !isDue(Instant.now(), admissionController.getRunning())) {
+            return;
+        }
+
+        try {
+            run(container);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Cache maintenance failed", e);
+        } finally {
+            lastRun = Instant.now();
+        }
+    }
+
+    private void run(BasicCacheContainer container) {
+        EmbeddedCacheManager cacheManager = CacheProvider.getEmbeddedCacheManager(container);
+
+        if (cacheManager == null) {
+            return;
+        }
+
+        LOGGER.info("Starting cache maintenance with {} running analyses", admissionController.getRunning());
+
+        for (String cacheName : CacheProvider.getCacheNames(config.getChecksumTypes())) {
+            Cache<?, ?> cache = cacheManager.getCache(cacheName, false);
+
+            if (cache == null) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            cache.getAdvancedCache().getExpirationManager().processExpiration();
+            long elapsed = System.nanoTime() - start;
+
+            Timer.builder("infinispan.cache.maintenance")
+                    .description("Time to remove the expired entries of a cache from memory and from its store")
+                    .tag("cache", cacheName)
+                    .register(registry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            LOGGER.info(
+                    "Removed expired entries of cache {} in {} ms, the store takes {} bytes",
+                    cacheName,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed),
+                    (long) InstrumentedCacheContainer.getStoreSize(ConfigDefaults.CACHE_LOCATION.resolve(cacheName)));
+        }
+    }
+}
@@ -19,21 +19,29 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
+import org.eclipse.microprofile.config.Config;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.infinispan.client.hotrod.RemoteCacheManager;
 import org.infinispan.client.hotrod.configuration.ConfigurationBuilder;
+import org.infinispan.client.hotrod.configuration.NearCacheMode;
 import org.infinispan.client.hotrod.configuration.ServerConfigurationBuilder;
 import org.infinispan.commons.api.BasicCacheContainer;
 import org.infinispan.commons.util.Version;
 import org.infinispan.configuration.cache.Configuration;
+import org.infinispan.configuration.cache.ConfigurationChildBuilder;
+import org.infinispan.configuration.cache.StorageType;
 import org.infinispan.configuration.global.GlobalConfiguration;
 import org.infinispan.configuration.global.GlobalConfigurationBuilder;
 import org.infinispan.configuration.global.GlobalConfigurationChildBuilder;
 import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.persistence.sifs.configuration.SoftIndexFileStoreConfigurationBuilder;
 import org.jboss.pnc.build.finder.core.BuildConfig;
 import org.jboss.pnc.build.finder.core.ChecksumType;
 import org.jboss.pnc.build.finder.core.ConfigDefaults;
@@ -41,6 +49,10 @@ import org.jboss.pnc.build.finder.protobuf.ProtobufSerializerImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.arc.ClientProxy;
+import io.quarkus.runtime.configuration.MemorySize;
+import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.inject.Disposes;
 import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Inject;
@@ -80,6 +92,60 @@ public class CacheProvider {
     @ConfigProperty(name = "infinispan.mode")
     InfinispanMode infinispanMode;
 
+    /**
+     * Keep the hot entries of the remote caches in a near cache, invalidated by the events of the server.
+     */
+    @ConfigProperty(name = "infinispan.near-cache.enabled", defaultValue = "false")
+    boolean nearCacheEnabled;
+
+    @ConfigProperty(name = "infinispan.near-cache.max-entries", defaultValue = "10000")
+    int nearCacheMaxEntries;
+
+    @ConfigProperty(name = "infinispan.near-cache.max-staleness", defaultValue = "10m")
+    Duration nearCacheMaxStaleness;
+
+    /**
+     * Store the entries of the checksum caches in the compact encoding. The entries written in the previous encoding
+     * are not found anymore, and expire with their lifespan.
+     */
+    @ConfigProperty(name = "infinispan.compact-checksums.enabled", defaultValue = "false")
+    boolean compactChecksums;
+
+    /**
+     * Bounds of the memory of each embedded cache, which can be overridden for one cache by the properties
+     * infinispan.embedded.cache.&lt;name&gt;.max-entries and infinispan.embedded.cache.&lt;name&gt;.max-memory. The max
+     * memory takes precedence over the max entries.
+     */
+    @ConfigProperty(name = "infinispan.embedded.max-entries")
+    Optional<Long> embeddedMaxEntries;
+
+    @ConfigProperty(name = "infinispan.embedded.max-memory")
+    Optional<MemorySize> embeddedMaxMemory;
+
+    /**
+     * The fraction of the space of a store file taken by removed entries at which the file is compacted.
+     */
+    @ConfigProperty(name = "infinispan.embedded.compaction-threshold", defaultValue = "0.5")
+    double embeddedCompactionThreshold;
+
+    /**
+     * Write the entries put into each embedded cache to its store in the background with the async store of
+     * Infinispan, which can be overridden for one cache by the property
+     * infinispan.embedded.cache.&lt;name&gt;.write-behind. The entries waiting to be written are lost if the process
+     * dies.
+     */
+    @ConfigProperty(name = "infinispan.embedded.write-behind.enabled", defaultValue = "false")
+    boolean embeddedWriteBehind;
+
+    @ConfigProperty(name = "infinispan.embedded.write-behind.queue-size", defaultValue = "10000")
+    int embeddedWriteBehindQueueSize;
+
+    @Inject
+    Config mpConfig;
+
+    @Inject
+    MeterRegistry registry;
+
     private static void ensureConfigurationDirectoryExists() throws IOException {
         Path configPath = ConfigDefaults.CONFIG_PATH;
 
@@ -97,25 +163,66 @@ public class CacheProvider {
     }
 
     /**
-     * Return the appropriate cache manager depending on the infinispan mode
+     * Return the appropriate cache manager depending on the infinispan mode. The cache manager is shared by the
+     * analyses and the result cache, and measures the use of each cache.
      *
      * @return cache manager
      * @throws IOException something went wrong
      */
     @Produces
+    @ApplicationScoped
     public BasicCacheContainer initCaches() throws IOException {
         return switch (infinispanMode) {
             case EMBEDDED -> {
                 LOGGER.info("Using Embedded Infinispan cache");
-                yield setupEmbeddedCacheManager();
+                yield compact(
+                        new InstrumentedCacheContainer(
+                                setupEmbeddedCacheManager(),
+                                ConfigDefaults.CACHE_LOCATION,
+                                registry));
             }
             case REMOTE -> {
                 LOGGER.info("Using Remote Infinispan cache");
-                yield setupDistributedCacheManager();
+                yield compact(new InstrumentedCacheContainer(setupDistributedCacheManager(), null, registry));
             }
         };
     }
 
+    private BasicCacheContainer compact(BasicCacheContainer cacheManager) {
+        if (!compactChecksums) {
+            return cacheManager;
+        }
+
+        LOGGER.info("Using the compact encoding of the checksum caches");
+        return new CompactChecksumCacheContainer(cacheManager);
+    }
+
+    /**
+     * Returns the embedded cache manager behind the cache manager produced by {@link #initCaches()}, whose caches
+     * are neither measured nor translated.
+     *
+     * @param cacheManager the cache manager, or null
+     * @return the embedded cache manager, or null if the caches are remote or the cache manager is null
+     */
+    public static EmbeddedCacheManager getEmbeddedCacheManager(BasicCacheContainer cacheManager) {
+        BasicCacheContainer delegate = cacheManager != null ? ClientProxy.unwrap(cacheManager) : null;
+
+        while (true) {
+            if (delegate instanceof CompactChecksumCacheContainer compact) {
+                delegate = compact.getDelegate();
+            } else if (delegate instanceof InstrumentedCacheContainer instrumented) {
+                delegate = instrumented.getDelegate();
+            } else {
+                return delegate instanceof EmbeddedCacheManager embedded ? embedded : null;
+            }
+        }
+    }
+
+    /**
+     * Closes the cache manager. The async stores write the entries waiting to be written before their caches stop.
+     *
+     * @param cacheManager the cache manager
+     */
     public void close(@Disposes BasicCacheContainer cacheManager) {
         if (cacheManager instanceof Closeable) {
             try {
@@ -164,12 +271,66 @@ public class CacheProvider {
                 .persistentLocation(cacheLocation)
                 .serialization()
                 .addContextInitializer(new ProtobufSerializerImpl())
+                .addContextInitializer(new CompactChecksumSerializer())
                 .allowList()
                 .addRegexp(".*")
                 .create();
 
-        Configuration configuration = new org.infinispan.configuration.cache.ConfigurationBuilder().expiration()
-                .lifespan(config.getCacheLifespan())
+        GlobalConfiguration globalConfiguration = globalConfig.build();
+        DefaultCacheManager cacheManager = new DefaultCacheManager(globalConfiguration);
+
+        // The caches are only defined here, they are started and preloaded by CacheStartup
+        for (String cacheName : getCacheNames(config.getChecksumTypes())) {
+            cacheManager.defineConfiguration(cacheName, getEmbeddedConfiguration(cacheName, cacheLocation));
+        }
+
+        return cacheManager;
+    }
+
+    /**
+     * Returns the configuration of an embedded cache. The entries beyond the max entries or the max memory of the cache
+     * are evicted from memory but stay in the store, and the preload stops once the memory is full, so the bounds also
+     * bound the time to start the cache. The entries expire after the lifespan of the cache, which is the cache
+     * lifespan of the config unless overridden for the cache, and after its max idle time if set, so that the
+     * immutable builds can be kept longer than the file listings. The expired entries are removed from the store by
+     * {@link CacheMaintenance} rather than the expiration reaper, while the load is low.
+     *
+     * @param cacheName the name of the cache
+     * @param cacheLocation the location of the stores
+     * @return the configuration
+     */
+    Configuration getEmbeddedConfiguration(String cacheName, String cacheLocation) {
+        ConfigurationChildBuilder builder = new org.infinispan.configuration.cache.ConfigurationBuilder();
+        Optional<MemorySize> maxMemory = getCacheProperty(cacheName, "max-memory", MemorySize.class)
+                .or(() -> embeddedMaxMemory);
+        Optional<Long> maxEntries = getCacheProperty(cacheName, "max-entries", Long.class).or(() -> embeddedMaxEntries);
+
+        // The size of the entries is only known once they are serialized, so they are kept off-heap
+        if (maxMemory.isPresent()) {
+            builder.memory().storage(StorageType.OFF_HEAP).maxSize(Long.toString(maxMemory.get().asLongValue()));
+            LOGGER.info("Cache {} keeps at most {} bytes in memory", cacheName, maxMemory.get().asLongValue());
+        } else if (maxEntries.isPresent()) {
+            builder.memory().maxCount(maxEntries.get());
+            LOGGER.info("Cache {} keeps at most {} entries in memory", cacheName, maxEntries.get());
+        }
+
+        // The entries expire after their own short lifespan, so they are not worth persisting
+        if (cacheName.equals(NotFoundCache.CACHE_NAME)) {
+            return builder.build();
+        }
+
+        long lifespan = getCacheProperty(cacheName, "lifespan", Duration.class).map(CacheProvider::toMillis)
+                .orElse(config.getCacheLifespan());
+        long maxIdle = getCacheProperty(cacheName, "max-idle", Duration.class).map(CacheProvider::toMillis).orElse(-1L);
+        LOGGER.info(
+                "Cache {} has a lifespan of {} and a max idle time of {}",
+                cacheName,
+                lifespan < 0L ? "unlimited" : Duration.ofMillis(lifespan),
+                maxIdle < 0L ? "unlimited" : Duration.ofMillis(maxIdle));
+
+        SoftIndexFileStoreConfigurationBuilder store = builder.expiration()
+                .lifespan(lifespan)
+                .maxIdle(maxIdle)
                 .wakeUpInterval(-1L)
                 .persistence()
                 .passivation(false)
@@ -180,24 +341,54 @@ public class CacheProvider {
                 .purgeOnStartup(false)
                 .dataLocation(cacheLocation)
                 .indexLocation(cacheLocation)
-                .build();
+                .compactionThreshold(embeddedCompactionThreshold);
+
+        // The puts only wait for the memory, a put waits for the store while the queue is full
+        if (getCacheProperty(cacheName, "write-behind", Boolean.class).orElse(embeddedWriteBehind)) {
+            store.async().enable().modificationQueueSize(embeddedWriteBehindQueueSize);
+            LOGGER.info(
+                    "Cache {} writes its store in the background, with a queue of {} entries",
+                    cacheName,
+                    embeddedWriteBehindQueueSize);
+        }
 
-        Set<ChecksumType> checksumTypes = config.getChecksumTypes();
-        GlobalConfiguration globalConfiguration = globalConfig.build();
-        DefaultCacheManager cacheManager = new DefaultCacheManager(globalConfiguration);
+        return builder.build();
+    }
 
-        LOGGER.info("Setting up caches for checksum types size: {}", checksumTypes.size());
+    /**
+     * Converts an expiration to milliseconds, a negative duration meaning that the entries never expire.
+     */
+    private static long toMillis(Duration duration) {
+        return duration.isNegative() ? -1L : duration.toMillis();
+    }
+
+    private <T> Optional<T> getCacheProperty(String cacheName, String property, Class<T> type) {
+        return mpConfig.getOptionalValue("infinispan.embedded.cache." + cacheName + "." + property, type);
+    }
+
+    /**
+     * Returns the names of the caches, in the order in which they are started. The caches used before Build Finder
+     * runs come first.
+     *
+     * @param checksumTypes the checksum types of the config
+     * @return the names of the caches
+     */
+    public static List<String> getCacheNames(Set<ChecksumType> checksumTypes) {
+        List<String> cacheNames = new ArrayList<>();
+        cacheNames.add(ResultCache.CACHE_NAME);
+        cacheNames.add(NotFoundCache.CACHE_NAME);
+        cacheNames.add(AttributionsCache.CACHE_NAME);
+        cacheNames.add("builds");
+        cacheNames.add("builds-pnc");
 
         for (ChecksumType checksumType : checksumTypes) {
-            cacheManager.defineConfiguration("files-" + checksumType, configuration);
-            cacheManager.defineConfiguration("checksums-" + checksumType, configuration);
-            cacheManager.defineConfiguration("checksums-pnc-" + checksumType, configuration);
-            cacheManager.defineConfiguration("rpms-" + checksumType, configuration);
+            cacheNames.add("files-" + checksumType);
+            cacheNames.add("checksums-" + checksumType);
+            cacheNames.add("checksums-pnc-" + checksumType);
+            cacheNames.add("rpms-" + checksumType);
         }
 
-        cacheManager.defineConfiguration("builds", configuration);
-        cacheManager.defineConfiguration("builds-pnc", configuration);
-        return cacheManager;
+        return cacheNames;
     }
 
     /**
@@ -231,7 +422,23 @@ public class CacheProvider {
 
         // Tell Infinispan how to marshall and unmarshall the DTOs
         builder.addContextInitializer(new ProtobufSerializerImpl());
+        builder.addContextInitializer(new CompactChecksumSerializer());
         builder.security().authentication().username(infinispanUsername.get()).password(infinispanPassword.get());
+
+        if (nearCacheEnabled) {
+            LOGGER.info(
+                    "Using near caches of {} entries with max staleness {}",
+                    nearCacheMaxEntries,
+                    nearCacheMaxStaleness);
+
+            for (String cacheName : getCacheNames(config.getChecksumTypes())) {
+                builder.remoteCache(cacheName)
+                        .nearCacheMode(NearCacheMode.INVALIDATED)
+                        .nearCacheMaxEntries(nearCacheMaxEntries)
+                        .nearCacheFactory(new BoundedNearCacheFactory(cacheName, nearCacheMaxStaleness, registry));
+            }
+        }
+
         return new RemoteCacheManager(builder.build());
     }
 
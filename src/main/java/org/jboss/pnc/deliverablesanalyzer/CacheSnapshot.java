@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.infinispan.AdvancedCache;
+import org.infinispan.Cache;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.infinispan.commons.util.CloseableIterator;
+import org.infinispan.container.entries.CacheEntry;
+import org.infinispan.context.Flag;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.protostream.ImmutableSerializationContext;
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.build.finder.protobuf.ProtobufSerializerImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Exports the entries of all the embedded caches to a compressed snapshot, and imports a snapshot into the empty caches
+ * once they have started, so that a new node starts with the entries of another node instead of looking up everything
+ * in Koji and PNC. The keys and the values are marshalled with the same protobuf schema as in the cache stores, and
+ * each entry keeps the time at which it expires. An export iterates over each cache while it is in use, so the snapshot
+ * contains every entry which was in the cache during the whole export, and maybe the entries written meanwhile.
+ */
+@ApplicationScoped
+public class CacheSnapshot {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheSnapshot.class);
+
+    private static final int MAGIC = 0x44415343;
+
+    private static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Inject
+    BuildConfig config;
+
+    @Inject
+    CacheStartup cacheStartup;
+
+    /**
+     * The snapshot imported into the empty caches at startup.
+     */
+    @ConfigProperty(name = "infinispan.embedded.snapshot.path")
+    Optional<Path> snapshotPath;
+
+    private ImmutableSerializationContext serializationContext;
+
+    @PostConstruct
+    public void init() {
+        serializationContext = createSerializationContext();
+    }
+
+    /**
+     * Returns whether a snapshot is imported once the caches have started.
+     *
+     * @return true if a snapshot is imported
+     */
+    public boolean isImportConfigured() {
+        return snapshotPath.isPresent();
+    }
+
+    /**
+     * Returns whether the caches can be exported, which is once all the embedded caches have started.
+     *
+     * @return true if the caches can be exported
+     */
+    public boolean isAvailable() {
+        return CacheProvider.getEmbeddedCacheManager(cacheStartup.getCacheManager()) != null;
+    }
+
+    /**
+     * Exports the entries of all the caches, in the order in which they are started.
+     *
+     * @param out the stream of the snapshot, which is closed
+     * @throws IOException if the snapshot can't be written
+     * @throws IllegalStateException if the embedded caches have not started
+     */
+    public void export(OutputStream out) throws IOException {
+        EmbeddedCacheManager cacheManager = CacheProvider.getEmbeddedCacheManager(cacheStartup.getCacheManager());
+
+        if (cacheManager == null) {
+            throw new IllegalStateException("The embedded caches have not started");
+        }
+
+        long start = System.nanoTime();
+        long total = 0L;
+
+        try (Writer writer = new Writer(out, serializationContext)) {
+            for (String cacheName : CacheProvider.getCacheNames(config.getChecksumTypes())) {
+                Cache<Object, Object> cache = cacheManager.getCache(cacheName, false);
+
+                if (cache == null) {
+                    continue;
+                }
+
+                try (CloseableIterator<CacheEntry<Object, Object>> entries = cache.getAdvancedCache()
+                        .cacheEntrySet()
+                        .iterator()) {
+                    long count = writer.writeCache(cacheName, new SnapshotIterator(entries));
+                    LOGGER.info("Exported {} entries of cache {}", count, cacheName);
+                    total += count;
+                }
+            }
+        }
+
+        LOGGER.info(
+                "Exported {} entries of the caches in {} s",
+                total,
+                Duration.ofNanos(System.nanoTime() - start).toSeconds());
+    }
+
+    /**
+     * Imports the snapshot, if any, into the caches which are still empty, so that the entries of a node which already
+     * ran are never replaced by older entries. The entries which have expired since the export are left out.
+     *
+     * @param container the cache manager, once all the caches have started
+     */
+    public void importSnapshot(BasicCacheContainer container) {
+        if (snapshotPath.isEmpty()) {
+            return;
+        }
+
+        Path path = snapshotPath.get();
+        EmbeddedCacheManager cacheManager = CacheProvider.getEmbeddedCacheManager(container);
+
+        if (cacheManager == null || !Files.isRegularFile(path)) {
+            LOGGER.warn("Cache snapshot {} not imported, only a file can be imported into embedded caches", path);
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        try (InputStream in = Files.newInputStream(path); Importer importer = new Importer(cacheManager)) {
+            read(in, serializationContext, importer);
+            LOGGER.info(
+                    "Imported {} entries of the caches from snapshot {} in {} s",
+                    importer.imported,
+                    path,
+                    Duration.ofNanos(System.nanoTime() - start).toSeconds());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to import cache snapshot {}", path, e);
+        }
+    }
+
+    static ImmutableSerializationContext createSerializationContext() {
+        SerializationContext serializationContext = ProtobufUtil.newSerializationContext();
+        ProtobufSerializerImpl serializer = new ProtobufSerializerImpl();
+        serializer.registerSchema(serializationContext);
+        serializer.registerMarshallers(serializationContext);
+        CompactChecksumSerializer compactSerializer = new CompactChecksumSerializer();
+        compactSerializer.registerSchema(serializationContext);
+        compactSerializer.registerMarshallers(serializationContext);
+        return serializationContext;
+    }
+
+    /**
+     * Reads the entries of a snapshot.
+     *
+     * @param in the stream of the snapshot
+     * @param serializationContext the context which unmarshalls the keys and the values
+     * @param consumer the consumer of the name of the cache and the entry
+     * @return the number of entries of each cache
+     * @throws IOException if the snapshot can't be read or is not a snapshot
+     */
+    static Map<String, Long> read(
+            InputStream in,
+            ImmutableSerializationContext serializationContext,
+            BiConsumer<String, SnapshotEntry> consumer) throws IOException {
+        DataInputStream data = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE));
+
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not a cache snapshot of version " + VERSION);
+        }
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+
+        while (data.readBoolean()) {
+            String cacheName = data.readUTF();
+            long count = 0L;
+            int keyLength;
+
+            while ((keyLength = data.readInt()) >= 0) {
+                Object key = readObject(data, serializationContext, keyLength);
+                Object value = readObject(data, serializationContext, data.readInt());
+                consumer.accept(cacheName, new SnapshotEntry(key, value, data.readLong()));
+                count++;
+            }
+
+            counts.put(cacheName, count);
+        }
+
+        return counts;
+    }
+
+    private static Object readObject(
+            DataInputStream data,
+            ImmutableSerializationContext serializationContext,
+            int length) throws IOException {
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return ProtobufUtil.fromWrappedByteArray(serializationContext, bytes);
+    }
+
+    /**
+     * Entry of a cache in a snapshot.
+     *
+     * @param key the key
+     * @param value the value
+     * @param expiry the time in milliseconds since the epoch at which the entry expires, or -1 if it never expires
+     */
+    record SnapshotEntry(Object key, Object value, long expiry) {
+        /**
+         * Returns the remaining lifespan of the entry.
+         *
+         * @param now the current time in milliseconds since the epoch
+         * @return the remaining lifespan in milliseconds, -1 if the entry never expires or 0 if it has expired
+         */
+        long getLifespan(long now) {
+            return expiry < 0L ? -1L : Math.max(expiry - now, 0L);
+        }
+    }
+
+    /**
+     * Writer of a snapshot, as a sequence of caches each followed by its entries.
+     */
+    static final class Writer implements Closeable {
+        private final DataOutputStream data;
+
+        private final ImmutableSerializationContext serializationContext;
+
+        Writer(OutputStream out, ImmutableSerializationContext serializationContext) throws IOException {
+            this.data = new DataOutputStream(
+                    new BufferedOutputStream(new GZIPOutputStream(out, BUFFER_SIZE), BUFFER_SIZE));
+            this.serializationContext = serializationContext;
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+        }
+
+        long writeCache(String cacheName, Iterator<SnapshotEntry> entries) throws IOException {
+            long count = 0L;
+            data.writeBoolean(true);
+            data.writeUTF(cacheName);
+
+            while (entries.hasNext()) {
+                SnapshotEntry entry = entries.next();
+                writeObject(entry.key());
+                writeObject(entry.value());
+                data.writeLong(entry.expiry());
+                count++;
+            }
+
+            data.writeInt(-1);
+            return count;
+        }
+
+        private void writeObject(Object object) throws IOException {
+            byte[] bytes = ProtobufUtil.toWrappedByteArray(serializationContext, object);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.writeBoolean(false);
+            data.close();
+        }
+    }
+
+    /**
+     * Iterator over the entries of a cache, which takes the expiry of each entry from its creation and its lifespan.
+     */
+    private record SnapshotIterator(
+            Iterator<CacheEntry<Object, Object>> entries) implements Iterator<SnapshotEntry> {
+        @Override
+        public boolean hasNext() {
+            return entries.hasNext();
+        }
+
+        @Override
+        public SnapshotEntry next() {
+            CacheEntry<Object, Object> entry = entries.next();
+            long lifespan = entry.getLifespan();
+            long expiry = lifespan < 0L || entry.getCreated() < 0L ? -1L : entry.getCreated() + lifespan;
+            return new SnapshotEntry(entry.getKey(), entry.getValue(), expiry);
+        }
+    }
+
+    /**
+     * Imports the entries into the empty caches, without loading the previous values from the stores. The writes are
+     * asynchronous, waiting for each batch to complete.
+     */
+    private static final class Importer implements BiConsumer<String, SnapshotEntry>, Closeable {
+        private final EmbeddedCacheManager cacheManager;
+
+        private final List<CompletableFuture<?>> pending = new ArrayList<>(BATCH_SIZE);
+
+        private final long now = System.currentTimeMillis();
+
+        private String cacheName;
+
+        private AdvancedCache<Object, Object> cache;
+
+        private long imported;
+
+        private Importer(EmbeddedCacheManager cacheManager) {
+            this.cacheManager = cacheManager;
+        }
+
+        @Override
+        public void accept(String name, SnapshotEntry entry) {
+            if (!name.equals(cacheName)) {
+                flush();
+                cacheName = name;
+                cache = getEmptyCache(name);
+            }
+
+            long lifespan = entry.getLifespan(now);
+
+            if (cache == null || lifespan == 0L) {
+                return;
+            }
+
+            pending.add(cache.putAsync(entry.key(), entry.value(), lifespan, TimeUnit.MILLISECONDS));
+            imported++;
+
+            if (pending.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private AdvancedCache<Object, Object> getEmptyCache(String name) {
+            Cache<Object, Object> namedCache = cacheManager.getCache(name, false);
+
+            if (namedCache == null) {
+                LOGGER.warn("Cache {} of the snapshot doesn't exist", name);
+                return null;
+            }
+
+            if (!namedCache.isEmpty()) {
+                LOGGER.info("Cache {} is not empty, its entries are not imported", name);
+                return null;
+            }
+
+            return namedCache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES, Flag.SKIP_CACHE_LOAD);
+        }
+
+        private void flush() {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+            pending.clear();
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.infinispan.commons.api.BasicCache;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.common.concurrent.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.inject.Provider;
+
+/**
+ * Starts the caches in the background once the application has started. Starting an embedded cache preloads all its
+ * entries from the cache directory, which takes minutes for a large cache, so the caches are started one by one in the
+ * order of {@link CacheProvider#getCacheNames(java.util.Set)} while the service already accepts requests. A cache is
+ * only handed out once it has started. Build Finder gets the caches which have started so far, and a cache which is
+ * still starting or failed to start is replaced by a cache which holds nothing, so its lookups go to Koji and PNC
+ * instead of waiting for the preload. If a snapshot is imported, Build Finder only gets the caches once it is
+ * imported, as it is only imported into empty caches.
+ */
+@ApplicationScoped
+public class CacheStartup {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheStartup.class);
+
+    @Inject
+    BuildConfig config;
+
+    @Inject
+    Provider<BasicCacheContainer> cacheProvider;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    CacheSnapshot cacheSnapshot;
+
+    /**
+     * The fraction of the caches which must have started, or failed to start, for the service to report ready.
+     */
+    @ConfigProperty(name = "analysis.cache-startup.ready-ratio", defaultValue = "0.5")
+    double readyRatio;
+
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+
+    private final Map<String, BasicCache<?, ?>> caches = new ConcurrentHashMap<>();
+
+    private volatile List<String> cacheNames = Collections.emptyList();
+
+    private volatile BasicCacheContainer cacheManager;
+
+    private volatile BasicCacheContainer startedCacheManager;
+
+    private ExecutorService executor;
+
+    public void onStart(@Observes StartupEvent event) {
+        if (Boolean.TRUE.equals(config.getDisableCache())) {
+            LOGGER.info("Cache disabled");
+            return;
+        }
+
+        cacheNames = CacheProvider.getCacheNames(config.getChecksumTypes());
+        cacheNames.forEach(name -> states.put(name, State.PENDING));
+        Gauge.builder("analysis.cache-startup.started", caches, Map::size)
+                .description("Number of caches which have started")
+                .register(registry);
+
+        executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("cache-startup"));
+        executor.execute(this::startCaches);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the cache manager of all the caches, once all of them have started.
+     *
+     * @return the cache manager, or null if the cache is disabled, still starting or a cache failed to start
+     */
+    public BasicCacheContainer getCacheManager() {
+        return cacheManager;
+    }
+
+    /**
+     * Returns the cache manager for Build Finder, with the caches which have started so far. The other caches hold
+     * nothing, so Build Finder looks up their entries.
+     *
+     * @return the cache manager, or null if the cache is disabled or no cache can be handed out yet
+     */
+    public BasicCacheContainer getStartedCacheManager() {
+        return caches.isEmpty() ? null : startedCacheManager;
+    }
+
+    /**
+     * Returns the cache with the name, once it has been started.
+     *
+     * @param name the name of the cache
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @return the cache, or null if the cache is disabled, still starting or doesn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> BasicCache<K, V> getCache(String name) {
+        return (BasicCache<K, V>) caches.get(name);
+    }
+
+    /**
+     * Returns whether enough caches have started, or failed to start, for the service to be ready. A cache which
+     * failed doesn't keep the service from being ready, as the analyses run without it. The service is always ready
+     * when the cache is disabled.
+     *
+     * @return true if the service is ready
+     */
+    public boolean isReady() {
+        long settled = states.values()
+                .stream()
+                .filter(state -> state == State.STARTED || state == State.FAILED)
+                .count();
+        return cacheNames.isEmpty() || settled >= Math.ceil(readyRatio * cacheNames.size());
+    }
+
+    /**
+     * Returns the state of each cache, in the order in which they are started.
+     *
+     * @return the states of the caches
+     */
+    public Map<String, State> getStates() {
+        Map<String, State> ordered = new LinkedHashMap<>();
+        cacheNames.forEach(name -> ordered.put(name, states.get(name)));
+        return ordered;
+    }
+
+    private void startCaches() {
+        long start = System.nanoTime();
+        BasicCacheContainer container = cacheProvider.get();
+        StartedCacheContainer started = new StartedCacheContainer(container);
+
+        if (!cacheSnapshot.isImportConfigured()) {
+            startedCacheManager = started;
+        }
+
+        for (String name : cacheNames) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            states.put(name, State.STARTING);
+
+            Timer timer = Timer.builder("analysis.cache-startup.duration")
+                    .description("Time to start a cache, including the preload of its entries")
+                    .tag("cache", name)
+                    .register(registry);
+            long cacheStart = System.nanoTime();
+
+            try {
+                BasicCache<?, ?> cache = container.getCache(name);
+
+                if (cache == null) {
+                    LOGGER.warn("Cache {} doesn't exist", name);
+                    states.put(name, State.FAILED);
+                    continue;
+                }
+
+                long elapsed = System.nanoTime() - cacheStart;
+                timer.record(Duration.ofNanos(elapsed));
+                caches.put(name, cache);
+                states.put(name, State.STARTED);
+                LOGGER.info(
+                        "Started cache {} ({} of {}) in {} ms",
+                        name,
+                        caches.size(),
+                        cacheNames.size(),
+                        Duration.ofNanos(elapsed).toMillis());
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to start cache {}", name, e);
+                states.put(name, State.FAILED);
+            }
+        }
+
+        if (caches.size() < cacheNames.size()) {
+            LOGGER.warn("Build Finder runs without the caches which failed to start");
+            startedCacheManager = started;
+            return;
+        }
+
+        // Build Finder only gets the caches once the snapshot is imported, so that it doesn't look up its entries
+        cacheSnapshot.importSnapshot(container);
+        startedCacheManager = started;
+        cacheManager = container;
+        LOGGER.info(
+                "Started {} caches in {} s",
+                cacheNames.size(),
+                Duration.ofNanos(System.nanoTime() - start).toSeconds());
+    }
+
+    /**
+     * Cache manager of the caches which have started. The other caches are replaced by caches which hold nothing, as
+     * Build Finder expects all its caches to exist.
+     */
+    private final class StartedCacheContainer implements BasicCacheContainer {
+        private final BasicCacheContainer delegate;
+
+        private StartedCacheContainer(BasicCacheContainer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public <K, V> BasicCache<K, V> getCache() {
+            return delegate.getCache();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <K, V> BasicCache<K, V> getCache(String cacheName) {
+            BasicCache<K, V> cache = (BasicCache<K, V>) caches.get(cacheName);
+            return cache != null ? cache : emptyCache(cacheName);
+        }
+
+        @Override
+        public Set<String> getCacheNames() {
+            return Collections.unmodifiableSet(caches.keySet());
+        }
+
+        @Override
+        public void start() {
+            // The caches are started by CacheStartup
+        }
+
+        @Override
+        public void stop() {
+            // The caches are stopped with the cache manager
+        }
+
+        @Override
+        public String toString() {
+            return caches.size() + " of " + cacheNames.size() + " caches of " + delegate;
+        }
+    }
+
+    /**
+     * Returns a cache which holds nothing: the reads find nothing and the writes are dropped.
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> BasicCache<K, V> emptyCache(String cacheName) {
+        return (BasicCache<K, V>) Proxy.newProxyInstance(
+                BasicCache.class.getClassLoader(),
+                new Class<?>[] { BasicCache.class },
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getName" -> cacheName;
+                    case "toString" -> "empty cache " + cacheName;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> emptyValue(method.getName(), method.getReturnType());
+                });
+    }
+
+    private static Object emptyValue(String methodName, Class<?> type) {
+        if (CompletionStage.class.isAssignableFrom(type)) {
+            return CompletableFuture.completedFuture(methodName.startsWith("getAll") ? Map.of() : null);
+        }
+
+        if (type == boolean.class) {
+            return methodName.equals("isEmpty");
+        }
+
+        if (type == int.class) {
+            return 0;
+        }
+
+        if (type == long.class) {
+            return 0L;
+        }
+
+        if (Map.class.isAssignableFrom(type)) {
+            return Map.of();
+        }
+
+        if (Set.class.isAssignableFrom(type)) {
+            return Set.of();
+        }
+
+        if (Collection.class.isAssignableFrom(type)) {
+            return List.of();
+        }
+
+        return null;
+    }
+
+    /**
+     * State of the startup of a cache.
+     */
+    public enum State {
+        PENDING, STARTING, STARTED, FAILED
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.jboss.pnc.build.finder.koji.ClientSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.red.build.koji.KojiClientException;
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveQuery;
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveType;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiIdOrName;
+import com.redhat.red.build.koji.model.xmlrpc.KojiRpmInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiTagInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiTaskInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiTaskRequest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Koji session shared by all the analyses, which sits below the Infinispan caches of Build Finder and in front of the
+ * hub. The builds and the archives of checksums are memoized in a bounded LRU, identical concurrent lookups are merged
+ * into one, and the lookups which miss the LRU are sent in multicalls, waiting for the lookups of other threads for a
+ * short linger time. The other calls are passed to the hub as they are. Lookups which fail are not memoized.
+ */
+public class CachingClientSession implements ClientSession, AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingClientSession.class);
+
+    private final ClientSession delegate;
+
+    private final MeterRegistry registry;
+
+    private final Lookups<KojiArchiveQuery, List<KojiArchiveInfo>> archives;
+
+    private final Lookups<KojiIdOrName, KojiBuildInfo> builds;
+
+    private volatile Map<String, KojiArchiveType> archiveTypes;
+
+    @FunctionalInterface
+    private interface HubCall<T> {
+        T call() throws KojiClientException;
+    }
+
+    @FunctionalInterface
+    private interface MultiCall<K, V> {
+        List<V> call(List<K> keys) throws KojiClientException;
+    }
+
+    /**
+     * @param delegate the session calling the hub
+     * @param maxEntries the maximum number of memoized lookups of each kind
+     * @param linger the time a multicall waits for the lookups of other threads
+     * @param maxBatchSize the maximum number of lookups in one multicall
+     * @param registry the registry of the call metrics
+     */
+    public CachingClientSession(
+            ClientSession delegate,
+            int maxEntries,
+            Duration linger,
+            int maxBatchSize,
+            MeterRegistry registry) {
+        this.delegate = delegate;
+        this.registry = registry;
+        this.archives = new Lookups<>(
+                "listArchives",
+                CachingClientSession::getArchivesKey,
+                delegate::listArchives,
+                maxEntries,
+                linger,
+                maxBatchSize);
+        this.builds = new Lookups<>(
+                "getBuild",
+                CachingClientSession::getBuildKey,
+                delegate::getBuild,
+                maxEntries,
+                linger,
+                maxBatchSize);
+    }
+
+    /**
+     * Only the queries by checksum are memoized, the archives of a checksum never change.
+     */
+    private static String getArchivesKey(KojiArchiveQuery query) {
+        if (query.getChecksum() == null || query.getArchiveId() != null || query.getImageId() != null
+                || query.getMavenRef() != null || query.getFilename() != null || query.getBuildId() != null
+                || query.getBuildrootId() != null || query.getComponentBuildrootId() != null
+                || query.getHostId() != null || query.getSize() != null) {
+            return null;
+        }
+
+        return query.getChecksum() + "#" + query.getType();
+    }
+
+    private static String getBuildKey(KojiIdOrName idOrName) {
+        if (idOrName.getId() != null) {
+            return "id:" + idOrName.getId();
+        }
+
+        return idOrName.getName() != null ? "name:" + idOrName.getName() : null;
+    }
+
+    private <T> T timed(String method, HubCall<T> call) throws KojiClientException {
+        long start = System.nanoTime();
+
+        try {
+            return call.call();
+        } finally {
+            Timer.builder("koji.client.calls")
+                    .description("Latency of the calls to the Koji hub")
+                    .tag("method", method)
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public List<KojiArchiveInfo> listArchives(KojiArchiveQuery query) throws KojiClientException {
+        return copy(archives.get(Collections.singletonList(query)).get(0));
+    }
+
+    @Override
+    public List<List<KojiArchiveInfo>> listArchives(List<KojiArchiveQuery> queries) throws KojiClientException {
+        List<List<KojiArchiveInfo>> result = new ArrayList<>(queries.size());
+
+        for (List<KojiArchiveInfo> archiveInfos : archives.get(queries)) {
+            result.add(copy(archiveInfos));
+        }
+
+        return result;
+    }
+
+    private static List<KojiArchiveInfo> copy(List<KojiArchiveInfo> archiveInfos) {
+        // Build Finder modifies the lists it gets
+        return archiveInfos != null ? new ArrayList<>(archiveInfos) : null;
+    }
+
+    /**
+     * Gets the build with its type info, which the single build call of the hub doesn't add.
+     */
+    @Override
+    public KojiBuildInfo getBuild(int buildId) throws KojiClientException {
+        return builds.get(Collections.singletonList(KojiIdOrName.getFor(buildId))).get(0);
+    }
+
+    @Override
+    public List<KojiBuildInfo> getBuild(List<KojiIdOrName> idsOrNames) throws KojiClientException {
+        return builds.get(idsOrNames);
+    }
+
+    @Override
+    public Map<String, KojiArchiveType> getArchiveTypeMap() throws KojiClientException {
+        Map<String, KojiArchiveType> types = archiveTypes;
+
+        if (types == null) {
+            types = timed("getArchiveTypeMap", delegate::getArchiveTypeMap);
+            archiveTypes = types;
+        }
+
+        return new HashMap<>(types);
+    }
+
+    @Override
+    public KojiTaskInfo getTaskInfo(int taskId, boolean request) throws KojiClientException {
+        return timed("getTaskInfo", () -> delegate.getTaskInfo(taskId, request));
+    }
+
+    @Override
+    public KojiTaskRequest getTaskRequest(int taskId) throws KojiClientException {
+        return timed("getTaskRequest", () -> delegate.getTaskRequest(taskId));
+    }
+
+    @Override
+    public List<KojiTagInfo> listTags(int id) throws KojiClientException {
+        return timed("listTags", () -> delegate.listTags(id));
+    }
+
+    @Override
+    public void enrichArchiveTypeInfo(List<KojiArchiveInfo> archiveInfos) throws KojiClientException {
+        timed("enrichArchiveTypeInfo", () -> {
+            delegate.enrichArchiveTypeInfo(archiveInfos);
+            return null;
+        });
+    }
+
+    @Override
+    public List<KojiRpmInfo> getRPM(List<KojiIdOrName> idsOrNames) throws KojiClientException {
+        return timed("getRPM", () -> delegate.getRPM(idsOrNames));
+    }
+
+    @Override
+    public List<KojiTaskInfo> getTaskInfo(List<Integer> taskIds, List<Boolean> requests) throws KojiClientException {
+        return timed("getTaskInfo", () -> delegate.getTaskInfo(taskIds, requests));
+    }
+
+    @Override
+    public List<List<KojiRpmInfo>> listBuildRPMs(List<KojiIdOrName> idsOrNames) throws KojiClientException {
+        return timed("listBuildRPMs", () -> delegate.listBuildRPMs(idsOrNames));
+    }
+
+    @Override
+    public List<List<KojiTagInfo>> listTags(List<KojiIdOrName> idsOrNames) throws KojiClientException {
+        return timed("listTags", () -> delegate.listTags(idsOrNames));
+    }
+
+    @Override
+    public void close() {
+        if (delegate instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                LOGGER.warn("Failed to close Koji session", e);
+            }
+        }
+    }
+
+    /**
+     * Memoized lookups of one kind. The first thread which has a lookup to send waits for the linger time, unless the
+     * batch fills up sooner, and then sends the lookups of all the threads in one multicall.
+     *
+     * @param <K> the type of the lookup
+     * @param <V> the type of the looked up value
+     */
+    private final class Lookups<K, V> {
+        private final String method;
+
+        private final Function<K, String> keyFunction;
+
+        private final MultiCall<K, V> multiCall;
+
+        private final Map<String, CompletableFuture<V>> memo;
+
+        private final long lingerNanos;
+
+        private final int maxBatchSize;
+
+        private final List<Lookup<K, V>> batch = new ArrayList<>();
+
+        private final Counter hits;
+
+        private final Counter coalesced;
+
+        private final Counter misses;
+
+        private boolean lingering;
+
+        private Lookups(
+                String method,
+                Function<K, String> keyFunction,
+                MultiCall<K, V> multiCall,
+                int maxEntries,
+                Duration linger,
+                int maxBatchSize) {
+            this.method = method;
+            this.keyFunction = keyFunction;
+            this.multiCall = multiCall;
+            this.memo = new LinkedHashMap<>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<V>> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+            this.lingerNanos = linger.toNanos();
+            this.maxBatchSize = Math.max(1, maxBatchSize);
+            this.hits = counter("hit");
+            this.coalesced = counter("coalesced");
+            this.misses = counter("miss");
+        }
+
+        private Counter counter(String result) {
+            return Counter.builder("koji.client.lookups")
+                    .description("Number of Koji lookups by whether they were memoized, merged or sent to the hub")
+                    .tag("method", method)
+                    .tag("result", result)
+                    .register(registry);
+        }
+
+        private List<V> get(List<K> keys) throws KojiClientException {
+            List<CompletableFuture<V>> futures = new ArrayList<>(keys.size());
+            List<Lookup<K, V>> sent = new ArrayList<>();
+
+            synchronized (memo) {
+                for (K key : keys) {
+                    String memoKey = keyFunction.apply(key);
+                    CompletableFuture<V> future = memoKey != null ? memo.get(memoKey) : null;
+
+                    if (future == null) {
+                        future = new CompletableFuture<>();
+                        sent.add(new Lookup<>(key, memoKey, future));
+                        misses.increment();
+
+                        if (memoKey != null) {
+                            memo.put(memoKey, future);
+                        }
+                    } else if (future.isDone()) {
+                        hits.increment();
+                    } else {
+                        coalesced.increment();
+                    }
+
+                    futures.add(future);
+                }
+            }
+
+            if (!sent.isEmpty()) {
+                send(sent);
+            }
+
+            return await(futures);
+        }
+
+        private void send(List<Lookup<K, V>> lookups) {
+            List<Lookup<K, V>> toSend;
+
+            synchronized (this) {
+                batch.addAll(lookups);
+
+                if (lingering) {
+                    // The lingering thread sends the batch
+                    if (batch.size() >= maxBatchSize) {
+                        notifyAll();
+                    }
+
+                    return;
+                }
+
+                lingering = true;
+                boolean interrupted = false;
+                long deadline = System.nanoTime() + lingerNanos;
+                long remaining;
+
+                while (batch.size() < maxBatchSize && (remaining = deadline - System.nanoTime()) > 0L) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } catch (InterruptedException e) {
+                        // The batch must be sent anyway, other threads wait for it
+                        interrupted = true;
+                        break;
+                    }
+                }
+
+                toSend = new ArrayList<>(batch);
+                batch.clear();
+                lingering = false;
+
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            for (int i = 0; i < toSend.size(); i += maxBatchSize) {
+                sendMultiCall(toSend.subList(i, Math.min(i + maxBatchSize, toSend.size())));
+            }
+        }
+
+        private void sendMultiCall(List<Lookup<K, V>> lookups) {
+            List<K> keys = lookups.stream().map(lookup -> lookup.key).toList();
+
+            try {
+                List<V> values = timed(method, () -> multiCall.call(keys));
+
+                if (values.size() != keys.size()) {
+                    throw new KojiClientException(
+                            "Koji returned {} results for {} lookups of {}",
+                            values.size(),
+                            keys.size(),
+                            method);
+                }
+
+                for (int i = 0; i < lookups.size(); i++) {
+                    lookups.get(i).future.complete(values.get(i));
+                }
+            } catch (KojiClientException | RuntimeException e) {
+                synchronized (memo) {
+                    for (Lookup<K, V> lookup : lookups) {
+                        if (lookup.memoKey != null) {
+                            memo.remove(lookup.memoKey, lookup.future);
+                        }
+                    }
+                }
+
+                lookups.forEach(lookup -> lookup.future.completeExceptionally(e));
+            }
+        }
+
+        private List<V> await(List<CompletableFuture<V>> futures) throws KojiClientException {
+            List<V> values = new ArrayList<>(futures.size());
+
+            try {
+                for (CompletableFuture<V> future : futures) {
+                    values.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new KojiClientException("Interrupted while waiting for {}", e, method);
+            } catch (ExecutionException e) {
+                throw new KojiClientException("Failed to call {}", e.getCause(), method);
+            }
+
+            return values;
+        }
+    }
+
+    private static final class Lookup<K, V> {
+        private final K key;
+
+        private final String memoKey;
+
+        private final CompletableFuture<V> future;
+
+        private Lookup(K key, String memoKey, CompletableFuture<V> future) {
+            this.key = key;
+            this.memoKey = memoKey;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Token through which an analysis is cancelled. Long-running work checks the token between its units of work, and
+ * registers callbacks which abort the work that doesn't notice interrupts, like blocking reads of a download.
+ */
+public final class CancellationToken {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CancellationToken.class);
+
+    private final List<Runnable> callbacks = new ArrayList<>();
+
+    private volatile boolean cancelled;
+
+    private long cancelledAt;
+
+    /**
+     * Cancels the token and runs all the registered callbacks. Cancelling a cancelled token does nothing.
+     */
+    public void cancel() {
+        List<Runnable> toRun;
+
+        synchronized (callbacks) {
+            if (cancelled) {
+                return;
+            }
+
+            cancelledAt = System.nanoTime();
+            cancelled = true;
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+
+        toRun.forEach(CancellationToken::run);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws CancellationException if the token is cancelled
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Operation was cancelled manually");
+        }
+    }
+
+    /**
+     * @return the time since the token was cancelled, or zero if it isn't cancelled
+     */
+    public Duration getTimeSinceCancel() {
+        synchronized (callbacks) {
+            return cancelled ? Duration.ofNanos(System.nanoTime() - cancelledAt) : Duration.ZERO;
+        }
+    }
+
+    /**
+     * Registers a callback run when the token is cancelled. If the token is already cancelled, the callback runs
+     * immediately.
+     *
+     * @param callback the callback
+     * @return the registration, which removes the callback when closed
+     */
+    public Registration onCancel(Runnable callback) {
+        synchronized (callbacks) {
+            if (!cancelled) {
+                callbacks.add(callback);
+                return () -> {
+                    synchronized (callbacks) {
+                        callbacks.remove(callback);
+                    }
+                };
+            }
+        }
+
+        run(callback);
+        return () -> {
+        };
+    }
+
+    private static void run(Runnable callback) {
+        try {
+            callback.run();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Cancellation callback failed", e);
+        }
+    }
+
+    /**
+     * Registration of a callback, which is removed when the work it aborts is finished.
+     */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+import org.jboss.pnc.deliverablesanalyzer.utils.DigestUtils;
+
+/**
+ * Bloom filter of the MD5 checksums of all the archives known to Koji and PNC at the time of a snapshot. The MD5
+ * checksums are uniformly distributed already, so the two halves of the digest are used as the two hashes of the
+ * double hashing scheme, and a lookup costs only a few memory reads. A checksum which the filter doesn't contain is
+ * definitely not known to the build systems, other checksums may be known.
+ * <p>
+ * The file starts with a header of the magic number, the version, the number of hash functions, the number of bits,
+ * the number of entries and the time of the snapshot in milliseconds since the epoch, followed by the bits.
+ */
+public final class ChecksumFilter {
+    private static final int MAGIC = 0x44414246;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8 + 8;
+
+    private static final int CHUNK_LONGS = 128 * 1024;
+
+    private final long[] bits;
+
+    private final long numBits;
+
+    private final int numHashes;
+
+    private final Instant snapshotTime;
+
+    private long entries;
+
+    private ChecksumFilter(long[] bits, long numBits, int numHashes, long entries, Instant snapshotTime) {
+        this.bits = bits;
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.entries = entries;
+        this.snapshotTime = snapshotTime;
+    }
+
+    /**
+     * Creates an empty filter sized for the expected number of entries.
+     *
+     * @param expectedEntries the number of checksums to add
+     * @param falsePositiveRate the rate of the checksums which are reported as known although they are not
+     * @param snapshotTime the time of the snapshot of the build systems, builds completed later may be missing
+     * @return the filter
+     */
+    public static ChecksumFilter create(long expectedEntries, double falsePositiveRate, Instant snapshotTime) {
+        if (expectedEntries <= 0L || falsePositiveRate <= 0.0d || falsePositiveRate >= 1.0d) {
+            throw new IllegalArgumentException(
+                    "Invalid filter size " + expectedEntries + " or false positive rate " + falsePositiveRate);
+        }
+
+        double ln2 = Math.log(2.0d);
+        long numBits = Math.max(64L, (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (ln2 * ln2)));
+        int numHashes = Math.max(1, (int) Math.round((double) numBits / expectedEntries * ln2));
+        long[] bits = new long[Math.toIntExact((numBits + 63L) / 64L)];
+
+        return new ChecksumFilter(bits, (long) bits.length * 64L, numHashes, 0L, snapshotTime);
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(Path)}.
+     *
+     * @param path the file
+     * @return the filter
+     * @throws IOException if the file can't be read or is not a filter
+     */
+    public static ChecksumFilter read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0L);
+            header.flip();
+
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("File " + path + " is not a checksum filter of version " + VERSION);
+            }
+
+            int numHashes = header.getInt();
+            long numBits = header.getLong();
+            long entries = header.getLong();
+            Instant snapshotTime = Instant.ofEpochMilli(header.getLong());
+
+            if (numHashes <= 0 || numBits <= 0L || numBits % 64L != 0L
+                    || channel.size() != HEADER_SIZE + numBits / 8L) {
+                throw new IOException("Checksum filter " + path + " is truncated or corrupted");
+            }
+
+            long[] bits = new long[Math.toIntExact(numBits / 64L)];
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_LONGS * 8);
+
+            for (int offset = 0; offset < bits.length; offset += CHUNK_LONGS) {
+                int length = Math.min(CHUNK_LONGS, bits.length - offset);
+                chunk.clear().limit(length * 8);
+                readFully(channel, chunk, HEADER_SIZE + offset * 8L);
+                chunk.flip();
+                chunk.asLongBuffer().get(bits, offset, length);
+            }
+
+            return new ChecksumFilter(bits, numBits, numHashes, entries, snapshotTime);
+        }
+    }
+
+    /**
+     * Writes the filter to a file.
+     *
+     * @param path the file, which is replaced
+     * @throws IOException if the file can't be written
+     */
+    public void writeTo(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putInt(numHashes)
+                    .putLong(numBits)
+                    .putLong(entries)
+                    .putLong(snapshotTime.toEpochMilli());
+            writeFully(channel, header.flip());
+
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_LONGS * 8);
+
+            for (int offset = 0; offset < bits.length; offset += CHUNK_LONGS) {
+                int length = Math.min(CHUNK_LONGS, bits.length - offset);
+                chunk.clear();
+                chunk.asLongBuffer().put(bits, offset, length);
+                chunk.limit(length * 8);
+                writeFully(channel, chunk);
+            }
+        }
+    }
+
+    /**
+     * Adds an MD5 checksum.
+     *
+     * @param md5 the hex-encoded MD5 checksum
+     * @throws IllegalArgumentException if the checksum is not an MD5 checksum
+     */
+    public void add(String md5) {
+        if (!DigestUtils.isMd5(md5)) {
+            throw new IllegalArgumentException("Invalid MD5 checksum " + md5);
+        }
+
+        long h1 = DigestUtils.parseHexLong(md5, 0);
+        long h2 = DigestUtils.parseHexLong(md5, 16);
+
+        for (int i = 0; i < numHashes; i++) {
+            long index = Math.floorMod(h1 + i * h2, numBits);
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+
+        entries++;
+    }
+
+    /**
+     * Returns whether the MD5 checksum may be known. Checksums which are not valid MD5 checksums may always be known.
+     *
+     * @param md5 the hex-encoded MD5 checksum
+     * @return false if the checksum is definitely not known
+     */
+    public boolean mightContain(String md5) {
+        if (!DigestUtils.isMd5(md5)) {
+            return true;
+        }
+
+        long h1 = DigestUtils.parseHexLong(md5, 0);
+        long h2 = DigestUtils.parseHexLong(md5, 16);
+
+        for (int i = 0; i < numHashes; i++) {
+            long index = Math.floorMod(h1 + i * h2, numBits);
+
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0L) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    public Instant getSnapshotTime() {
+        return snapshotTime;
+    }
+
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+
+            if (read < 0) {
+                throw new IOException("Unexpected end of checksum filter");
+            }
+
+            offset += read;
+        }
+    }
+}
@@ -0,0 +1,462 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.jboss.pnc.build.finder.core.BuildSystem;
+import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.deliverablesanalyzer.utils.DigestUtils;
+
+/**
+ * Immutable index of MD5 checksums to the builds and the archives which contain them, memory-mapped from a file, so
+ * that the checksums can be resolved without Koji and PNC. The records are sorted by the digest, and a table of the
+ * first record of each 16-bit prefix of the digest narrows the binary search to a few records. Nothing but the result
+ * of a lookup is allocated on the heap, so the index can hold hundreds of millions of checksums. The index is written
+ * by {@link Writer}, which sorts the records on disk, so writing it doesn't need the heap either.
+ * <p>
+ * The file starts with a header of the magic number, the version, the number of records and the time of the snapshot
+ * in milliseconds since the epoch, followed by the prefix table and the records. Each record holds the 16 bytes of the
+ * digest, the ordinal of the build system, the ID of the build and the ID of the archive.
+ */
+public final class ChecksumIndex {
+    private static final int MAGIC = 0x44414349;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+
+    private static final int PREFIXES = 1 << 16;
+
+    private static final int TABLE_SIZE = (PREFIXES + 1) * 8;
+
+    private static final int RECORD_SIZE = 16 + 1 + 4 + 4;
+
+    private static final int RECORDS_PER_SEGMENT = Integer.MAX_VALUE / RECORD_SIZE;
+
+    private static final BuildSystem[] BUILD_SYSTEMS = BuildSystem.values();
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The digests are compared as unsigned bytes, like the lookups do.
+     */
+    private static final Comparator<Record> ORDER = Comparator
+            .<Record, Long> comparing(Record::high, Long::compareUnsigned)
+            .thenComparing(Record::low, Long::compareUnsigned)
+            .thenComparingInt(Record::buildSystem)
+            .thenComparingInt(Record::buildId)
+            .thenComparingInt(Record::archiveId);
+
+    private final MappedByteBuffer table;
+
+    private final MappedByteBuffer[] segments;
+
+    private final long size;
+
+    private final Instant snapshotTime;
+
+    private ChecksumIndex(MappedByteBuffer table, MappedByteBuffer[] segments, long size, Instant snapshotTime) {
+        this.table = table;
+        this.segments = segments;
+        this.size = size;
+        this.snapshotTime = snapshotTime;
+    }
+
+    /**
+     * Memory-maps an index written by {@link #write(Path, Collection, Instant)}.
+     *
+     * @param path the file
+     * @return the index
+     * @throws IOException if the file can't be read or is not an index
+     */
+    public static ChecksumIndex open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("File " + path + " is not a checksum index");
+                }
+            }
+
+            header.flip();
+
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("File " + path + " is not a checksum index of version " + VERSION);
+            }
+
+            long size = header.getLong();
+            Instant snapshotTime = Instant.ofEpochMilli(header.getLong());
+
+            if (size < 0L || channel.size() != HEADER_SIZE + TABLE_SIZE + size * RECORD_SIZE) {
+                throw new IOException("Checksum index " + path + " is truncated or corrupted");
+            }
+
+            // The mappings stay valid after the channel is closed
+            MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, TABLE_SIZE);
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + RECORDS_PER_SEGMENT - 1)
+                    / RECORDS_PER_SEGMENT)];
+
+            for (int i = 0; i < segments.length; i++) {
+                long first = (long) i * RECORDS_PER_SEGMENT;
+                long records = Math.min(RECORDS_PER_SEGMENT, size - first);
+                segments[i] = channel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + TABLE_SIZE + first * RECORD_SIZE,
+                        records * RECORD_SIZE);
+            }
+
+            return new ChecksumIndex(table, segments, size, snapshotTime);
+        }
+    }
+
+    /**
+     * Writes an index of the entries.
+     *
+     * @param path the file, which is replaced
+     * @param entries the entries
+     * @param snapshotTime the time of the snapshot of the build systems
+     * @throws IOException if the file can't be written
+     * @throws IllegalArgumentException if a checksum is not an MD5 checksum or a build ID is not a number
+     */
+    public static void write(Path path, Collection<Entry> entries, Instant snapshotTime) throws IOException {
+        try (Writer writer = new Writer(path, snapshotTime)) {
+            for (Entry entry : entries) {
+                writer.add(entry);
+            }
+
+            writer.finish();
+        }
+    }
+
+    /**
+     * Looks up the builds and the archives which contain the file with the MD5 checksum.
+     *
+     * @param md5 the hex-encoded MD5 checksum
+     * @return the entries of the checksum, empty if the index doesn't contain it or it is not an MD5 checksum
+     */
+    public List<Entry> lookup(String md5) {
+        if (!DigestUtils.isMd5(md5)) {
+            return Collections.emptyList();
+        }
+
+        long high = DigestUtils.parseHexLong(md5, 0);
+        long low = DigestUtils.parseHexLong(md5, 16);
+        int prefix = prefix(high);
+        long from = table.getLong(prefix * 8);
+        long to = table.getLong((prefix + 1) * 8) - 1L;
+
+        while (from <= to) {
+            long middle = (from + to) >>> 1;
+            int comparison = compare(middle, high, low);
+
+            if (comparison < 0) {
+                from = middle + 1L;
+            } else if (comparison > 0) {
+                to = middle - 1L;
+            } else {
+                return collect(middle, high, low, md5);
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public Instant getSnapshotTime() {
+        return snapshotTime;
+    }
+
+    private List<Entry> collect(long match, long high, long low, String md5) {
+        long first = match;
+
+        while (first > 0L && compare(first - 1L, high, low) == 0) {
+            first--;
+        }
+
+        List<Entry> entries = new ArrayList<>(1);
+
+        for (long i = first; i < size && compare(i, high, low) == 0; i++) {
+            MappedByteBuffer segment = segments[(int) (i / RECORDS_PER_SEGMENT)];
+            int offset = (int) (i % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+            BuildSystem buildSystem = BUILD_SYSTEMS[segment.get(offset + 16)];
+            int buildId = segment.getInt(offset + 17);
+            int archiveId = segment.getInt(offset + 21);
+
+            entries.add(new Entry(md5, new BuildSystemInteger(buildId, buildSystem), archiveId));
+        }
+
+        return entries;
+    }
+
+    private int compare(long record, long high, long low) {
+        MappedByteBuffer segment = segments[(int) (record / RECORDS_PER_SEGMENT)];
+        int offset = (int) (record % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+        int comparison = Long.compareUnsigned(segment.getLong(offset), high);
+
+        return comparison != 0 ? comparison : Long.compareUnsigned(segment.getLong(offset + 8), low);
+    }
+
+    private static int prefix(long high) {
+        return (int) (high >>> 48);
+    }
+
+    /**
+     * Archive of a build which contains a file.
+     *
+     * @param md5 the hex-encoded MD5 checksum of the file
+     * @param build the build
+     * @param archiveId the ID of the archive
+     */
+    public record Entry(String md5, BuildSystemInteger build, int archiveId) {
+    }
+
+    /**
+     * Writer of an index with more entries than fit in memory. The entries are sorted in runs of a bounded number of
+     * records, each written to a temporary file next to the index, and the runs are merged into the index, so that
+     * only one run is held in memory.
+     */
+    public static final class Writer implements Closeable {
+        /**
+         * The default number of records of a run, which take about 40 MB of heap.
+         */
+        public static final int DEFAULT_RUN_SIZE = 1 << 20;
+
+        private final Path path;
+
+        private final Instant snapshotTime;
+
+        private final int runSize;
+
+        private final List<Record> run = new ArrayList<>();
+
+        private final List<Path> runs = new ArrayList<>();
+
+        /**
+         * @param path the file, which is replaced
+         * @param snapshotTime the time of the snapshot of the build systems
+         */
+        public Writer(Path path, Instant snapshotTime) {
+            this(path, snapshotTime, DEFAULT_RUN_SIZE);
+        }
+
+        /**
+         * @param path the file, which is replaced
+         * @param snapshotTime the time of the snapshot of the build systems
+         * @param runSize the maximum number of records sorted in memory
+         */
+        public Writer(Path path, Instant snapshotTime, int runSize) {
+            this.path = path;
+            this.snapshotTime = snapshotTime;
+            this.runSize = runSize;
+        }
+
+        /**
+         * Adds an entry to the index.
+         *
+         * @param entry the entry
+         * @throws IOException if the run can't be written
+         * @throws IllegalArgumentException if the checksum is not an MD5 checksum or the build ID is not a number
+         */
+        public void add(Entry entry) throws IOException {
+            if (!DigestUtils.isMd5(entry.md5())) {
+                throw new IllegalArgumentException("Invalid MD5 checksum " + entry.md5());
+            }
+
+            run.add(
+                    new Record(
+                            DigestUtils.parseHexLong(entry.md5(), 0),
+                            DigestUtils.parseHexLong(entry.md5(), 16),
+                            (byte) entry.build().getBuildSystem().ordinal(),
+                            Integer.parseInt(entry.build().getValue()),
+                            entry.archiveId()));
+
+            if (run.size() >= runSize) {
+                flushRun();
+            }
+        }
+
+        /**
+         * Merges the runs into the index file.
+         *
+         * @return the number of records of the index
+         * @throws IOException if the index can't be written
+         */
+        public long finish() throws IOException {
+            flushRun();
+
+            List<RunReader> readers = new ArrayList<>(runs.size());
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(Comparator.comparing(RunReader::current, ORDER));
+            long[] starts = new long[PREFIXES + 1];
+            long size = 0L;
+
+            try (FileChannel channel = FileChannel.open(
+                    path,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Path runPath : runs) {
+                    RunReader reader = new RunReader(runPath);
+                    readers.add(reader);
+
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                }
+
+                // The records are written after the header and the table, which are only known at the end
+                channel.position(HEADER_SIZE + TABLE_SIZE);
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+
+                while (!queue.isEmpty()) {
+                    RunReader reader = queue.poll();
+                    Record record = reader.current();
+                    record.write(out);
+                    starts[prefix(record.high()) + 1]++;
+                    size++;
+
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                }
+
+                out.flush();
+
+                for (int i = 1; i <= PREFIXES; i++) {
+                    starts[i] += starts[i - 1];
+                }
+
+                ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE + TABLE_SIZE);
+                head.putInt(MAGIC).putInt(VERSION).putLong(size).putLong(snapshotTime.toEpochMilli());
+
+                for (long start : starts) {
+                    head.putLong(start);
+                }
+
+                head.flip();
+
+                while (head.hasRemaining()) {
+                    channel.write(head, head.position());
+                }
+            } finally {
+                for (RunReader reader : readers) {
+                    reader.close();
+                }
+            }
+
+            return size;
+        }
+
+        /**
+         * Deletes the runs.
+         */
+        @Override
+        public void close() throws IOException {
+            for (Path runPath : runs) {
+                Files.deleteIfExists(runPath);
+            }
+
+            runs.clear();
+            run.clear();
+        }
+
+        private void flushRun() throws IOException {
+            if (run.isEmpty()) {
+                return;
+            }
+
+            run.sort(ORDER);
+            Path runPath = Files.createTempFile(path.toAbsolutePath().getParent(), "checksum-index-run-", ".tmp");
+            runs.add(runPath);
+
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(runPath), BUFFER_SIZE))) {
+                for (Record record : run) {
+                    record.write(out);
+                }
+            }
+
+            run.clear();
+        }
+    }
+
+    /**
+     * Reader of the sorted records of a run.
+     */
+    private static final class RunReader implements Closeable {
+        private final DataInputStream in;
+
+        private Record current;
+
+        RunReader(Path path) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE));
+        }
+
+        boolean next() throws IOException {
+            try {
+                current = new Record(in.readLong(), in.readLong(), in.readByte(), in.readInt(), in.readInt());
+                return true;
+            } catch (EOFException e) {
+                current = null;
+                return false;
+            }
+        }
+
+        Record current() {
+            return current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private record Record(long high, long low, byte buildSystem, int buildId, int archiveId) {
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(high);
+            out.writeLong(low);
+            out.writeByte(buildSystem);
+            out.writeInt(buildId);
+            out.writeInt(archiveId);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Key of a checksum cache in the compact encoding, which is the raw digest of 16, 20 or 32 bytes instead of its
+ * hexadecimal string.
+ */
+public final class ChecksumKey {
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final byte[] digest;
+
+    ChecksumKey(byte[] digest) {
+        this.digest = digest;
+    }
+
+    /**
+     * Returns the key of a checksum, if the checksum is a lowercase hexadecimal MD5, SHA-1 or SHA-256 digest, which is
+     * the only form that converts back to the same string.
+     *
+     * @param checksum the checksum
+     * @return the key, or null if the checksum is kept as it is
+     */
+    public static ChecksumKey of(String checksum) {
+        if (checksum == null || (checksum.length() != 32 && checksum.length() != 40 && checksum.length() != 64)) {
+            return null;
+        }
+
+        for (int i = 0; i < checksum.length(); i++) {
+            char c = checksum.charAt(i);
+
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return null;
+            }
+        }
+
+        return new ChecksumKey(HEX.parseHex(checksum));
+    }
+
+    byte[] getDigest() {
+        return digest;
+    }
+
+    public String toHex() {
+        return HEX.formatHex(digest);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof ChecksumKey other && Arrays.equals(digest, other.digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(digest);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.infinispan.commons.api.BasicCache;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.koji.KojiBuild;
+import org.jboss.pnc.common.concurrent.MDCScheduledThreadPoolExecutor;
+import org.jboss.pnc.common.concurrent.NamedThreadFactory;
+import org.jboss.pnc.deliverablesanalyzer.utils.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Optional {@link ChecksumFilter} of all the checksums known to Koji and PNC, loaded from a snapshot file which is
+ * reloaded whenever it changes. The files whose checksums are definitely not in the filter are not looked up, they are
+ * not found. The filter misses the builds completed after its snapshot, so it is only used while it is newer than the
+ * newest build found by the analyses, and while it is younger than its max age, as a node which just started hasn't
+ * found any build yet.
+ */
+@ApplicationScoped
+public class ChecksumPrefilter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChecksumPrefilter.class);
+
+    // The caches of the MD5 checksums found in Koji and in PNC
+    private static final List<String> CHECKSUMS_CACHE_NAMES = List
+            .of("checksums-" + ChecksumType.md5, "checksums-pnc-" + ChecksumType.md5);
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    CacheStartup cacheStartup;
+
+    @ConfigProperty(name = "analysis.checksum-filter.path")
+    Optional<Path> path;
+
+    @ConfigProperty(name = "analysis.checksum-filter.refresh-interval", defaultValue = "10m")
+    Duration refreshInterval;
+
+    @ConfigProperty(name = "analysis.checksum-filter.max-age", defaultValue = "1h")
+    Duration maxAge;
+
+    @ConfigProperty(name = "analysis.checksum-filter.false-positive-rate", defaultValue = "0.01")
+    double falsePositiveRate;
+
+    private final AtomicReference<Instant> newestBuild = new AtomicReference<>(Instant.EPOCH);
+
+    private volatile ChecksumFilter filter;
+
+    private volatile FileTime loadedModifiedTime;
+
+    private ScheduledExecutorService scheduler;
+
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    public void init() {
+        rejectedCounter = Counter.builder("analysis.checksum-filter.rejected")
+                .description("Number of lookups left out because the checksum filter doesn't contain the checksum")
+                .register(registry);
+        Gauge.builder("analysis.checksum-filter.entries", this, prefilter -> {
+            ChecksumFilter current = prefilter.filter;
+            return current != null ? current.getEntries() : 0.0d;
+        }).description("Number of checksums in the loaded checksum filter").register(registry);
+
+        if (path.isEmpty()) {
+            LOGGER.info("Checksum filter disabled");
+            return;
+        }
+
+        refresh();
+
+        scheduler = new MDCScheduledThreadPoolExecutor(1, new NamedThreadFactory("checksum-filter"));
+        scheduler.scheduleWithFixedDelay(
+                this::refresh,
+                refreshInterval.toMillis(),
+                refreshInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns whether the checksum is definitely not known to the build systems, so it doesn't need to be looked up.
+     *
+     * @param checksum the checksum of a file
+     * @return true if the file can't be found in any build
+     */
+    public boolean rejects(Checksum checksum) {
+        ChecksumFilter current = filter;
+
+        if (current == null || checksum.getValue() == null || checksum.getType() != ChecksumType.md5
+                || !current.getSnapshotTime().isAfter(newestBuild.get()) || isTooOld(current)) {
+            return false;
+        }
+
+        if (current.mightContain(checksum.getValue())) {
+            return false;
+        }
+
+        rejectedCounter.increment();
+        return true;
+    }
+
+    /**
+     * Remembers the completion time of the newest build found by Build Finder, so that a filter older than the build
+     * is no longer used.
+     *
+     * @param builds the builds found by Build Finder
+     */
+    public void recordBuilds(Map<BuildSystemInteger, KojiBuild> builds) {
+        for (KojiBuild build : builds.values()) {
+            Date completionTime = build.getBuildInfo() != null ? build.getBuildInfo().getCompletionTime() : null;
+
+            if (completionTime == null) {
+                continue;
+            }
+
+            Instant completed = completionTime.toInstant();
+
+            if (newestBuild.getAndAccumulate(completed, (a, b) -> a.isAfter(b) ? a : b).isBefore(completed)) {
+                ChecksumFilter current = filter;
+
+                if (current != null && !current.getSnapshotTime().isAfter(completed)) {
+                    LOGGER.warn(
+                            "Checksum filter of {} is older than build {} completed at {}, it is not used until it is"
+                                    + " refreshed",
+                            current.getSnapshotTime(),
+                            build.getBuildInfo().getNvr(),
+                            completed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the caches have started, so that the filter can be exported.
+     *
+     * @return true if the filter can be exported
+     */
+    public boolean isExportAvailable() {
+        return cacheStartup.getCacheManager() != null;
+    }
+
+    /**
+     * Writes a filter of the checksums in the caches to a stream. The filter is written to a temporary file first.
+     *
+     * @param out the stream of the filter, which is closed
+     * @throws IOException if the filter can't be written
+     * @throws IllegalStateException if the caches have not started
+     */
+    public void export(OutputStream out) throws IOException {
+        BasicCacheContainer cacheManager = cacheStartup.getCacheManager();
+
+        if (cacheManager == null) {
+            throw new IllegalStateException("The caches have not started");
+        }
+
+        Path file = Files.createTempFile("checksum-filter-", ".filter");
+
+        try (out) {
+            export(cacheManager, falsePositiveRate, file);
+            Files.copy(file, out);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Writes a filter of the MD5 checksums in the {@code checksums-md5} and {@code checksums-pnc-md5} caches, which
+     * are the checksums found in Koji and PNC by the analyses. The filter only holds the checksums of the caches at the
+     * time of the export, so the caches of an analyzer which has looked up the files of the deliverables are exported.
+     *
+     * @param cacheManager the cache manager
+     * @param falsePositiveRate the rate of the checksums which the filter reports as known although they are not
+     * @param target the filter file, which is replaced
+     * @throws IOException if the filter can't be written
+     */
+    public static void export(BasicCacheContainer cacheManager, double falsePositiveRate, Path target)
+            throws IOException {
+        Instant snapshotTime = Instant.now();
+        long expectedEntries = 0L;
+
+        for (String cacheName : CHECKSUMS_CACHE_NAMES) {
+            BasicCache<?, ?> cache = cacheManager.getCache(cacheName);
+
+            if (cache != null) {
+                expectedEntries += cache.size();
+            }
+        }
+
+        ChecksumFilter exported = ChecksumFilter.create(Math.max(1L, expectedEntries), falsePositiveRate, snapshotTime);
+
+        for (String cacheName : CHECKSUMS_CACHE_NAMES) {
+            BasicCache<?, ?> cache = cacheManager.getCache(cacheName);
+
+            if (cache == null) {
+                continue;
+            }
+
+            for (Object key : cache.keySet()) {
+                if (key instanceof String md5 && DigestUtils.isMd5(md5)) {
+                    exported.add(md5);
+                }
+            }
+        }
+
+        exported.writeTo(target);
+
+        LOGGER.info("Exported {} checksums to filter {}", exported.getEntries(), target);
+    }
+
+    private boolean isTooOld(ChecksumFilter current) {
+        return current.getSnapshotTime().plus(maxAge).isBefore(Instant.now());
+    }
+
+    void refresh() {
+        Path file = path.orElseThrow();
+
+        try {
+            if (!Files.exists(file)) {
+                LOGGER.warn("Checksum filter {} doesn't exist", file);
+                return;
+            }
+
+            FileTime modifiedTime = Files.getLastModifiedTime(file);
+
+            if (modifiedTime.equals(loadedModifiedTime)) {
+                return;
+            }
+
+            ChecksumFilter loaded = ChecksumFilter.read(file);
+            filter = loaded;
+            loadedModifiedTime = modifiedTime;
+
+            LOGGER.info(
+                    "Loaded checksum filter {} with {} checksums of snapshot {}",
+                    file,
+                    loaded.getEntries(),
+                    loaded.getSnapshotTime());
+
+            if (isTooOld(loaded)) {
+                LOGGER.warn(
+                        "Checksum filter {} of snapshot {} is older than {}, it is not used until it is refreshed",
+                        file,
+                        loaded.getSnapshotTime(),
+                        maxAge);
+            }
+        } catch (IOException | RuntimeException e) {
+            // The previous filter is kept, it is still consistent with its snapshot time
+            LOGGER.warn("Failed to load checksum filter {}", file, e);
+        }
+    }
+}
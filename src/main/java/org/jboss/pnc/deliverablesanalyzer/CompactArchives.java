@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.jboss.pnc.build.finder.protobuf.ListKojiArchiveInfoProtobufWrapper;
+
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+
+/**
+ * Value of a checksum cache in the compact encoding. The archives are marshalled field by field instead of as JSON,
+ * they refer to their build by its id like in Koji, and the checksum of an archive is left out when it is the checksum
+ * of the key.
+ */
+public final class CompactArchives {
+    private final String checksum;
+
+    private final List<KojiArchiveInfo> archives;
+
+    /**
+     * @param checksum the checksum of the key, which is left out of the archives, or null
+     * @param archives the archives with the checksum
+     */
+    public CompactArchives(String checksum, List<KojiArchiveInfo> archives) {
+        this.checksum = checksum;
+        this.archives = archives;
+    }
+
+    String getChecksum() {
+        return checksum;
+    }
+
+    List<KojiArchiveInfo> getArchives() {
+        return archives;
+    }
+
+    /**
+     * Returns the archives as Build Finder caches them, with the checksum of the key restored.
+     *
+     * @param keyChecksum the checksum of the key
+     * @return the archives
+     */
+    public ListKojiArchiveInfoProtobufWrapper toWrapper(String keyChecksum) {
+        for (KojiArchiveInfo archive : archives) {
+            if (archive.getChecksum() == null) {
+                archive.setChecksum(keyChecksum);
+            }
+        }
+
+        return new ListKojiArchiveInfoProtobufWrapper(archives);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof CompactArchives other && Objects.equals(checksum, other.checksum)
+                && Objects.equals(archives, other.archives);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(checksum, archives);
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.infinispan.commons.api.BasicCache;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.protobuf.ListKojiArchiveInfoProtobufWrapper;
+
+/**
+ * Cache manager which stores the entries of the {@code checksums-*} caches of Build Finder in the compact encoding of
+ * {@link CompactChecksumSerializer}, with a {@link ChecksumKey} instead of the hexadecimal checksum and
+ * {@link CompactArchives} instead of the archives as JSON. The callers still get and put checksums and archives through
+ * every method of the cache: the keys, the archives and the functions of the methods are encoded and decoded, and the
+ * key sets, values and entry sets are views decoding the entries while iterating. The entries written in the previous
+ * encoding are not found anymore, and expire with their lifespan.
+ */
+public class CompactChecksumCacheContainer implements BasicCacheContainer, Closeable {
+    private static final Set<String> CACHE_NAMES = Arrays.stream(ChecksumType.values())
+            .map(checksumType -> "checksums-" + checksumType)
+            .collect(Collectors.toUnmodifiableSet());
+
+    private final BasicCacheContainer delegate;
+
+    public CompactChecksumCacheContainer(BasicCacheContainer delegate) {
+        this.delegate = delegate;
+    }
+
+    public BasicCacheContainer getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public <K, V> BasicCache<K, V> getCache() {
+        return delegate.getCache();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> BasicCache<K, V> getCache(String cacheName) {
+        BasicCache<Object, Object> cache = delegate.getCache(cacheName);
+
+        if (cache == null || !CACHE_NAMES.contains(cacheName)) {
+            return (BasicCache<K, V>) cache;
+        }
+
+        return (BasicCache<K, V>) Proxy.newProxyInstance(
+                BasicCache.class.getClassLoader(),
+                new Class<?>[] { BasicCache.class },
+                (proxy, method, args) -> invoke(proxy, cache, method, args));
+    }
+
+    @Override
+    public Set<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    @Override
+    public void start() {
+        delegate.start();
+    }
+
+    @Override
+    public void stop() {
+        delegate.stop();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable closeable) {
+            closeable.close();
+        } else {
+            delegate.stop();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object invoke(Object proxy, BasicCache<Object, Object> cache, Method method, Object[] args)
+            throws Throwable {
+        String name = method.getName();
+
+        if (method.getDeclaringClass() == Object.class) {
+            return switch (name) {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                default -> "compact " + cache;
+            };
+        }
+
+        if (args == null || args.length == 0) {
+            return switch (name) {
+                case "keySet" -> new KeySet(cache);
+                case "values" -> new Values(cache);
+                case "entrySet" -> new EntrySet(cache);
+                default -> call(cache, method, args);
+            };
+        }
+
+        return switch (name) {
+            case "getAllAsync" -> getAllAsync(cache, (Set<?>) args[0]);
+            case "putAll", "putAllAsync" -> {
+                Object[] encoded = args.clone();
+                encoded[0] = encodeEntries((Map<?, ?>) args[0]);
+                yield call(cache, method, encoded);
+            }
+            case "containsValue" -> new Values(cache).contains(args[0]);
+            case "forEach" -> {
+                forEach(cache, (BiConsumer<Object, Object>) args[0]);
+                yield null;
+            }
+            case "replaceAll" -> {
+                replaceAll(cache, (BiFunction<Object, Object, Object>) args[0]);
+                yield null;
+            }
+            case "query", "continuousQuery" -> call(cache, method, args);
+            default -> {
+                // Only the checksums are encoded, any other key is passed as it is
+                if (!(args[0] instanceof String checksum)) {
+                    yield call(cache, method, args);
+                }
+
+                yield decode(checksum, call(cache, method, encodeArguments(checksum, name, args)));
+            }
+        };
+    }
+
+    /**
+     * Encodes the arguments of a method of the cache taking the checksum as its first argument: the checksum, the
+     * archives and the functions, which see the checksum and the archives and return the archives to store.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object[] encodeArguments(String checksum, String name, Object[] args) {
+        Object[] encoded = args.clone();
+        encoded[0] = encodeKey(checksum);
+
+        for (int i = 1; i < args.length; i++) {
+            Object arg = args[i];
+
+            if (arg instanceof BiFunction<?, ?, ?> function) {
+                BiFunction<Object, Object, Object> f = (BiFunction<Object, Object, Object>) function;
+                encoded[i] = name.startsWith("merge")
+                        ? (BiFunction<Object, Object, Object>) (oldValue, value) -> encodeValue(
+                                checksum,
+                                f.apply(decode(checksum, oldValue), decode(checksum, value)))
+                        : (BiFunction<Object, Object, Object>) (key, value) -> encodeValue(
+                                checksum,
+                                f.apply(checksum, decode(checksum, value)));
+            } else if (arg instanceof Function<?, ?> function) {
+                Function<Object, Object> f = (Function<Object, Object>) function;
+                encoded[i] = (Function<Object, Object>) key -> encodeValue(checksum, f.apply(checksum));
+            } else {
+                encoded[i] = encodeValue(checksum, arg);
+            }
+        }
+
+        return encoded;
+    }
+
+    private static Object call(BasicCache<?, ?> cache, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(cache, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Object encodeKey(String checksum) {
+        ChecksumKey key = ChecksumKey.of(checksum);
+        return key != null ? key : checksum;
+    }
+
+    private static String decodeKey(Object key) {
+        return key instanceof ChecksumKey checksumKey ? checksumKey.toHex() : (String) key;
+    }
+
+    private static Object encodeValue(String checksum, Object value) {
+        if (value instanceof ListKojiArchiveInfoProtobufWrapper wrapper) {
+            return new CompactArchives(checksum, wrapper.getData());
+        }
+
+        return value;
+    }
+
+    private static Object decode(String checksum, Object value) {
+        if (value instanceof CompactArchives compactArchives) {
+            return compactArchives.toWrapper(checksum);
+        }
+
+        if (value instanceof CompletionStage<?> stage) {
+            return stage.thenApply(result -> decode(checksum, result)).toCompletableFuture();
+        }
+
+        return value;
+    }
+
+    private static Map.Entry<Object, Object> decode(Map.Entry<Object, Object> entry) {
+        String checksum = decodeKey(entry.getKey());
+        return new AbstractMap.SimpleImmutableEntry<>(checksum, decode(checksum, entry.getValue()));
+    }
+
+    private static Map<Object, Object> encodeEntries(Map<?, ?> entries) {
+        Map<Object, Object> encoded = new HashMap<>(entries.size());
+
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            String checksum = (String) entry.getKey();
+            encoded.put(encodeKey(checksum), encodeValue(checksum, entry.getValue()));
+        }
+
+        return encoded;
+    }
+
+    /**
+     * Gets the entries of the checksums with a single read, keyed by the checksums.
+     */
+    private static CompletableFuture<Map<Object, Object>> getAllAsync(BasicCache<Object, Object> cache, Set<?> keys) {
+        Map<Object, String> checksums = new HashMap<>(keys.size());
+
+        for (Object key : keys) {
+            checksums.put(encodeKey((String) key), (String) key);
+        }
+
+        return cache.getAllAsync(checksums.keySet()).thenApply(entries -> {
+            Map<Object, Object> decoded = new HashMap<>(entries.size());
+
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                String checksum = checksums.get(entry.getKey());
+                decoded.put(checksum, decode(checksum, entry.getValue()));
+            }
+
+            return decoded;
+        });
+    }
+
+    private static void forEach(BasicCache<Object, Object> cache, BiConsumer<Object, Object> action) {
+        for (Map.Entry<Object, Object> entry : cache.entrySet()) {
+            Map.Entry<Object, Object> decoded = decode(entry);
+            action.accept(decoded.getKey(), decoded.getValue());
+        }
+    }
+
+    private static void replaceAll(BasicCache<Object, Object> cache, BiFunction<Object, Object, Object> function) {
+        for (Map.Entry<Object, Object> entry : cache.entrySet()) {
+            String checksum = decodeKey(entry.getKey());
+            Object value = function.apply(checksum, decode(checksum, entry.getValue()));
+            cache.replace(entry.getKey(), entry.getValue(), encodeValue(checksum, value));
+        }
+    }
+
+    /**
+     * Checksums of the entries, decoded while iterating over the keys of the cache.
+     */
+    private static final class KeySet extends AbstractSet<Object> {
+        private final BasicCache<Object, Object> cache;
+
+        private KeySet(BasicCache<Object, Object> cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            Iterator<Object> keys = cache.keySet().iterator();
+
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return keys.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    return decodeKey(keys.next());
+                }
+
+                @Override
+                public void remove() {
+                    keys.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return cache.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String checksum && cache.containsKey(encodeKey(checksum));
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return o instanceof String checksum && cache.remove(encodeKey(checksum)) != null;
+        }
+    }
+
+    /**
+     * Entries with the checksums and the archives, decoded while iterating over the entries of the cache.
+     */
+    private static final class EntrySet extends AbstractSet<Map.Entry<Object, Object>> {
+        private final BasicCache<Object, Object> cache;
+
+        private EntrySet(BasicCache<Object, Object> cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public Iterator<Map.Entry<Object, Object>> iterator() {
+            Iterator<Map.Entry<Object, Object>> entries = cache.entrySet().iterator();
+
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Map.Entry<Object, Object> next() {
+                    return decode(entries.next());
+                }
+
+                @Override
+                public void remove() {
+                    entries.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Archives of the entries, which need their keys to restore the checksums of the archives, so they are decoded
+     * while iterating over the entries of the cache.
+     */
+    private static final class Values extends AbstractCollection<Object> {
+        private final EntrySet entries;
+
+        private Values(BasicCache<Object, Object> cache) {
+            entries = new EntrySet(cache);
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            Iterator<Map.Entry<Object, Object>> iterator = entries.iterator();
+
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    return iterator.next().getValue();
+                }
+
+                @Override
+                public void remove() {
+                    iterator.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.infinispan.protostream.FileDescriptorSource;
+import org.infinispan.protostream.MessageMarshaller;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.SerializationContextInitializer;
+import org.jboss.pnc.build.finder.koji.KojiJSONUtils;
+
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBtype;
+import com.redhat.red.build.koji.model.xmlrpc.KojiChecksumType;
+
+/**
+ * Protobuf schema and marshallers of the compact encoding of the checksum caches, see {@link ChecksumKey} and
+ * {@link CompactArchives}. The types have a type id, so that a wrapped key or value doesn't carry the name of its type,
+ * and the fields of an archive are marshalled one by one, except its extra information which is kept as JSON.
+ */
+public class CompactChecksumSerializer implements SerializationContextInitializer {
+    private static final String PACKAGE = "org.jboss.pnc.deliverablesanalyzer";
+
+    private static final String PROTO_FILE = """
+            syntax = "proto2";
+            package org.jboss.pnc.deliverablesanalyzer;
+
+            /** @TypeId(1000100) */
+            message ChecksumKey {
+               optional bytes digest = 1;
+            }
+
+            message CompactArchive {
+               optional int32 archiveId = 1;
+               optional int32 buildId = 2;
+               optional string filename = 3;
+               optional int32 size = 4;
+               optional string checksum = 5;
+               optional string checksumType = 6;
+               optional string extension = 7;
+               optional int32 typeId = 8;
+               optional string typeExtensions = 9;
+               optional string typeDescription = 10;
+               optional string buildType = 11;
+               optional int32 buildTypeId = 12;
+               optional string groupId = 13;
+               optional string artifactId = 14;
+               optional string version = 15;
+               optional string classifier = 16;
+               optional string relPath = 17;
+               repeated string platforms = 18;
+               repeated string flags = 19;
+               optional string arch = 20;
+               optional bool rootId = 21;
+               optional bool metadataOnly = 22;
+               optional int32 buildrootId = 23;
+               optional string extra = 24;
+            }
+
+            /** @TypeId(1000101) */
+            message CompactArchives {
+               repeated CompactArchive archives = 1;
+            }
+            """;
+
+    @Override
+    public String getProtoFileName() {
+        return "deliverables-analyzer.proto";
+    }
+
+    @Override
+    public String getProtoFile() {
+        return PROTO_FILE;
+    }
+
+    @Override
+    public void registerSchema(SerializationContext serializationContext) {
+        serializationContext.registerProtoFiles(FileDescriptorSource.fromString(getProtoFileName(), getProtoFile()));
+    }
+
+    @Override
+    public void registerMarshallers(SerializationContext serializationContext) {
+        serializationContext.registerMarshaller(new ChecksumKeyMarshaller());
+        serializationContext.registerMarshaller(new ArchiveMarshaller());
+        serializationContext.registerMarshaller(new CompactArchivesMarshaller());
+    }
+
+    /**
+     * An archive of the compact encoding, as the archives of Build Finder already have a marshaller.
+     */
+    private record Archive(KojiArchiveInfo info, String keyChecksum) {
+    }
+
+    private static final class ChecksumKeyMarshaller implements MessageMarshaller<ChecksumKey> {
+        @Override
+        public ChecksumKey readFrom(ProtoStreamReader reader) throws IOException {
+            return new ChecksumKey(reader.readBytes("digest"));
+        }
+
+        @Override
+        public void writeTo(ProtoStreamWriter writer, ChecksumKey key) throws IOException {
+            writer.writeBytes("digest", key.getDigest());
+        }
+
+        @Override
+        public Class<? extends ChecksumKey> getJavaClass() {
+            return ChecksumKey.class;
+        }
+
+        @Override
+        public String getTypeName() {
+            return PACKAGE + ".ChecksumKey";
+        }
+    }
+
+    private static final class CompactArchivesMarshaller implements MessageMarshaller<CompactArchives> {
+        @Override
+        public CompactArchives readFrom(ProtoStreamReader reader) throws IOException {
+            List<Archive> archives = reader.readCollection("archives", new ArrayList<>(), Archive.class);
+            return new CompactArchives(null, archives.stream().map(Archive::info).toList());
+        }
+
+        @Override
+        public void writeTo(ProtoStreamWriter writer, CompactArchives compactArchives) throws IOException {
+            List<Archive> archives = compactArchives.getArchives()
+                    .stream()
+                    .map(archive -> new Archive(archive, compactArchives.getChecksum()))
+                    .toList();
+            writer.writeCollection("archives", archives, Archive.class);
+        }
+
+        @Override
+        public Class<? extends CompactArchives> getJavaClass() {
+            return CompactArchives.class;
+        }
+
+        @Override
+        public String getTypeName() {
+            return PACKAGE + ".CompactArchives";
+        }
+    }
+
+    private static final class ArchiveMarshaller implements MessageMarshaller<Archive> {
+        @Override
+        @SuppressWarnings("unchecked")
+        public Archive readFrom(ProtoStreamReader reader) throws IOException {
+            KojiArchiveInfo info = new KojiArchiveInfo();
+            info.setArchiveId(reader.readInt("archiveId"));
+            info.setBuildId(reader.readInt("buildId"));
+            info.setFilename(reader.readString("filename"));
+            info.setSize(reader.readInt("size"));
+            info.setChecksum(reader.readString("checksum"));
+            String checksumType = reader.readString("checksumType");
+            info.setChecksumType(checksumType != null ? KojiChecksumType.valueOf(checksumType) : null);
+            info.setExtension(reader.readString("extension"));
+            info.setTypeId(reader.readInt("typeId"));
+            info.setTypeExtensions(reader.readString("typeExtensions"));
+            info.setTypeDescription(reader.readString("typeDescription"));
+            String buildType = reader.readString("buildType");
+            info.setBuildType(buildType != null ? KojiBtype.valueOf(buildType) : null);
+            info.setBuildTypeId(reader.readInt("buildTypeId"));
+            info.setGroupId(reader.readString("groupId"));
+            info.setArtifactId(reader.readString("artifactId"));
+            info.setVersion(reader.readString("version"));
+            info.setClassifier(reader.readString("classifier"));
+            info.setRelPath(reader.readString("relPath"));
+            List<String> platforms = reader.readCollection("platforms", new ArrayList<>(), String.class);
+            info.setPlatforms(platforms.isEmpty() ? null : platforms);
+            List<String> flags = reader.readCollection("flags", new ArrayList<>(), String.class);
+            info.setFlags(flags.isEmpty() ? null : flags);
+            info.setArch(reader.readString("arch"));
+            info.setRootId(reader.readBoolean("rootId"));
+            info.setMetadataOnly(reader.readBoolean("metadataOnly"));
+            info.setBuildrootId(reader.readInt("buildrootId"));
+            String extra = reader.readString("extra");
+            info.setExtra(extra != null ? KojiJSONUtils.readValue(extra, Map.class) : null);
+            return new Archive(info, null);
+        }
+
+        @Override
+        public void writeTo(ProtoStreamWriter writer, Archive archive) throws IOException {
+            KojiArchiveInfo info = archive.info();
+            writer.writeInt("archiveId", info.getArchiveId());
+            writer.writeInt("buildId", info.getBuildId());
+            writer.writeString("filename", info.getFilename());
+            writer.writeInt("size", info.getSize());
+
+            // The checksum of the key is restored when the archive is read
+            if (info.getChecksum() != null && !info.getChecksum().equals(archive.keyChecksum())) {
+                writer.writeString("checksum", info.getChecksum());
+            }
+
+            writer.writeString("checksumType", info.getChecksumType() != null ? info.getChecksumType().name() : null);
+            writer.writeString("extension", info.getExtension());
+            writer.writeInt("typeId", info.getTypeId());
+            writer.writeString("typeExtensions", info.getTypeExtensions());
+            writer.writeString("typeDescription", info.getTypeDescription());
+            writer.writeString("buildType", info.getBuildType() != null ? info.getBuildType().name() : null);
+            writer.writeInt("buildTypeId", info.getBuildTypeId());
+            writer.writeString("groupId", info.getGroupId());
+            writer.writeString("artifactId", info.getArtifactId());
+            writer.writeString("version", info.getVersion());
+            writer.writeString("classifier", info.getClassifier());
+            writer.writeString("relPath", info.getRelPath());
+            writer.writeCollection("platforms", info.getPlatforms(), String.class);
+            writer.writeCollection("flags", info.getFlags(), String.class);
+            writer.writeString("arch", info.getArch());
+            writer.writeBoolean("rootId", info.getRootId());
+            writer.writeBoolean("metadataOnly", info.getMetadataOnly());
+            writer.writeInt("buildrootId", info.getBuildrootId());
+            writer.writeString(
+                    "extra",
+                    info.getExtra() != null ? KojiJSONUtils.writeValueAsString(info.getExtra()) : null);
+        }
+
+        @Override
+        public Class<? extends Archive> getJavaClass() {
+            return Archive.class;
+        }
+
+        @Override
+        public String getTypeName() {
+            return PACKAGE + ".CompactArchive";
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Downloads the deliverables into the scratch directory of their analysis. The JDK client is used, because closing its
+ * response stream aborts the exchange instead of draining it, so a cancelled download stops within a single read. A
+ * download fails with an {@link HttpTimeoutException} if the server can't be connected within the connect timeout, or
+ * doesn't send the response or any of its content for the idle timeout, so a stalled server doesn't hold the analysis
+ * when it has no deadline.
+ */
+@ApplicationScoped
+public class Downloader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Downloader.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @ConfigProperty(name = "analysis.download.connect-timeout", defaultValue = "30s")
+    Duration connectTimeout;
+
+    @ConfigProperty(name = "analysis.download.idle-timeout", defaultValue = "5m")
+    Duration idleTimeout;
+
+    private HttpClient client;
+
+    private ScheduledExecutorService watchdog;
+
+    @PostConstruct
+    public void init() {
+        client = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build();
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "download-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * Downloads the content of the URI to the file. The partially downloaded file is left for the caller to delete.
+     *
+     * @param uri the URI
+     * @param target the file
+     * @param token the cancellation token of the analysis
+     * @param progress called with the number of bytes of each downloaded chunk, may abort the download by throwing
+     * @return the number of downloaded bytes
+     * @throws HttpTimeoutException if the server couldn't be connected or stalled
+     * @throws IOException Thrown in case of the request failure
+     * @throws CancellationException if the token was cancelled or the thread was interrupted
+     */
+    public long download(URI uri, Path target, CancellationToken token, LongConsumer progress) throws IOException {
+        return download(uri, target, token, progress, null);
+    }
+
+    /**
+     * Downloads the content of the URI to the file, updating the digest with the content as it is written. The
+     * partially downloaded file is left for the caller to delete.
+     *
+     * @param uri the URI
+     * @param target the file
+     * @param token the cancellation token of the analysis
+     * @param progress called with the number of bytes of each downloaded chunk, may abort the download by throwing
+     * @param digest the digest of the content, or null
+     * @return the number of downloaded bytes
+     * @throws HttpTimeoutException if the server couldn't be connected or stalled
+     * @throws IOException Thrown in case of the request failure
+     * @throws CancellationException if the token was cancelled or the thread was interrupted
+     */
+    public long download(URI uri, Path target, CancellationToken token, LongConsumer progress, MessageDigest digest)
+            throws IOException {
+        token.throwIfCancelled();
+
+        LOGGER.debug("Downloading {} to {}", uri, target);
+
+        HttpResponse<InputStream> response;
+
+        try {
+            HttpRequest request = HttpRequest.newBuilder(uri).timeout(idleTimeout).GET().build();
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Download of " + uri + " was interrupted");
+        }
+
+        long bytes = 0L;
+        InputStream in = response.body();
+        AtomicLong lastRead = new AtomicLong(System.nanoTime());
+        AtomicBoolean stalled = new AtomicBoolean();
+        long period = Math.max(idleTimeout.toNanos() / 4L, 1L);
+        ScheduledFuture<?> check = watchdog.scheduleWithFixedDelay(() -> {
+            if (System.nanoTime() - lastRead.get() > idleTimeout.toNanos() && stalled.compareAndSet(false, true)) {
+                closeQuietly(in);
+            }
+        }, period, period, TimeUnit.NANOSECONDS);
+
+        try (in;
+                CancellationToken.Registration registration = token.onCancel(() -> closeQuietly(in));
+                OutputStream out = Files.newOutputStream(target)) {
+            if (response.statusCode() != 200) {
+                throw new IOException(
+                        String.format("GET request of %s failed! ResponseCode: %s", uri, response.statusCode()));
+            }
+
+            // The watchdog and the token close the response stream, which fails the reads of the digest stream too
+            InputStream source = digest != null ? new DigestInputStream(in, digest) : in;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+
+            while ((read = source.read(buffer)) != -1) {
+                lastRead.set(System.nanoTime());
+                token.throwIfCancelled();
+                progress.accept(read);
+                out.write(buffer, 0, read);
+                bytes += read;
+            }
+        } catch (IOException e) {
+            // Reading a stream closed by the token or by the watchdog fails
+            token.throwIfCancelled();
+
+            if (stalled.get()) {
+                throw new HttpTimeoutException("Download of " + uri + " stalled for " + idleTimeout);
+            }
+
+            throw e;
+        } finally {
+            check.cancel(false);
+        }
+
+        LOGGER.debug("Downloaded {} bytes of {}", bytes, uri);
+
+        return bytes;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close download stream", e);
+        }
+    }
+}
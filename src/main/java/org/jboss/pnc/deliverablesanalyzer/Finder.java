@@ -16,32 +16,46 @@
 package org.jboss.pnc.deliverablesanalyzer;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.stream.Collectors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
 
 import org.apache.commons.collections4.MultiValuedMap;
 import org.apache.commons.vfs2.FileSystemException;
-import org.eclipse.microprofile.context.ManagedExecutor;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.infinispan.commons.api.BasicCacheContainer;
+import org.jboss.pnc.api.deliverablesanalyzer.dto.AnalysisReport;
 import org.jboss.pnc.api.deliverablesanalyzer.dto.FinderResult;
+import org.jboss.pnc.api.dto.ExceptionResolution;
 import org.jboss.pnc.api.dto.exception.ReasonedException;
 import org.jboss.pnc.api.enums.ResultStatus;
 import org.jboss.pnc.build.finder.core.BuildConfig;
 import org.jboss.pnc.build.finder.core.BuildFinder;
 import org.jboss.pnc.build.finder.core.BuildFinderListener;
 import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.build.finder.core.Checksum;
 import org.jboss.pnc.build.finder.core.ChecksumType;
 import org.jboss.pnc.build.finder.core.DistributionAnalyzer;
 import org.jboss.pnc.build.finder.core.DistributionAnalyzerListener;
@@ -49,34 +63,42 @@ import org.jboss.pnc.build.finder.core.LocalFile;
 import org.jboss.pnc.build.finder.koji.ClientSession;
 import org.jboss.pnc.build.finder.koji.KojiBuild;
 import org.jboss.pnc.build.finder.pnc.client.PncClient;
-import org.jboss.pnc.build.finder.pnc.client.PncClientImpl;
+import org.jboss.pnc.deliverablesanalyzer.model.AnalysisLookups;
+import org.jboss.pnc.deliverablesanalyzer.model.Attributions;
 import org.jboss.pnc.deliverablesanalyzer.model.FinderResultCreator;
+import org.jboss.pnc.deliverablesanalyzer.utils.ConfigUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.redhat.red.build.koji.KojiClientException;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.configuration.MemorySize;
 import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
-import jakarta.inject.Provider;
 
 @ApplicationScoped
 public class Finder {
     private static final Logger LOGGER = LoggerFactory.getLogger(Finder.class);
 
-    private final Map<String, CancelWrapper> runningOperations = new ConcurrentHashMap<>();
+    private final Map<String, AnalysisContext> runningOperations = new ConcurrentHashMap<>();
 
-    private BasicCacheContainer cacheManager;
+    private final Map<String, InFlightAnalysis> inFlightAnalyses = new ConcurrentHashMap<>();
 
     @Inject
-    ManagedExecutor executor;
+    AnalysisExecutor executor;
 
     @Inject
     BuildConfig config;
 
     @Inject
-    Provider<BasicCacheContainer> cacheProvider;
+    ChecksumPrefilter checksumPrefilter;
+
+    @Inject
+    CacheStartup cacheStartup;
 
     @Inject
     ClientSession kojiSession;
@@ -84,21 +106,65 @@ public class Finder {
     @Inject
     Cleaner cleaner;
 
+    @Inject
+    Downloader downloader;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    NotFoundCache notFoundCache;
+
+    @Inject
+    OfflineLookups offlineLookups;
+
+    @Inject
+    PncClientPool pncClientPool;
+
+    @Inject
+    ResultCache resultCache;
+
+    @Inject
+    AttributionsCache attributionsCache;
+
+    @ConfigProperty(name = "analysis.timeout")
+    Optional<Duration> analysisTimeout;
+
+    @ConfigProperty(name = "analysis.budget.max-downloaded-size")
+    Optional<MemorySize> maxDownloadedSize;
+
+    @ConfigProperty(name = "analysis.budget.max-extracted-size")
+    Optional<MemorySize> maxExtractedSize;
+
+    @ConfigProperty(name = "analysis.budget.max-files")
+    OptionalLong maxFiles;
+
+    @ConfigProperty(name = "analysis.budget.degrade", defaultValue = "false")
+    boolean degradeOverBudget;
+
+    @ConfigProperty(name = "analysis.lookup.batch-size", defaultValue = "500")
+    int lookupBatchSize;
+
+    private Timer cancelTimer;
+
+    private DistributionSummary reclaimedSummary;
+
     @PostConstruct
     public void init() {
-        if (Boolean.FALSE.equals(config.getDisableCache())) {
-            cacheManager = cacheProvider.get();
-            LOGGER.info("Initialized cache {}", cacheManager);
-        } else {
-            LOGGER.info("Cache disabled");
-        }
+        cancelTimer = Timer.builder("analysis.cancel.duration")
+                .description("Time from the cancel request until the analysis stopped")
+                .register(registry);
+        reclaimedSummary = DistributionSummary.builder("analysis.cancel.reclaimed")
+                .description("Temporary files of cancelled analyses deleted before they were used up")
+                .baseUnit("bytes")
+                .register(registry);
     }
 
     public boolean cancel(String id) {
-        CancelWrapper cancelWrapper = runningOperations.get(id);
+        AnalysisContext context = runningOperations.get(id);
 
-        if (cancelWrapper != null) {
-            cancelWrapper.cancel();
+        if (context != null) {
+            context.getCancellationToken().cancel();
             return true;
         } else {
             return false;
@@ -107,53 +173,150 @@ public class Finder {
 
     /**
      * Executes analysis of the provided archives identified by URLs, which must be downloadable using "HTTP(S)". The
-     * operation is executed synchronously, but the analysis itself runs several executors in parallel.
+     * operation is executed synchronously, but the analysis itself runs several executors in parallel. The URLs are
+     * analyzed within a single {@link AnalysisScope}, so if the analysis of any URL fails, the analysis is cancelled or
+     * it exceeds the configured timeout, the analyses of all the other URLs are interrupted as well. If the analysis
+     * exceeds its {@link AnalysisBudget} and degrading is enabled, it is repeated without analyzing the content of
+     * nested archives.
      *
      * @param id ID of the analysis
      * @param urls List of URLs
+     * @param baselineId ID of a previous analysis whose build attributions are reused for unchanged files, or null
      * @param distributionAnalyzerListener A listener for events from DistributionAnalyzer
      * @param buildFinderListener A listener for events from Build Finder
      * @param config Configuration of the analysis
-     * @return The results of the analysis, if the whole operation was successful, or the partially failed results
-     *         otherwise
+     * @return The report of the analysis, if the whole operation was successful
      */
-    public List<FinderResult> find(
+    public AnalysisReport find(
             String id,
             List<String> urls,
+            String baselineId,
             DistributionAnalyzerListener distributionAnalyzerListener,
             BuildFinderListener buildFinderListener,
             BuildConfig config) {
-        CancelWrapper cancelWrapper = new CancelWrapper();
-        runningOperations.put(id, cancelWrapper);
+        Attributions baseline = baselineId != null ? attributionsCache.get(baselineId) : null;
+        AnalysisContext context = new AnalysisContext(id, baseline, createScratchDirectory(id), createBudget());
+        long start = System.nanoTime();
 
-        // Capture all the futures used in the find method. This is used for the cancel operation
-        List<Future<FinderResult>> submittedTasks = urls.stream().map(url -> executor.submit(() -> {
-            LOGGER.debug("Analysis of URL {} started.", url);
+        if (baselineId != null) {
+            if (baseline != null) {
+                LOGGER.info("Analysis {} reuses {} attributions of analysis {}", id, baseline.size(), baselineId);
+            } else {
+                LOGGER.warn("Baseline analysis {} is not known, analysis {} looks up all the files", baselineId, id);
+            }
+        }
+
+        runningOperations.put(id, context);
 
+        try {
             try {
-                FinderResult result = find(
-                        id,
-                        URI.create(url).normalize().toURL(),
+                return new AnalysisReport(
+                        find(
+                                context,
+                                urls,
+                                distributionAnalyzerListener,
+                                buildFinderListener,
+                                config,
+                                analysisTimeout.orElse(null)));
+            } catch (BudgetExceededException e) {
+                BuildConfig usedConfig = config != null ? config : this.config;
+
+                if (!degradeOverBudget || !e.isDegradable()
+                        || Boolean.TRUE.equals(usedConfig.getDisableRecursion())) {
+                    throw e;
+                }
+
+                LOGGER.warn("{}, analysis {} is repeated without nested archives", e.getMessage(), id);
+
+                BuildConfig topLevelConfig = BuildConfig.copy(usedConfig);
+                topLevelConfig.setDisableRecursion(true);
+                context = context.retry();
+                runningOperations.put(id, context);
+
+                List<FinderResult> results = find(
+                        context,
+                        urls,
                         distributionAnalyzerListener,
                         buildFinderListener,
-                        config);
+                        topLevelConfig,
+                        analysisTimeout.map(timeout -> timeout.minusNanos(System.nanoTime() - start)).orElse(null));
+
+                return new AnalysisReport(
+                        results,
+                        ResultStatus.SUCCESS,
+                        ExceptionResolution.builder()
+                                .reason(e.getMessage() + ", so the content of nested archives was not analyzed")
+                                .proposal(e.getExceptionResolution().getProposal())
+                                .build());
+            }
+        } finally {
+            runningOperations.remove(id);
+            cleanup(context);
+        }
+    }
 
-                LOGGER.debug("Analysis of URL {} finished.", url);
+    private List<FinderResult> find(
+            AnalysisContext context,
+            List<String> urls,
+            DistributionAnalyzerListener distributionAnalyzerListener,
+            BuildFinderListener buildFinderListener,
+            BuildConfig config,
+            Duration timeout) {
+        String id = context.getId();
+
+        try (AnalysisScope<FinderResult> scope = new AnalysisScope<>(executor, timeout);
+                CancellationToken.Registration registration = context.getCancellationToken()
+                        .onCancel(scope::cancel)) {
+
+            for (String url : urls) {
+                scope.fork(() -> {
+                    LOGGER.debug("Analysis of URL {} started.", url);
+
+                    try {
+                        UrlResult result = findOrAttach(
+                                id,
+                                URI.create(url).normalize().toURL(),
+                                context,
+                                distributionAnalyzerListener,
+                                buildFinderListener,
+                                config);
+                        // The URL may have been analyzed by another analysis, so its attributions are recorded here
+                        context.getLookups().getAttributions().putAll(result.attributions());
+
+                        LOGGER.debug("Analysis of URL {} finished.", url);
+
+                        return result.result();
+                    } catch (KojiClientException e) {
+                        throw new ReasonedException(ResultStatus.SYSTEM_ERROR, "Error in Build Finder", e);
+                    } catch (MalformedURLException e) {
+                        throw new ReasonedException(ResultStatus.FAILED, e.getMessage(), "Please check the URL.", e);
+                    }
+                });
+            }
+
+            List<FinderResult> results = scope.join();
+            Attributions attributions = context.getLookups().getAttributions();
 
-                return result;
-            } catch (KojiClientException e) {
-                throw new ReasonedException(ResultStatus.SYSTEM_ERROR, "Error in Build Finder", e);
-            } catch (MalformedURLException e) {
-                throw new ReasonedException(ResultStatus.FAILED, e.getMessage(), "Please check the URL.", e);
+            if (attributions.size() > 0) {
+                attributionsCache.put(id, attributions);
+            } else {
+                LOGGER.debug("Analysis {} found no builds, it can't be the baseline of other analyses", id);
             }
-        })).collect(Collectors.toList());
-        List<Future<FinderResult>> allTasks = new ArrayList<>(submittedTasks);
 
-        try {
-            return awaitResults(submittedTasks, allTasks, cancelWrapper);
+            return results;
         } catch (CancellationException e) {
             LOGGER.debug("Analysis {} was cancelled", id, e);
             throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Awaiting results was interrupted");
+        } catch (TimeoutException e) {
+            LOGGER.debug("Analysis {} timed out", id, e);
+            throw new ReasonedException(
+                    ResultStatus.TIMED_OUT,
+                    "Analysis did not finish within " + analysisTimeout.orElseThrow(),
+                    "Please analyze fewer or smaller deliverables at once.",
+                    e);
         } catch (ExecutionException e) {
             final Throwable cause = e.getCause();
             if (cause instanceof ReasonedException ex) {
@@ -165,94 +328,288 @@ public class Finder {
                     ResultStatus.SYSTEM_ERROR,
                     cause.getMessage() == null ? cause.toString() : cause.getMessage(),
                     cause);
-        } finally {
-            runningOperations.remove(id);
         }
     }
 
-    private List<FinderResult> awaitResults(
-            List<Future<FinderResult>> submittedTasks,
-            List<Future<FinderResult>> allTasks,
-            CancelWrapper cancelWrapper) throws CancellationException, ExecutionException {
-        List<FinderResult> results = new ArrayList<>(submittedTasks.size());
+    /**
+     * Analyzes the URL, unless the same URL is already being analyzed with an equivalent config by another analysis. In
+     * that case, the running analysis is awaited and its result is returned with the ID of this analysis, and the
+     * listeners of this analysis get the events of the running analysis. If the running analysis is cancelled, one of
+     * the analyses waiting for it takes over.
+     *
+     * @param id ID of the analysis
+     * @param url url to analyze
+     * @param context State of the analysis shared by all its URLs
+     * @param distributionAnalyzerListener A listener for events from DistributionAnalyzer
+     * @param buildFinderListener A listener for events from Build Finder
+     * @param config Configuration of the analysis
+     *
+     * @return results of the analysis with the attributions of the files of the URL
+     * @throws KojiClientException Thrown in case of exceptions with Koji communication
+     */
+    UrlResult findOrAttach(
+            String id,
+            URL url,
+            AnalysisContext context,
+            DistributionAnalyzerListener distributionAnalyzerListener,
+            BuildFinderListener buildFinderListener,
+            BuildConfig config) throws KojiClientException {
+        String key = url.toExternalForm() + "#" + ConfigUtils.fingerprint(config != null ? config : this.config);
 
-        int total = submittedTasks.size();
-        int done = 0;
-        Iterator<Future<FinderResult>> it = submittedTasks.iterator();
+        while (true) {
+            InFlightAnalysis inFlight = new InFlightAnalysis();
+            inFlight.attach(distributionAnalyzerListener, buildFinderListener);
+            InFlightAnalysis running = inFlightAnalyses.putIfAbsent(key, inFlight);
 
-        while (done < total) {
-            while (it.hasNext()) {
+            if (running == null) {
                 try {
-                    Future<FinderResult> futureTask = it.next();
-
-                    if (futureTask.isDone()) {
-                        it.remove();
-                        results.add(futureTask.get());
-                        done++;
-                    } else {
-                        Thread.sleep(1000L); // FIXME
-                    }
-                } catch (InterruptedException e) {
-                    LOGGER.warn("Sleeping while awaiting results was interrupted", e);
+                    UrlResult result = findCached(id, url, context, inFlight, inFlight, config);
+                    inFlight.getResult().complete(result);
+                    return result;
+                } catch (RuntimeException | Error | KojiClientException e) {
+                    inFlight.getResult().completeExceptionally(
+                            Thread.currentThread().isInterrupted() || e instanceof CancellationException
+                                    ? new CancellationException("Analysis " + id + " of " + url + " was cancelled")
+                                    : e);
+                    throw e;
+                } finally {
+                    inFlightAnalyses.remove(key, inFlight);
                 }
             }
 
-            it = submittedTasks.iterator();
+            LOGGER.info("URL {} is already being analyzed, analysis {} waits for its result", url, id);
 
-            if (cancelWrapper.isCancelled()) {
-                LOGGER.info("Cancelling all remaining tasks: {}", allTasks.size());
-                // cancel all remaining running futures
-                allTasks.stream().filter(future -> !future.isDone()).forEach(future -> future.cancel(true));
-                LOGGER.info("All remaining tasks were cancelled");
-                throw new CancellationException("Operation was cancelled manually");
+            running.attach(distributionAnalyzerListener, buildFinderListener);
+
+            try {
+                UrlResult result = running.getResult().get();
+                return new UrlResult(
+                        FinderResult.builder()
+                                .id(id)
+                                .url(result.result().getUrl())
+                                .builds(result.result().getBuilds())
+                                .notFoundArtifacts(result.result().getNotFoundArtifacts())
+                                .build(),
+                        result.attributions());
+            } catch (CancellationException e) {
+                LOGGER.info("Analysis of URL {} which analysis {} waited for was cancelled, retrying", url, id);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Waiting for the running analysis of " + url + " was interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof KojiClientException ex) {
+                    throw ex;
+                }
+
+                if (e.getCause() instanceof RuntimeException ex) {
+                    throw ex;
+                }
+
+                throw new ReasonedException(ResultStatus.SYSTEM_ERROR, "Failed to analyze " + url, e.getCause());
             }
         }
-
-        return results;
     }
 
     /**
+     * Returns the cached result of the deliverable, if it was already analyzed with an equivalent config, or analyzes
+     * it and caches the result otherwise. If the digest of the deliverable isn't sent by its server, it is computed
+     * while downloading the deliverable, and the cache is checked again before analyzing it.
+     *
      * @param id ID of the analysis
      * @param url url to analyze
+     * @param context State of the analysis shared by all its URLs
      * @param distributionAnalyzerListener A listener for events from DistributionAnalyzer
      * @param buildFinderListener A listener for events from Build Finder
      * @param config Configuration of the analysis
      *
-     * @return results of the analysis
+     * @return results of the analysis with the attributions of the files of the URL
      * @throws KojiClientException Thrown in case of exceptions with Koji communication
      */
-    private FinderResult find(
+    UrlResult findCached(
             String id,
             URL url,
+            AnalysisContext context,
             DistributionAnalyzerListener distributionAnalyzerListener,
             BuildFinderListener buildFinderListener,
             BuildConfig config) throws KojiClientException {
-        FinderResult result;
+        BuildConfig usedConfig = config != null ? config : this.config;
+        Optional<String> key = resultCache.getKey(url, usedConfig);
+        Optional<UrlResult> cachedResult = getCachedResult(key, id, url);
 
-        List<String> files = Collections.singletonList(url.toExternalForm());
+        if (cachedResult.isPresent()) {
+            return cachedResult.get();
+        }
+
+        Path urlDirectory = null;
+
+        try {
+            String file;
+
+            if ("http".equals(url.getProtocol()) || "https".equals(url.getProtocol())) {
+                Optional<MessageDigest> digest = key.isEmpty() ? resultCache.newStreamDigest() : Optional.empty();
+                urlDirectory = context.createUrlDirectory();
+                file = download(url, urlDirectory, context, digest.orElse(null));
+
+                if (digest.isPresent()) {
+                    key = resultCache.getKey(digest.get(), usedConfig);
+                    cachedResult = getCachedResult(key, id, url);
+
+                    if (cachedResult.isPresent()) {
+                        return cachedResult.get();
+                    }
+                }
+            } else {
+                file = url.toExternalForm();
+            }
+
+            UrlResult result = find(
+                    id,
+                    url,
+                    file,
+                    context,
+                    distributionAnalyzerListener,
+                    buildFinderListener,
+                    config);
+            key.ifPresent(k -> resultCache.put(k, result.result(), result.attributions()));
+
+            return result;
+        } catch (IOException e) {
+            throw new ReasonedException(ResultStatus.SYSTEM_ERROR, "Failed to create directory for " + url, e);
+        } finally {
+            if (urlDirectory != null) {
+                // The directory of a cancelled URL is deleted before the scratch directory is measured
+                if (context.getCancellationToken().isCancelled()) {
+                    context.addDeletedAfterCancel(size(urlDirectory));
+                }
+
+                cleaner.cleanup(urlDirectory.toString());
+            }
+        }
+    }
+
+    private Optional<UrlResult> getCachedResult(Optional<String> key, String id, URL url) {
+        if (key.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Optional<FinderResult> cachedResult = resultCache.get(key.get(), id, url);
+
+        if (cachedResult.isEmpty()) {
+            return Optional.empty();
+        }
+
+        LOGGER.info("Returning cached result for {}", url);
+
+        return Optional.of(new UrlResult(cachedResult.get(), resultCache.getAttributions(key.get())));
+    }
+
+    private UrlResult find(
+            String id,
+            URL url,
+            String file,
+            AnalysisContext context,
+            DistributionAnalyzerListener distributionAnalyzerListener,
+            BuildFinderListener buildFinderListener,
+            BuildConfig config) throws KojiClientException {
+        UrlResult result;
+
+        List<String> files = Collections.singletonList(file);
+        // The analysis looks up the entries of the caches which have not started instead of waiting for them
+        BasicCacheContainer sharedCacheManager = cacheStartup.getStartedCacheManager();
+        PrefetchingCacheContainer cacheManager = sharedCacheManager != null
+                ? new PrefetchingCacheContainer(sharedCacheManager)
+                : null;
 
         LOGGER.info(
                 "Starting distribution analysis for {} with config {} and cache manager {}",
                 files,
                 config,
-                cacheManager != null ? cacheManager : "disabled");
+                cacheManager != null ? cacheManager : "disabled or starting");
 
-        DistributionAnalyzer analyzer = new DistributionAnalyzer(files, config, cacheManager);
+        // The hashing and the relay each get at most two batches ahead of the lookups of Build Finder
+        PipelinedDistributionAnalyzer analyzer = new PipelinedDistributionAnalyzer(
+                files,
+                config,
+                cacheManager,
+                2 * lookupBatchSize);
         analyzer.setListener(distributionAnalyzerListener);
 
-        Map<ChecksumType, MultiValuedMap<String, LocalFile>> checksums;
-        try {
-            checksums = analyzer.call();
-        } catch (FileSystemException e) {
-            if (e.getCause() instanceof UnknownHostException) {
-                throw new ReasonedException(ResultStatus.FAILED, "Invalid URL", "Please check the URL", e);
-            } else {
-                throw new ReasonedException(ResultStatus.SYSTEM_ERROR, "Failed to analyze checksums", e);
-            }
-        } catch (IOException e) {
-            throw new ReasonedException(ResultStatus.SYSTEM_ERROR, "Failed to analyze checksums", e);
+        // The checksums are looked up while the files are still being checksummed
+        AnalysisLookups lookups = context.getLookups();
+        AnalysisLookups.Claim claim = lookups.newClaim();
+        FutureTask<Map<ChecksumType, MultiValuedMap<String, LocalFile>>> checksums = new FutureTask<>(analyzer);
+        AnalysisBudget budget = context.getBudget();
+        BuildConfig usedConfig = config != null ? config : this.config;
+
+        // Charged on the hashing thread, so that unpacking the deliverable stops as soon as the budget is exceeded
+        analyzer.setComputedListener(budget::chargeFile);
+
+        FutureTask<Void> relay = new FutureTask<>(() -> {
+            // The caches are read once for each batch of checksums, instead of once for each checksum
+            analyzer.relay(lookupBatchSize, batch -> {
+                List<Checksum> unresolved = new ArrayList<>(batch.size());
+                Map<Checksum, Attributions.Attribution> attributions = offlineLookups.resolveAll(batch);
+
+                for (Checksum checksum : batch) {
+                    Attributions.Attribution attribution = attributions.get(checksum);
+
+                    if (attribution != null) {
+                        lookups.resolve(claim, checksum, attribution, buildFinderListener);
+                    } else if (checksumPrefilter.rejects(checksum)) {
+                        // Files unknown to the build systems are not looked up in Koji nor PNC
+                        lookups.skipNotFound(claim, checksum, buildFinderListener);
+                    } else {
+                        unresolved.add(checksum);
+                    }
+                }
+
+                Set<String> notFound = notFoundCache.findAll(unresolved, usedConfig);
+                List<Checksum> claimed = new ArrayList<>(unresolved.size());
+
+                for (Checksum checksum : unresolved) {
+                    if (notFound.contains(checksum.getValue())) {
+                        lookups.skipNotFound(claim, checksum, buildFinderListener);
+                    } else if (lookups.claim(claim, checksum, buildFinderListener)) {
+                        claimed.add(checksum);
+                    }
+                }
+
+                if (cacheManager != null) {
+                    cacheManager.prefetch(claimed);
+                }
+
+                return claimed;
+            });
+
+            return null;
+        });
+
+        executor.execute(checksums);
+        executor.execute(relay);
+
+        // Hashing stops on interrupt, Build Finder once the relay stops feeding it
+        try (CancellationToken.Registration registration = context.getCancellationToken().onCancel(() -> {
+            checksums.cancel(true);
+            relay.cancel(true);
+        })) {
+            result = findBuilds(
+                    id,
+                    url,
+                    context,
+                    claim,
+                    analyzer,
+                    cacheManager,
+                    checksums,
+                    buildFinderListener,
+                    config);
+            getChecksumsResult(relay);
+        } catch (CancellationException e) {
+            budget.throwIfExceeded();
+            throw e;
+        } finally {
+            checksums.cancel(true);
+            relay.cancel(true);
         }
-        result = findBuilds(id, url, analyzer, checksums, buildFinderListener, config);
 
         LOGGER.info("Done finding builds for {}", url);
         return result;
@@ -262,24 +619,31 @@ public class Finder {
      *
      * @param id ID of the analysis
      * @param url url to analyze
+     * @param context State of the analysis shared by all its URLs
+     * @param claim Lookups claimed by the URL, while the checksums are computed
      * @param analyzer DistributionAnalyzer object for checking checksum of files
-     * @param checksums results of checksum values from analyzer
+     * @param cacheManager the cache manager of Build Finder, or null to look up everything
+     * @param checksums running computation of the checksums by the analyzer
      * @param buildFinderListener A listener for events from Build Finder
      * @param forceConfig forced config for build finder
-     * @return results of the analysis
+     * @return results of the analysis with the attributions of the files of the URL
      * @throws KojiClientException Thrown in case of exceptions with Koji communication
      */
-    private FinderResult findBuilds(
+    private UrlResult findBuilds(
             String id,
             URL url,
+            AnalysisContext context,
+            AnalysisLookups.Claim claim,
             DistributionAnalyzer analyzer,
-            Map<ChecksumType, MultiValuedMap<String, LocalFile>> checksums,
+            BasicCacheContainer cacheManager,
+            Future<Map<ChecksumType, MultiValuedMap<String, LocalFile>>> checksums,
             BuildFinderListener buildFinderListener,
             BuildConfig forceConfig) throws KojiClientException {
+        AnalysisLookups lookups = context.getLookups();
         BuildConfig usedConfig = forceConfig != null ? forceConfig : this.config;
         URL pncURL = usedConfig.getPncURL();
 
-        try (PncClient pncClient = pncURL != null ? new PncClientImpl(usedConfig) : null) {
+        try (PncClient pncClient = pncURL != null ? pncClientPool.lease(usedConfig) : null) {
             BuildFinder buildFinder;
 
             if (pncClient == null) {
@@ -292,32 +656,176 @@ public class Finder {
 
             buildFinder.setListener(buildFinderListener);
 
-            Map<BuildSystemInteger, KojiBuild> builds = buildFinder.call();
+            Map<BuildSystemInteger, KojiBuild> builds;
+            Map<ChecksumType, MultiValuedMap<String, LocalFile>> computedChecksums;
+
+            try {
+                builds = buildFinder.call();
+                // Build Finder also ends early if the relay fails, so the lookups are complete only with all checksums
+                computedChecksums = getChecksumsResult(checksums);
+                notFoundCache.record(builds, usedConfig);
+                checksumPrefilter.recordBuilds(builds);
+                lookups.complete(claim, builds, analyzer.getFiles(), analyzer.getLicensesMap());
+            } catch (RuntimeException | Error | KojiClientException e) {
+                lookups.fail(claim, e);
+                throw e;
+            }
+
+            List<Checksum> unchanged = claim.getUnchanged();
+            List<Checksum> shared = claim.getShared();
+            List<Checksum> resolved = claim.getResolved();
+            List<Checksum> notFound = claim.getNotFound();
+
+            if (!unchanged.isEmpty() || !shared.isEmpty()) {
+                LOGGER.info(
+                        "Reusing build attributions of {} unchanged files and {} files shared with other URLs of {}",
+                        unchanged.size(),
+                        shared.size(),
+                        url);
+            }
+
+            if (!resolved.isEmpty()) {
+                LOGGER.info("Resolved {} files of {} from the checksum index", resolved.size(), url);
+            }
+
+            if (!notFound.isEmpty()) {
+                LOGGER.info("Skipped lookups of {} files of {} which were recently not found", notFound.size(), url);
+            }
+
+            lookups.addShared(claim, builds, analyzer.getFiles(), analyzer.getLicensesMap(), buildFinderListener);
 
             if (LOGGER.isInfoEnabled()) {
                 int size = builds.size();
                 int numBuilds = size >= 1 ? size - 1 : 0;
 
-                LOGGER.info("Got {} checksum types and {} builds", checksums.size(), numBuilds);
+                LOGGER.info("Got {} checksum types and {} builds", computedChecksums.size(), numBuilds);
             }
 
             FinderResult result = FinderResultCreator.createFinderResult(id, url, builds);
 
             LOGGER.info("Returning result for {}", url);
 
-            return result;
+            return new UrlResult(result, Attributions.fromBuilds(builds));
         }
     }
 
-    private static final class CancelWrapper {
-        private boolean cancelled = false;
+    /**
+     * Downloads the deliverable into the directory, keeping its file name, so that the downloaded file is analyzed
+     * under the same name as the URL.
+     *
+     * @param digest the digest to compute while downloading, or null
+     * @return the URL of the downloaded file
+     */
+    private String download(URL url, Path directory, AnalysisContext context, MessageDigest digest) {
+        try {
+            URI uri = url.toURI();
+            String path = uri.getPath();
+            String name = path != null ? path.substring(path.lastIndexOf('/') + 1) : "";
+            boolean usable = !name.isEmpty() && !".".equals(name) && !"..".equals(name);
+            Path target = directory.resolve(usable ? name : "deliverable");
+
+            downloader.download(
+                    uri,
+                    target,
+                    context.getCancellationToken(),
+                    context.getBudget()::chargeDownload,
+                    digest);
+
+            return target.toUri().toString();
+        } catch (URISyntaxException | UnknownHostException e) {
+            throw new ReasonedException(ResultStatus.FAILED, "Invalid URL", "Please check the URL", e);
+        } catch (HttpTimeoutException e) {
+            throw new ReasonedException(
+                    ResultStatus.TIMED_OUT,
+                    "Download of " + url + " timed out: " + e.getMessage(),
+                    "Please check that the server of the URL is available",
+                    e);
+        } catch (IOException e) {
+            // Includes a refused or unreachable server, which is not a problem of the URL
+            throw new ReasonedException(ResultStatus.SYSTEM_ERROR, "Failed to download " + url, e);
+        }
+    }
 
-        public void cancel() {
-            this.cancelled = true;
+    private AnalysisBudget createBudget() {
+        return new AnalysisBudget(
+                maxDownloadedSize.map(MemorySize::asLongValue).orElse(Long.MAX_VALUE),
+                maxExtractedSize.map(MemorySize::asLongValue).orElse(Long.MAX_VALUE),
+                maxFiles.orElse(Long.MAX_VALUE));
+    }
+
+    private Path createScratchDirectory(String id) {
+        try {
+            return Files.createTempDirectory(Path.of(config.getOutputDirectory()), "analysis-");
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ReasonedException(
+                    ResultStatus.SYSTEM_ERROR,
+                    "Failed to create temporary directory for analysis " + id,
+                    e);
         }
+    }
+
+    /**
+     * Deletes the temporary files of the analysis. For a cancelled analysis, records how long it took to stop and how
+     * much disk space its leftovers took, including the directories of its URLs already deleted once they stopped.
+     */
+    private void cleanup(AnalysisContext context) {
+        CancellationToken token = context.getCancellationToken();
+        Path scratchDirectory = context.getScratchDirectory();
+        long leftovers = token.isCancelled() ? size(scratchDirectory) + context.getDeletedAfterCancel() : 0L;
+
+        cleaner.cleanup(scratchDirectory.toString());
+
+        if (token.isCancelled()) {
+            Duration stopped = token.getTimeSinceCancel();
+
+            cancelTimer.record(stopped);
+            reclaimedSummary.record(leftovers);
+            LOGGER.info(
+                    "Cancelled analysis {} stopped in {} ms, deleted {} bytes of temporary files",
+                    context.getId(),
+                    stopped.toMillis(),
+                    leftovers);
+        }
+    }
+
+    private static long size(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> {
+                try {
+                    return Files.size(path);
+                } catch (IOException e) {
+                    return 0L;
+                }
+            }).sum();
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.debug("Failed to measure {}", directory, e);
+            return 0L;
+        }
+    }
+
+    /**
+     * Waits for a task computing the checksums and rethrows its failure like it was thrown by the analyzer.
+     */
+    private static <T> T getChecksumsResult(Future<T> task) throws KojiClientException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KojiClientException("Interrupted while computing checksums", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof FileSystemException && cause.getCause() instanceof UnknownHostException) {
+                throw new ReasonedException(ResultStatus.FAILED, "Invalid URL", "Please check the URL", cause);
+            } else if (cause instanceof IOException) {
+                throw new ReasonedException(ResultStatus.SYSTEM_ERROR, "Failed to analyze checksums", cause);
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            } else if (cause instanceof Error error) {
+                throw error;
+            }
 
-        public boolean isCancelled() {
-            return cancelled;
+            throw new ReasonedException(ResultStatus.SYSTEM_ERROR, "Failed to analyze checksums", cause);
         }
     }
 }
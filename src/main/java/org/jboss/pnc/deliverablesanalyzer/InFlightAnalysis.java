@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.jboss.pnc.build.finder.core.BuildCheckedEvent;
+import org.jboss.pnc.build.finder.core.BuildFinderListener;
+import org.jboss.pnc.build.finder.core.ChecksumsComputedEvent;
+import org.jboss.pnc.build.finder.core.DistributionAnalyzerListener;
+
+/**
+ * Analysis of a URL which other analyses of the same URL wait for. It receives the events of the running analysis and
+ * forwards them to the listeners of all the analyses waiting for it. The listeners of an analysis which starts waiting
+ * later first get the events received so far, so its progress starts from the progress of the running analysis.
+ */
+class InFlightAnalysis implements DistributionAnalyzerListener, BuildFinderListener {
+    private final CompletableFuture<UrlResult> result = new CompletableFuture<>();
+
+    private final List<DistributionAnalyzerListener> distributionAnalyzerListeners = new ArrayList<>();
+
+    private final List<BuildFinderListener> buildFinderListeners = new ArrayList<>();
+
+    private final List<BuildCheckedEvent> buildsChecked = new ArrayList<>();
+
+    private ChecksumsComputedEvent checksumsComputed;
+
+    CompletableFuture<UrlResult> getResult() {
+        return result;
+    }
+
+    /**
+     * Adds the listeners of an analysis waiting for this one, and sends them the events received so far.
+     *
+     * @param distributionAnalyzerListener A listener for events from DistributionAnalyzer, or null
+     * @param buildFinderListener A listener for events from Build Finder, or null
+     */
+    synchronized void attach(
+            DistributionAnalyzerListener distributionAnalyzerListener,
+            BuildFinderListener buildFinderListener) {
+        if (distributionAnalyzerListener != null) {
+            if (checksumsComputed != null) {
+                distributionAnalyzerListener.checksumsComputed(checksumsComputed);
+            }
+
+            distributionAnalyzerListeners.add(distributionAnalyzerListener);
+        }
+
+        if (buildFinderListener != null) {
+            buildsChecked.forEach(buildFinderListener::buildChecked);
+            buildFinderListeners.add(buildFinderListener);
+        }
+    }
+
+    @Override
+    public synchronized void checksumsComputed(ChecksumsComputedEvent event) {
+        checksumsComputed = event;
+        distributionAnalyzerListeners.forEach(listener -> listener.checksumsComputed(event));
+    }
+
+    @Override
+    public synchronized void buildChecked(BuildCheckedEvent event) {
+        buildsChecked.add(event);
+        buildFinderListeners.forEach(listener -> listener.buildChecked(event));
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.infinispan.Cache;
+import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.client.hotrod.ServerStatistics;
+import org.infinispan.commons.api.BasicCache;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.infinispan.context.Flag;
+import org.infinispan.factories.ComponentRegistry;
+import org.infinispan.persistence.manager.PersistenceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Cache manager which measures the reads and the writes of the caches of another cache manager, embedded or remote. The
+ * reads are timed as hits or misses and the writes as puts, by cache, the asynchronous ones until they complete. The
+ * number of entries of each cache is taken from the data container of an embedded cache and from the server statistics
+ * of a remote cache, and the size of the files of an embedded cache from its directory in the store location.
+ */
+public class InstrumentedCacheContainer implements BasicCacheContainer, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstrumentedCacheContainer.class);
+
+    private static final Set<String> READS = Set.of("get", "getOrDefault", "containsKey", "getAsync", "getAllAsync");
+
+    private static final Set<String> WRITES = Set.of(
+            "put",
+            "putIfAbsent",
+            "putAll",
+            "replace",
+            "putAsync",
+            "putIfAbsentAsync",
+            "putAllAsync");
+
+    private final BasicCacheContainer delegate;
+
+    private final Path storeLocation;
+
+    private final MeterRegistry registry;
+
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    private record Meters(Timer hits, Timer misses, Timer writes) {
+    }
+
+    /**
+     * @param delegate the cache manager of the caches
+     * @param storeLocation the location of the files of the embedded caches, or null for remote caches
+     * @param registry the registry of the cache metrics
+     */
+    public InstrumentedCacheContainer(BasicCacheContainer delegate, Path storeLocation, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.storeLocation = storeLocation;
+        this.registry = registry;
+    }
+
+    public BasicCacheContainer getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public <K, V> BasicCache<K, V> getCache() {
+        return delegate.getCache();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> BasicCache<K, V> getCache(String cacheName) {
+        BasicCache<K, V> cache = delegate.getCache(cacheName);
+
+        if (cache == null) {
+            return null;
+        }
+
+        Meters cacheMeters = meters.computeIfAbsent(cacheName, name -> register(name, cache));
+
+        return (BasicCache<K, V>) Proxy.newProxyInstance(
+                BasicCache.class.getClassLoader(),
+                new Class<?>[] { BasicCache.class },
+                (proxy, method, args) -> invoke(cache, cacheMeters, method, args));
+    }
+
+    @Override
+    public Set<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    @Override
+    public void start() {
+        delegate.start();
+    }
+
+    @Override
+    public void stop() {
+        delegate.stop();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable closeable) {
+            closeable.close();
+        } else {
+            delegate.stop();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    private static Object invoke(BasicCache<?, ?> cache, Meters cacheMeters, Method method, Object[] args)
+            throws Throwable {
+        String name = method.getName();
+
+        if (!READS.contains(name) && !WRITES.contains(name)) {
+            return call(cache, method, args);
+        }
+
+        long start = System.nanoTime();
+        Object result = call(cache, method, args);
+
+        if (result instanceof CompletableFuture<?> future) {
+            future.whenComplete((value, e) -> {
+                if (e == null) {
+                    record(cacheMeters, name, args, value, System.nanoTime() - start);
+                }
+            });
+        } else {
+            record(cacheMeters, name, args, result, System.nanoTime() - start);
+        }
+
+        return result;
+    }
+
+    /**
+     * Records an operation. A bulk read is recorded as one read of each key, taking an equal share of its latency.
+     */
+    private static void record(Meters cacheMeters, String name, Object[] args, Object result, long elapsed) {
+        if (name.equals("getAllAsync")) {
+            int keys = ((Set<?>) args[0]).size();
+
+            if (keys > 0) {
+                int hits = ((Map<?, ?>) result).size();
+                long share = elapsed / keys;
+
+                for (int i = 0; i < keys; i++) {
+                    Timer timer = i < hits ? cacheMeters.hits() : cacheMeters.misses();
+                    timer.record(share, TimeUnit.NANOSECONDS);
+                }
+            }
+        } else if (READS.contains(name)) {
+            boolean hit = name.equals("containsKey") ? Boolean.TRUE.equals(result)
+                    : result != null && (!name.equals("getOrDefault") || result != args[1]);
+            Timer timer = hit ? cacheMeters.hits() : cacheMeters.misses();
+            timer.record(elapsed, TimeUnit.NANOSECONDS);
+        } else {
+            cacheMeters.writes().record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Object call(BasicCache<?, ?> cache, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(cache, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Meters register(String cacheName, BasicCache<?, ?> cache) {
+        Gauge.builder("infinispan.cache.entries", cache, InstrumentedCacheContainer::getEntries)
+                .description("Number of entries in the cache")
+                .tag("cache", cacheName)
+                .strongReference(true)
+                .register(registry);
+
+        if (storeLocation != null) {
+            Path location = storeLocation.resolve(cacheName);
+            Gauge.builder("infinispan.cache.store-size", location, InstrumentedCacheContainer::getStoreSize)
+                    .description("Size of the files of the cache store")
+                    .baseUnit("bytes")
+                    .tag("cache", cacheName)
+                    .strongReference(true)
+                    .register(registry);
+        }
+
+        if (cache instanceof Cache<?, ?> embedded && embedded.getCacheConfiguration().persistence().usingStores()) {
+            Gauge.builder("infinispan.cache.store-available", embedded, InstrumentedCacheContainer::getStoreAvailable)
+                    .description("Whether the cache store accepts writes, 0 once the writes to it keep failing")
+                    .tag("cache", cacheName)
+                    .strongReference(true)
+                    .register(registry);
+        }
+
+        return new Meters(
+                Timer.builder("infinispan.cache.gets")
+                        .description("Latency of the reads of the cache")
+                        .tag("cache", cacheName)
+                        .tag("result", "hit")
+                        .publishPercentileHistogram()
+                        .register(registry),
+                Timer.builder("infinispan.cache.gets")
+                        .description("Latency of the reads of the cache")
+                        .tag("cache", cacheName)
+                        .tag("result", "miss")
+                        .publishPercentileHistogram()
+                        .register(registry),
+                Timer.builder("infinispan.cache.puts")
+                        .description("Latency of the writes to the cache")
+                        .tag("cache", cacheName)
+                        .publishPercentileHistogram()
+                        .register(registry));
+    }
+
+    private static double getEntries(BasicCache<?, ?> cache) {
+        try {
+            if (cache instanceof Cache<?, ?> embedded) {
+                // Counts the entries in memory, without loading the store
+                return embedded.getAdvancedCache().withFlags(Flag.SKIP_CACHE_LOAD).size();
+            }
+
+            if (cache instanceof RemoteCache<?, ?> remote) {
+                Integer entries = remote.serverStatistics().getIntStatistic(ServerStatistics.APPROXIMATE_ENTRIES);
+                return entries != null ? entries : Double.NaN;
+            }
+        } catch (RuntimeException e) {
+            LOGGER.debug("Unable to get the number of entries of cache {}", cache.getName(), e);
+        }
+
+        return Double.NaN;
+    }
+
+    /**
+     * Returns 1 while the store of the cache is available. The async store of a write-behind cache becomes unavailable
+     * once it fails to write its queue, and the puts then fail rather than queue entries which would be lost.
+     */
+    private static double getStoreAvailable(Cache<?, ?> cache) {
+        try {
+            return ComponentRegistry.componentOf(cache, PersistenceManager.class).isAvailable() ? 1.0d : 0.0d;
+        } catch (RuntimeException e) {
+            LOGGER.debug("Unable to get the availability of the store of cache {}", cache.getName(), e);
+            return Double.NaN;
+        }
+    }
+
+    static double getStoreSize(Path location) {
+        if (!Files.isDirectory(location)) {
+            return 0.0d;
+        }
+
+        try (Stream<Path> files = Files.walk(location)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (NoSuchFileException e) {
+                    // Removed by the compaction of the store
+                    return 0L;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum();
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.debug("Unable to get the size of the store {}", location, e);
+            return Double.NaN;
+        }
+    }
+}
@@ -16,7 +16,9 @@
 package org.jboss.pnc.deliverablesanalyzer;
 
 import java.net.URL;
+import java.time.Duration;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.pnc.build.finder.core.BuildConfig;
 import org.jboss.pnc.build.finder.koji.KojiClientSession;
 import org.slf4j.Logger;
@@ -24,6 +26,7 @@ import org.slf4j.LoggerFactory;
 
 import com.redhat.red.build.koji.KojiClientException;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.quarkus.arc.DefaultBean;
 import jakarta.enterprise.inject.Disposes;
 import jakarta.enterprise.inject.Produces;
@@ -39,9 +42,18 @@ public class KojiProvider {
     @Inject
     BuildConfig config;
 
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "analysis.koji.cache-size", defaultValue = "10000")
+    int cacheSize;
+
+    @ConfigProperty(name = "analysis.koji.linger", defaultValue = "5ms")
+    Duration linger;
+
     @Produces
     @DefaultBean
-    public KojiClientSession createSession() throws KojiClientException {
+    public CachingClientSession createSession() throws KojiClientException {
         LOGGER.info("Using default Koji ClientSession");
 
         URL kojiHubURL = config.getKojiHubURL();
@@ -51,10 +63,15 @@ public class KojiProvider {
         }
 
         LOGGER.info("Initializing Koji client session with URL {}", kojiHubURL);
-        return new KojiClientSession(kojiHubURL);
+        return new CachingClientSession(
+                new KojiClientSession(kojiHubURL),
+                cacheSize,
+                linger,
+                config.getKojiMulticallSize(),
+                registry);
     }
 
-    public void close(@Disposes KojiClientSession session) {
+    public void close(@Disposes CachingClientSession session) {
         session.close();
     }
 
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.infinispan.commons.api.BasicCache;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.koji.KojiBuild;
+import org.jboss.pnc.build.finder.koji.KojiLocalArchive;
+import org.jboss.pnc.deliverablesanalyzer.utils.ConfigUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Cache of the MD5 checksums which were not found in any build, keyed by the checksum and the fingerprint of the
+ * build systems searched for it. Build Finder caches only the checksums it found, so the third-party files of the
+ * deliverables would be looked up in Koji and PNC by every analysis. The entries expire after a lifespan much shorter
+ * than the lifespan of the other caches, as the files may be built at any time.
+ */
+@ApplicationScoped
+public class NotFoundCache {
+    public static final String CACHE_NAME = "checksums-not-found";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NotFoundCache.class);
+
+    @Inject
+    BuildConfig config;
+
+    @Inject
+    CacheStartup cacheStartup;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "analysis.not-found-cache.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "analysis.not-found-cache.lifespan", defaultValue = "1h")
+    Duration lifespan;
+
+    private boolean disabled;
+
+    private Counter savedCounter;
+
+    private Counter recordedCounter;
+
+    @PostConstruct
+    public void init() {
+        savedCounter = Counter.builder("analysis.not-found-cache.saved")
+                .description("Number of lookups left out because the checksum was recently not found")
+                .register(registry);
+        recordedCounter = Counter.builder("analysis.not-found-cache.recorded")
+                .description("Number of checksums recorded as not found")
+                .register(registry);
+
+        if (!enabled || Boolean.TRUE.equals(config.getDisableCache())) {
+            LOGGER.info("Not-found cache disabled");
+            disabled = true;
+        }
+    }
+
+    /**
+     * Returns the checksums which were recently not found in the build systems of the config, with a single read of
+     * the cache.
+     *
+     * @param checksums the checksums of files
+     * @param usedConfig the config of the analysis
+     * @return the values of the checksums which don't need to be looked up
+     */
+    public Set<String> findAll(Collection<Checksum> checksums, BuildConfig usedConfig) {
+        BasicCache<String, String> cache = getCache();
+
+        if (cache == null) {
+            return Set.of();
+        }
+
+        String fingerprint = ConfigUtils.lookupFingerprint(usedConfig);
+        Map<String, String> keys = new HashMap<>();
+
+        for (Checksum checksum : checksums) {
+            if (checksum.getValue() != null && checksum.getType() == ChecksumType.md5) {
+                keys.put(getKey(checksum.getValue(), fingerprint), checksum.getValue());
+            }
+        }
+
+        if (keys.isEmpty()) {
+            return Set.of();
+        }
+
+        Set<String> notFound = new HashSet<>();
+
+        for (String key : cache.getAllAsync(keys.keySet()).join().keySet()) {
+            notFound.add(keys.get(key));
+        }
+
+        savedCounter.increment(notFound.size());
+        return notFound;
+    }
+
+    /**
+     * Records the MD5 checksums of the files which Build Finder didn't find in any build.
+     *
+     * @param builds the builds found by Build Finder, before any file known not to be found is added
+     * @param usedConfig the config of the analysis
+     */
+    public void record(Map<BuildSystemInteger, KojiBuild> builds, BuildConfig usedConfig) {
+        BasicCache<String, String> cache = getCache();
+
+        if (cache == null) {
+            return;
+        }
+
+        KojiBuild buildZero = builds.get(new BuildSystemInteger(0));
+
+        if (buildZero == null || buildZero.getArchives() == null) {
+            return;
+        }
+
+        String fingerprint = ConfigUtils.lookupFingerprint(usedConfig);
+        Map<String, String> notFound = new HashMap<>();
+
+        for (KojiLocalArchive localArchive : buildZero.getArchives()) {
+            for (Checksum checksum : localArchive.getChecksums()) {
+                if (checksum.getType() == ChecksumType.md5 && checksum.getValue() != null) {
+                    notFound.put(getKey(checksum.getValue(), fingerprint), String.valueOf(checksum.getFilename()));
+                }
+            }
+        }
+
+        if (!notFound.isEmpty()) {
+            // The analysis doesn't wait for the write
+            cache.putAllAsync(notFound, lifespan.toMillis(), TimeUnit.MILLISECONDS).whenComplete((result, e) -> {
+                if (e != null) {
+                    LOGGER.warn("Failed to record {} checksums as not found: {}", notFound.size(), e.getMessage());
+                }
+            });
+            recordedCounter.increment(notFound.size());
+        }
+    }
+
+    private BasicCache<String, String> getCache() {
+        return disabled ? null : cacheStartup.getCache(CACHE_NAME);
+    }
+
+    private static String getKey(String md5, String fingerprint) {
+        return md5 + "-" + fingerprint;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.infinispan.commons.api.BasicCache;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.build.finder.core.BuildSystem;
+import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.koji.KojiBuild;
+import org.jboss.pnc.build.finder.koji.KojiLocalArchive;
+import org.jboss.pnc.build.finder.protobuf.ListKojiArchiveInfoProtobufWrapper;
+import org.jboss.pnc.deliverablesanalyzer.model.Attributions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Resolves checksums from an optional {@link ChecksumIndex}, without Koji and PNC. The index maps the checksums to the
+ * Koji builds and archives, and the builds with their archives are taken from the {@code builds} cache, read once for
+ * each batch of checksums, so a checksum is only resolved if the cache still holds its build. The index keeps only the
+ * ids, as the builds are needed with all their metadata for the results. The other checksums are looked up as usual.
+ */
+@ApplicationScoped
+public class OfflineLookups {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OfflineLookups.class);
+
+    private static final String BUILDS_CACHE_NAME = "builds";
+
+    private static final String CHECKSUMS_CACHE_NAME = "checksums-" + ChecksumType.md5;
+
+    @Inject
+    BuildConfig config;
+
+    @Inject
+    CacheStartup cacheStartup;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "analysis.checksum-index.path")
+    Optional<Path> path;
+
+    private ChecksumIndex index;
+
+    private Counter resolvedCounter;
+
+    private Counter unresolvedCounter;
+
+    @PostConstruct
+    public void init() {
+        resolvedCounter = Counter.builder("analysis.checksum-index.resolved")
+                .description("Number of checksums resolved from the checksum index without any lookup")
+                .register(registry);
+        unresolvedCounter = Counter.builder("analysis.checksum-index.unresolved")
+                .description("Number of checksums in the checksum index whose build is not cached")
+                .register(registry);
+
+        if (path.isEmpty() || Boolean.TRUE.equals(config.getDisableCache())) {
+            LOGGER.info("Checksum index disabled");
+            return;
+        }
+
+        try {
+            index = ChecksumIndex.open(path.get());
+            LOGGER.info(
+                    "Opened checksum index {} with {} entries of snapshot {}",
+                    path.get(),
+                    index.size(),
+                    index.getSnapshotTime());
+        } catch (IOException e) {
+            LOGGER.warn("Checksum index disabled because {} can't be opened", path.get(), e);
+        }
+    }
+
+    /**
+     * Resolves the builds and the archives of files from the index, with a single read of the {@code builds} cache for
+     * all the builds of the files. If a file is in several builds, the newest cached build is used.
+     *
+     * @param checksums the checksums of the files
+     * @return the attributions of the resolved files, the other files must be looked up
+     */
+    public Map<Checksum, Attributions.Attribution> resolveAll(Collection<Checksum> checksums) {
+        // The builds are not available until the cache has started
+        BasicCache<Integer, KojiBuild> buildCache = cacheStartup.getCache(BUILDS_CACHE_NAME);
+
+        if (index == null || buildCache == null) {
+            return Map.of();
+        }
+
+        Map<Checksum, List<ChecksumIndex.Entry>> indexed = new LinkedHashMap<>();
+        Set<Integer> buildIds = new HashSet<>();
+
+        for (Checksum checksum : checksums) {
+            if (checksum.getValue() == null || checksum.getType() != ChecksumType.md5) {
+                continue;
+            }
+
+            List<ChecksumIndex.Entry> newestFirst = index.lookup(checksum.getValue())
+                    .stream()
+                    .filter(entry -> entry.build().getBuildSystem() == BuildSystem.koji)
+                    .sorted(Comparator.comparingInt(OfflineLookups::buildId).reversed())
+                    .toList();
+
+            if (!newestFirst.isEmpty()) {
+                indexed.put(checksum, newestFirst);
+                newestFirst.forEach(entry -> buildIds.add(buildId(entry)));
+            }
+        }
+
+        if (indexed.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<Integer, KojiBuild> builds = buildCache.getAllAsync(buildIds).join();
+        Map<Checksum, Attributions.Attribution> resolved = new LinkedHashMap<>();
+
+        for (Map.Entry<Checksum, List<ChecksumIndex.Entry>> entry : indexed.entrySet()) {
+            resolve(entry.getValue(), builds).ifPresentOrElse(
+                    attribution -> resolved.put(entry.getKey(), attribution),
+                    unresolvedCounter::increment);
+        }
+
+        resolvedCounter.increment(resolved.size());
+        return resolved;
+    }
+
+    private static Optional<Attributions.Attribution> resolve(
+            List<ChecksumIndex.Entry> newestFirst,
+            Map<Integer, KojiBuild> builds) {
+        for (ChecksumIndex.Entry entry : newestFirst) {
+            KojiBuild build = builds.get(buildId(entry));
+            List<KojiArchiveInfo> archives = build != null ? build.getRemoteArchives() : null;
+
+            if (archives == null) {
+                continue;
+            }
+
+            for (KojiArchiveInfo archiveInfo : archives) {
+                if (archiveInfo.getArchiveId() != null && archiveInfo.getArchiveId() == entry.archiveId()) {
+                    KojiLocalArchive localArchive = new KojiLocalArchive();
+                    localArchive.setArchive(archiveInfo);
+                    return Optional.of(new Attributions.Attribution(entry.build(), build, localArchive));
+                }
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    private static int buildId(ChecksumIndex.Entry entry) {
+        return Integer.parseInt(entry.build().getValue());
+    }
+
+    /**
+     * Returns whether an index can be exported, which is once all the caches have started.
+     *
+     * @return true if an index can be exported
+     */
+    public boolean isExportAvailable() {
+        return cacheStartup.getCacheManager() != null;
+    }
+
+    /**
+     * Writes an index of the archives in the {@code checksums-md5} cache to a stream. The index is written to a
+     * temporary file first, as its header is only known once all the archives are sorted.
+     *
+     * @param out the stream of the index, which is closed
+     * @throws IOException if the index can't be written
+     * @throws IllegalStateException if the caches have not started
+     */
+    public void export(OutputStream out) throws IOException {
+        BasicCacheContainer cacheManager = cacheStartup.getCacheManager();
+
+        if (cacheManager == null) {
+            throw new IllegalStateException("The caches have not started");
+        }
+
+        Path file = Files.createTempFile("checksum-index-", ".index");
+
+        try (out) {
+            export(cacheManager, file);
+            Files.copy(file, out);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Writes an index of the archives in the {@code checksums-md5} cache. The caches of an analyzer which can still
+     * reach Koji are exported, so that the index can be used where Koji can't be reached. The entries of the cache are
+     * iterated over and sorted on disk, so the cache may be larger than the heap.
+     *
+     * @param cacheManager the cache manager
+     * @param target the index file, which is replaced
+     * @throws IOException if the index can't be written
+     */
+    public static void export(BasicCacheContainer cacheManager, Path target) throws IOException {
+        Instant snapshotTime = Instant.now();
+        BasicCache<String, ListKojiArchiveInfoProtobufWrapper> checksums = cacheManager.getCache(CHECKSUMS_CACHE_NAME);
+        Path temporary = Files.createTempFile(target.toAbsolutePath().getParent(), "checksum-index-", ".tmp");
+        long size;
+
+        try (ChecksumIndex.Writer writer = new ChecksumIndex.Writer(temporary, snapshotTime)) {
+            for (ListKojiArchiveInfoProtobufWrapper archives : checksums.values()) {
+                for (KojiArchiveInfo archiveInfo : archives.getData()) {
+                    if (archiveInfo.getChecksumType() != null
+                            && ChecksumType.md5.name().equals(archiveInfo.getChecksumType().name())
+                            && archiveInfo.getBuildId() != null && archiveInfo.getArchiveId() != null) {
+                        writer.add(
+                                new ChecksumIndex.Entry(
+                                        archiveInfo.getChecksum(),
+                                        new BuildSystemInteger(archiveInfo.getBuildId(), BuildSystem.koji),
+                                        archiveInfo.getArchiveId()));
+                    }
+                }
+            }
+
+            size = writer.finish();
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        LOGGER.info("Exported {} checksums to index {}", size, target);
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import org.apache.commons.collections4.MultiValuedMap;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.core.DistributionAnalyzer;
+import org.jboss.pnc.build.finder.core.LocalFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DistributionAnalyzer whose checksums are looked up by Build Finder while the files are still being checksummed.
+ * DistributionAnalyzer adds each checksum to its queue as soon as it is computed, and Build Finder takes the checksums
+ * from {@link #getQueue()}, so {@link #relay(int, UnaryOperator)} moves the checksums from one queue to the other by
+ * batches, leaving out the checksums which Build Finder doesn't need to look up. The relay ends with the terminating
+ * checksum, which is also added if the analysis fails, so that Build Finder never waits for checksums which won't come.
+ * <p>
+ * Both queues are bounded, so the hashing pauses while the lookups are behind instead of piling up the checksums: the
+ * relay waits while the queue of Build Finder is full, and DistributionAnalyzer waits while its own queue is full. The
+ * queue of DistributionAnalyzer is created by {@link DistributionAnalyzer#call()}, so it is replaced by a bounded one
+ * before any checksum is computed.
+ */
+public class PipelinedDistributionAnalyzer extends DistributionAnalyzer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PipelinedDistributionAnalyzer.class);
+
+    private final BlockingQueue<Checksum> queue;
+
+    private final int capacity;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private volatile BlockingQueue<Checksum> source;
+
+    private volatile Consumer<Checksum> computedListener = checksum -> {
+    };
+
+    // Whether the computed listener is called by the queue of DistributionAnalyzer, or else by the relay
+    private volatile boolean sourceListened;
+
+    /**
+     * Creates an analyzer whose queue of the checksums to look up is unbounded.
+     *
+     * @param inputs the files to analyze
+     * @param config the config
+     * @param cacheManager the cache manager, or null
+     */
+    public PipelinedDistributionAnalyzer(List<String> inputs, BuildConfig config, BasicCacheContainer cacheManager) {
+        this(inputs, config, cacheManager, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates an analyzer whose queues of the checksums computed and of the checksums to look up each hold at most the
+     * capacity, including the terminating checksum.
+     *
+     * @param inputs the files to analyze
+     * @param config the config
+     * @param cacheManager the cache manager, or null
+     * @param capacity the capacity of the queues of the checksums
+     */
+    public PipelinedDistributionAnalyzer(
+            List<String> inputs,
+            BuildConfig config,
+            BasicCacheContainer cacheManager,
+            int capacity) {
+        super(inputs, config, cacheManager);
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.capacity = capacity;
+    }
+
+    @Override
+    public Map<ChecksumType, MultiValuedMap<String, LocalFile>> call() throws IOException {
+        try {
+            return super.call();
+        } catch (IOException | RuntimeException | Error e) {
+            BlockingQueue<Checksum> checksums = super.getQueue();
+
+            if (checksums != null) {
+                checksums.add(new Checksum());
+            }
+
+            start(checksums);
+            throw e;
+        }
+    }
+
+    /**
+     * Called by {@link DistributionAnalyzer#call()} once its queue is created, before any checksum is computed.
+     */
+    @Override
+    public Map<ChecksumType, MultiValuedMap<String, LocalFile>> checksumFiles() throws IOException {
+        start(bound(super.getQueue()));
+        return super.checksumFiles();
+    }
+
+    /**
+     * Replaces the unbounded queue created by DistributionAnalyzer with a bounded queue, so that the hashing waits
+     * while the relay is behind.
+     *
+     * @param checksums the queue of DistributionAnalyzer
+     * @return the queue which DistributionAnalyzer now uses
+     */
+    private BlockingQueue<Checksum> bound(BlockingQueue<Checksum> checksums) {
+        if (checksums == null) {
+            return null;
+        }
+
+        try {
+            Field field = DistributionAnalyzer.class.getDeclaredField("queue");
+            field.setAccessible(true);
+            SourceQueue bounded = new SourceQueue(capacity);
+            checksums.drainTo(bounded);
+            field.set(this, bounded);
+            sourceListened = true;
+            return bounded;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.warn("Unable to bound the queue of the computed checksums, the hashing won't wait for the relay", e);
+            return checksums;
+        }
+    }
+
+    /**
+     * Sets the listener called with each checksum as soon as it is computed, on the thread of {@link #call()}, before
+     * the checksum is queued. An exception thrown by the listener ends the analysis, so the files are not unpacked
+     * any further.
+     *
+     * @param computedListener the listener
+     */
+    public void setComputedListener(Consumer<Checksum> computedListener) {
+        this.computedListener = computedListener;
+    }
+
+    private void start(BlockingQueue<Checksum> checksums) {
+        if (started.getCount() > 0) {
+            source = checksums;
+            started.countDown();
+        }
+    }
+
+    /**
+     * @return the queue of the checksums to look up, ending with a checksum without value
+     */
+    @Override
+    public BlockingQueue<Checksum> getQueue() {
+        return queue;
+    }
+
+    /**
+     * Moves the checksums accepted by the filter to the queue of the checksums to look up, until the terminating
+     * checksum. Runs concurrently with {@link #call()}, and waits while the queue is full. If the filter fails, the
+     * terminating checksum is added anyway.
+     *
+     * @param filter the filter, called on the relaying thread
+     * @throws InterruptedException if interrupted while waiting for checksums
+     */
+    public void relay(Predicate<Checksum> filter) throws InterruptedException {
+        relay(1, checksums -> checksums.stream().filter(filter).toList());
+    }
+
+    /**
+     * Moves the checksums to the queue of the checksums to look up by batches, until the terminating checksum. A batch
+     * holds the checksums computed since the previous batch, up to the batch size, so the checksums are batched only
+     * while they are computed faster than they are relayed. Runs concurrently with {@link #call()}, and waits while the
+     * queue is full. If the filter fails, the checksums still queued are dropped for the terminating checksum.
+     *
+     * @param batchSize the maximum number of checksums of a batch
+     * @param filter the filter of a batch, returning the checksums to look up, called on the relaying thread
+     * @throws InterruptedException if interrupted while waiting for checksums
+     */
+    public void relay(int batchSize, UnaryOperator<List<Checksum>> filter) throws InterruptedException {
+        started.await();
+
+        BlockingQueue<Checksum> checksums = source;
+
+        if (checksums == null) {
+            queue.put(new Checksum());
+            return;
+        }
+
+        List<Checksum> batch = new ArrayList<>(batchSize);
+        boolean terminated = false;
+
+        try {
+            while (!terminated) {
+                batch.clear();
+                batch.add(checksums.take());
+                checksums.drainTo(batch, batchSize - 1);
+
+                int end = 0;
+
+                while (end < batch.size() && batch.get(end).getValue() != null) {
+                    end++;
+                }
+
+                terminated = end < batch.size();
+
+                if (!sourceListened) {
+                    batch.subList(0, end).forEach(computedListener);
+                }
+
+                if (end > 0) {
+                    for (Checksum checksum : filter.apply(batch.subList(0, end))) {
+                        queue.put(checksum);
+                    }
+                }
+            }
+
+            queue.put(new Checksum());
+        } catch (RuntimeException | Error e) {
+            // The analysis fails anyway, so Build Finder only needs to stop
+            if (!queue.offer(new Checksum())) {
+                queue.clear();
+                queue.add(new Checksum());
+            }
+
+            throw e;
+        } finally {
+            // Nothing takes the checksums anymore, so the hashing must not wait for the relay
+            if (!terminated && checksums instanceof SourceQueue sourceQueue) {
+                sourceQueue.abandon();
+            }
+        }
+    }
+
+    /**
+     * Queue of the checksums computed by DistributionAnalyzer, whose puts wait while the queue holds the capacity,
+     * until the relay takes checksums or abandons the queue. The terminating checksum never waits.
+     */
+    private final class SourceQueue extends LinkedBlockingQueue<Checksum> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Semaphore permits;
+
+        private volatile boolean abandoned;
+
+        private SourceQueue(int capacity) {
+            permits = new Semaphore(capacity);
+        }
+
+        @Override
+        public void put(Checksum checksum) throws InterruptedException {
+            if (abandoned) {
+                return;
+            }
+
+            if (checksum.getValue() != null) {
+                computedListener.accept(checksum);
+                permits.acquire();
+            }
+
+            super.put(checksum);
+        }
+
+        @Override
+        public Checksum take() throws InterruptedException {
+            return released(super.take());
+        }
+
+        @Override
+        public int drainTo(Collection<? super Checksum> c, int maxElements) {
+            List<Checksum> drained = new ArrayList<>();
+            int count = super.drainTo(drained, maxElements);
+            drained.forEach(this::released);
+            c.addAll(drained);
+            return count;
+        }
+
+        private Checksum released(Checksum checksum) {
+            if (checksum.getValue() != null) {
+                permits.release();
+            }
+
+            return checksum;
+        }
+
+        private void abandon() {
+            abandoned = true;
+            clear();
+            // Wakes up the hashing if it waits for a permit
+            permits.release(Integer.MAX_VALUE / 2);
+        }
+    }
+}
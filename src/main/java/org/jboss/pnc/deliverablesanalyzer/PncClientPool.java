@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.build.finder.pnc.client.PncClient;
+import org.jboss.pnc.build.finder.pnc.client.PncClientImpl;
+import org.jboss.pnc.client.RemoteCollection;
+import org.jboss.pnc.client.RemoteResourceException;
+import org.jboss.pnc.dto.Artifact;
+import org.jboss.pnc.dto.BuildPushReport;
+import org.jboss.pnc.dto.ProductVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Long-lived PNC clients shared by all the analyses. Each {@link PncClientImpl} owns a REST client with a pool of
+ * keep-alive connections, which allows two connections to the PNC server, so there are as many clients per PNC URL as
+ * needed for the configured number of concurrent requests. The analyses lease the clients of their PNC URL, and
+ * closing a lease leaves the clients and their connections open for the next analysis.
+ */
+@ApplicationScoped
+public class PncClientPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PncClientPool.class);
+
+    // The default limit of connections per route of the Apache HttpClient used by the PNC REST client
+    private static final int CONNECTIONS_PER_CLIENT = 2;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "analysis.pnc.max-concurrent-requests", defaultValue = "8")
+    int maxConcurrentRequests;
+
+    Function<BuildConfig, PncClient> clientFactory = PncClientImpl::new;
+
+    private final Map<String, PooledClients> pools = new ConcurrentHashMap<>();
+
+    private final Map<Operation, Timer> requestTimers = new EnumMap<>(Operation.class);
+
+    private Counter leasesCounter;
+
+    private Counter createdCounter;
+
+    private enum Operation {
+        ARTIFACTS_BY_MD5, ARTIFACTS_BY_SHA1, ARTIFACTS_BY_SHA256, BUILD_PUSH_REPORT, PRODUCT_VERSION
+    }
+
+    @FunctionalInterface
+    private interface Request<T> {
+        T send(PncClient client) throws RemoteResourceException;
+    }
+
+    @PostConstruct
+    public void init() {
+        for (Operation operation : Operation.values()) {
+            requestTimers.put(
+                    operation,
+                    Timer.builder("pnc.client.requests")
+                            .description("Latency of the requests to PNC")
+                            .tag("operation", operation.name().toLowerCase())
+                            .register(registry));
+        }
+
+        leasesCounter = Counter.builder("pnc.client.leases")
+                .description("Number of times the analyses leased the PNC clients")
+                .register(registry);
+        createdCounter = Counter.builder("pnc.client.created")
+                .description("Number of PNC clients created")
+                .register(registry);
+    }
+
+    /**
+     * Leases the clients of the PNC URL of the config, creating them on the first lease.
+     *
+     * @param config the config with the PNC URL
+     * @return the lease, which doesn't close the clients when closed
+     */
+    public PncClient lease(BuildConfig config) {
+        String key = config.getPncURL().toExternalForm() + "#" + config.getPncPartitionSize();
+        PooledClients clients = pools.computeIfAbsent(key, k -> new PooledClients(config));
+
+        leasesCounter.increment();
+
+        return new Lease(clients);
+    }
+
+    @PreDestroy
+    public void close() {
+        pools.values().forEach(PooledClients::close);
+        pools.clear();
+    }
+
+    private final class PooledClients {
+        private final PncClient[] clients;
+
+        private final Semaphore permits = new Semaphore(maxConcurrentRequests, true);
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        private PooledClients(BuildConfig config) {
+            int size = Math.max(1, (maxConcurrentRequests + CONNECTIONS_PER_CLIENT - 1) / CONNECTIONS_PER_CLIENT);
+            clients = new PncClient[size];
+
+            for (int i = 0; i < size; i++) {
+                clients[i] = clientFactory.apply(config);
+                createdCounter.increment();
+            }
+
+            LOGGER.info("Created {} PNC clients for {}", size, config.getPncURL());
+        }
+
+        private <T> T send(Operation operation, Request<T> request) throws RemoteResourceException {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteResourceException(e);
+            }
+
+            long start = System.nanoTime();
+
+            try {
+                return request.send(clients[Math.floorMod(next.getAndIncrement(), clients.length)]);
+            } finally {
+                requestTimers.get(operation).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                permits.release();
+            }
+        }
+
+        private void close() {
+            for (PncClient client : clients) {
+                try {
+                    client.close();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Failed to close PNC client", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetches all the pages of a collection, which are otherwise fetched lazily while it is iterated, after the
+     * permit of the request is released and outside of its timer.
+     */
+    private static <T> RemoteCollection<T> copy(RemoteCollection<T> collection) {
+        if (collection == null) {
+            return null;
+        }
+
+        List<T> elements = new ArrayList<>(collection.size());
+        collection.forEach(elements::add);
+
+        return new RemoteCollection<>() {
+            @Override
+            public int size() {
+                return elements.size();
+            }
+
+            @Override
+            public Collection<T> getAll() {
+                return Collections.unmodifiableList(elements);
+            }
+
+            @Override
+            public Iterator<T> iterator() {
+                return getAll().iterator();
+            }
+        };
+    }
+
+    private static final class Lease implements PncClient {
+        private final PooledClients clients;
+
+        private Lease(PooledClients clients) {
+            this.clients = clients;
+        }
+
+        @Override
+        public RemoteCollection<Artifact> getArtifactsByMd5(String md5) throws RemoteResourceException {
+            return clients.send(Operation.ARTIFACTS_BY_MD5, client -> copy(client.getArtifactsByMd5(md5)));
+        }
+
+        @Override
+        public RemoteCollection<Artifact> getArtifactsBySha1(String sha1) throws RemoteResourceException {
+            return clients.send(Operation.ARTIFACTS_BY_SHA1, client -> copy(client.getArtifactsBySha1(sha1)));
+        }
+
+        @Override
+        public RemoteCollection<Artifact> getArtifactsBySha256(String sha256) throws RemoteResourceException {
+            return clients.send(Operation.ARTIFACTS_BY_SHA256, client -> copy(client.getArtifactsBySha256(sha256)));
+        }
+
+        @Override
+        public BuildPushReport getBuildPushReport(String buildId) throws RemoteResourceException {
+            return clients.send(Operation.BUILD_PUSH_REPORT, client -> client.getBuildPushReport(buildId));
+        }
+
+        @Override
+        public ProductVersion getProductVersion(String productMilestoneId) throws RemoteResourceException {
+            return clients.send(Operation.PRODUCT_VERSION, client -> client.getProductVersion(productMilestoneId));
+        }
+
+        @Override
+        public void close() {
+            // The clients are shared, they are closed with the pool
+        }
+    }
+}
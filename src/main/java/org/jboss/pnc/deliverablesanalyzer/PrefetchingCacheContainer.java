@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.infinispan.commons.api.BasicCache;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.protobuf.ListKojiArchiveInfoProtobufWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+
+/**
+ * Cache manager of the lookups of one URL, in front of the cache manager shared by the analyses. Build Finder gets the
+ * entries of the {@code checksums-md5} and {@code builds} caches one checksum at a time, so
+ * {@link #prefetch(Collection)} reads the entries of a whole batch of checksums and of their builds in bulk
+ * beforehand, and Build Finder gets them from here. With remote caches, a batch takes two round-trips instead of up to
+ * two per checksum. The entries which Build Finder puts into these caches are written asynchronously, so that the
+ * lookups don't wait for the writes. The other caches and the entries which were not prefetched are read and written
+ * as usual.
+ */
+public class PrefetchingCacheContainer implements BasicCacheContainer {
+    static final String CHECKSUMS_CACHE_NAME = "checksums-" + ChecksumType.md5;
+
+    static final String BUILDS_CACHE_NAME = "builds";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrefetchingCacheContainer.class);
+
+    private static final Object MISSING = new Object();
+
+    private final BasicCacheContainer delegate;
+
+    private final Map<String, Map<Object, Object>> prefetched = Map.of(
+            CHECKSUMS_CACHE_NAME,
+            new ConcurrentHashMap<>(),
+            BUILDS_CACHE_NAME,
+            new ConcurrentHashMap<>());
+
+    private final Set<CompletableFuture<?>> writes = ConcurrentHashMap.newKeySet();
+
+    public PrefetchingCacheContainer(BasicCacheContainer delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Reads the entries of the MD5 checksums and of the builds of their archives, which were not read yet, with one
+     * bulk read of each cache. If a read fails, the entries are read one at a time when Build Finder gets them.
+     *
+     * @param checksums the checksums which Build Finder is going to look up
+     */
+    public void prefetch(Collection<Checksum> checksums) {
+        Set<String> keys = new HashSet<>();
+
+        for (Checksum checksum : checksums) {
+            if (checksum.getType() == ChecksumType.md5 && checksum.getValue() != null
+                    && !prefetched.get(CHECKSUMS_CACHE_NAME).containsKey(checksum.getValue())) {
+                keys.add(checksum.getValue());
+            }
+        }
+
+        Set<Integer> buildIds = new HashSet<>();
+
+        for (Object value : prefetch(CHECKSUMS_CACHE_NAME, keys).values()) {
+            if (value instanceof ListKojiArchiveInfoProtobufWrapper archives && archives.getData() != null) {
+                for (KojiArchiveInfo archive : archives.getData()) {
+                    if (archive.getBuildId() != null
+                            && !prefetched.get(BUILDS_CACHE_NAME).containsKey(archive.getBuildId())) {
+                        buildIds.add(archive.getBuildId());
+                    }
+                }
+            }
+        }
+
+        prefetch(BUILDS_CACHE_NAME, buildIds);
+    }
+
+    private Map<Object, Object> prefetch(String cacheName, Set<?> keys) {
+        BasicCache<Object, Object> cache = delegate.getCache(cacheName);
+
+        if (keys.isEmpty() || cache == null) {
+            return Map.of();
+        }
+
+        Map<Object, Object> entries;
+
+        try {
+            entries = cache.getAllAsync(keys).join();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to read {} entries of cache {} in bulk: {}", keys.size(), cacheName, e.getMessage());
+            return Map.of();
+        }
+
+        Map<Object, Object> cacheEntries = prefetched.get(cacheName);
+
+        for (Object key : keys) {
+            Object value = entries.get(key);
+            cacheEntries.putIfAbsent(key, value != null ? value : MISSING);
+        }
+
+        return entries;
+    }
+
+    /**
+     * @return a future completed once the asynchronous writes started so far are done
+     */
+    public CompletableFuture<Void> getPendingWrites() {
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    @Override
+    public <K, V> BasicCache<K, V> getCache() {
+        return delegate.getCache();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> BasicCache<K, V> getCache(String cacheName) {
+        BasicCache<Object, Object> cache = delegate.getCache(cacheName);
+        Map<Object, Object> cacheEntries = prefetched.get(cacheName);
+
+        if (cache == null || cacheEntries == null) {
+            return (BasicCache<K, V>) cache;
+        }
+
+        return (BasicCache<K, V>) Proxy.newProxyInstance(
+                BasicCache.class.getClassLoader(),
+                new Class<?>[] { BasicCache.class },
+                (proxy, method, args) -> invoke(cacheName, cache, cacheEntries, method, args));
+    }
+
+    @Override
+    public Set<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    @Override
+    public void start() {
+        // The cache manager is shared by the analyses
+    }
+
+    @Override
+    public void stop() {
+        // The cache manager is shared by the analyses
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    private Object invoke(
+            String cacheName,
+            BasicCache<Object, Object> cache,
+            Map<Object, Object> cacheEntries,
+            Method method,
+            Object[] args) throws Throwable {
+        String name = method.getName();
+        int arity = args != null ? args.length : 0;
+
+        if (name.equals("get") && arity == 1) {
+            Object value = cacheEntries.get(args[0]);
+
+            if (value != null) {
+                return value != MISSING ? value : null;
+            }
+        } else if (name.equals("put") && arity == 2) {
+            // The previous value is only known if it was prefetched
+            Object previous = cacheEntries.put(args[0], args[1]);
+            write(cacheName, cache.putAsync(args[0], args[1]));
+            return previous != MISSING ? previous : null;
+        }
+
+        try {
+            return method.invoke(cache, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void write(String cacheName, CompletableFuture<?> write) {
+        writes.add(write);
+        write.whenComplete((value, e) -> {
+            writes.remove(write);
+
+            if (e != null) {
+                LOGGER.warn("Failed to write an entry of cache {}: {}", cacheName, e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.infinispan.commons.api.BasicCache;
+import org.jboss.pnc.api.deliverablesanalyzer.dto.FinderResult;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.deliverablesanalyzer.model.Attributions;
+import org.jboss.pnc.deliverablesanalyzer.rest.HttpClient;
+import org.jboss.pnc.deliverablesanalyzer.utils.ConfigUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+/**
+ * Cache of the results of analyses keyed by the SHA-256 digest of the analyzed deliverable and the fingerprint of the
+ * config. A deliverable which is byte-identical to an already analyzed one is not analyzed again, regardless of its
+ * URL. The build attributions of the files of the deliverable are cached next to its result, so that the analyses
+ * served the result can be the baseline of other analyses. The digest is taken from the response headers of a HEAD
+ * request if the server provides it, or computed while the deliverable is downloaded for its analysis if enabled. The
+ * entries expire after the cache lifespan of the config.
+ */
+@ApplicationScoped
+public class ResultCache {
+    public static final String CACHE_NAME = "results";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultCache.class);
+
+    private static final String ATTRIBUTIONS_SUFFIX = "-attributions";
+
+    private static final Pattern SHA256_HEX = Pattern.compile("^[0-9a-fA-F]{64}$");
+
+    private static final Pattern SHA256_DIGEST = Pattern.compile("(?i)sha-256=:?([A-Za-z0-9+/=]+):?");
+
+    @Inject
+    BuildConfig config;
+
+    @Inject
+    CacheStartup cacheStartup;
+
+    @Inject
+    HttpClient httpClient;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @ConfigProperty(name = "analysis.result-cache.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "analysis.result-cache.stream-digest", defaultValue = "false")
+    boolean streamDigest;
+
+    private boolean disabled;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled || Boolean.TRUE.equals(config.getDisableCache())) {
+            LOGGER.info("Result cache disabled");
+            disabled = true;
+        }
+    }
+
+    /**
+     * Computes the key of the deliverable in the cache.
+     *
+     * @param url the URL of the deliverable
+     * @param usedConfig the config of the analysis
+     * @return the key, or empty if the cache is disabled or not started yet, or the digest of the deliverable is not
+     *         available
+     */
+    public Optional<String> getKey(URL url, BuildConfig usedConfig) {
+        if (getCache() == null) {
+            return Optional.empty();
+        }
+
+        return getSha256(url).map(sha256 -> sha256 + "-" + ConfigUtils.fingerprint(usedConfig));
+    }
+
+    /**
+     * Creates the digest to compute while downloading the deliverable, if its key is not available from the response
+     * headers.
+     *
+     * @return the digest, or empty if the cache is disabled or not started yet, or streaming the digest is disabled
+     */
+    public Optional<MessageDigest> newStreamDigest() {
+        if (!streamDigest || getCache() == null) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(MessageDigest.getInstance("SHA-256"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes the key of the deliverable in the cache from the digest computed while downloading it.
+     *
+     * @param digest the digest created by {@link #newStreamDigest()} and updated with the whole deliverable
+     * @param usedConfig the config of the analysis
+     * @return the key, or empty if the cache is disabled or not started yet
+     */
+    public Optional<String> getKey(MessageDigest digest, BuildConfig usedConfig) {
+        if (getCache() == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(HexFormat.of().formatHex(digest.digest()) + "-" + ConfigUtils.fingerprint(usedConfig));
+    }
+
+    /**
+     * Returns the cached result of the deliverable with the ID and the URL of the current analysis, as the result may
+     * have been cached by the analysis of another URL with the same content.
+     *
+     * @param key the key of the deliverable
+     * @param id the ID of the analysis
+     * @param url the URL of the deliverable
+     * @return the result, or empty if the deliverable wasn't analyzed yet
+     */
+    public Optional<FinderResult> get(String key, String id, URL url) {
+        String json = getCache().get(key);
+
+        if (json == null) {
+            return Optional.empty();
+        }
+
+        try {
+            FinderResult result = objectMapper.readValue(json, FinderResult.class);
+            return Optional.of(
+                    FinderResult.builder()
+                            .id(id)
+                            .url(url)
+                            .builds(result.getBuilds())
+                            .notFoundArtifacts(result.getNotFoundArtifacts())
+                            .build());
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Removing unreadable result {} from the cache", key, e);
+            getCache().remove(key);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Returns the build attributions of the files of the deliverable.
+     *
+     * @param key the key of the deliverable
+     * @return the attributions, empty if the deliverable has none or they are not cached
+     */
+    public Attributions getAttributions(String key) {
+        String json = getCache().get(key + ATTRIBUTIONS_SUFFIX);
+
+        if (json == null) {
+            return new Attributions();
+        }
+
+        try {
+            return AttributionsCache.fromJson(json);
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Removing unreadable attributions of result {} from the cache", key, e);
+            getCache().remove(key + ATTRIBUTIONS_SUFFIX);
+            return new Attributions();
+        }
+    }
+
+    /**
+     * Caches the result of the deliverable and the build attributions of its files.
+     *
+     * @param key the key of the deliverable
+     * @param result the result
+     * @param attributions the attributions of the files of the deliverable
+     */
+    public void put(String key, FinderResult result, Attributions attributions) {
+        try {
+            getCache().put(
+                    key,
+                    objectMapper.writeValueAsString(result),
+                    config.getCacheLifespan(),
+                    TimeUnit.MILLISECONDS);
+
+            if (attributions.size() > 0) {
+                getCache().put(
+                        key + ATTRIBUTIONS_SUFFIX,
+                        AttributionsCache.toJson(attributions),
+                        config.getCacheLifespan(),
+                        TimeUnit.MILLISECONDS);
+            }
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Unable to cache result {}", key, e);
+        }
+    }
+
+    private BasicCache<String, String> getCache() {
+        return disabled ? null : cacheStartup.getCache(CACHE_NAME);
+    }
+
+    private Optional<String> getSha256(URL url) {
+        try {
+            MultivaluedMap<String, String> headers = httpClient.performHeadRequest(url.toURI());
+            Optional<String> sha256 = getSha256(headers);
+
+            if (sha256.isPresent()) {
+                return sha256;
+            }
+
+            // The digest is computed while downloading the deliverable, which is shared by the URLs of its content
+            if (streamDigest) {
+                return Optional.empty();
+            }
+
+            // A strong ETag identifies the content of the URL, even though it can't be shared by other URLs
+            String etag = headers.getFirst("ETag");
+
+            if (etag != null && !etag.startsWith("W/")) {
+                return Optional.of(sha256Hex(url.toExternalForm() + "\n" + etag));
+            }
+        } catch (IOException | URISyntaxException e) {
+            LOGGER.debug("Unable to get digest of {}", url, e);
+        }
+
+        LOGGER.debug("Digest of {} is not available, the result won't be cached", url);
+
+        return Optional.empty();
+    }
+
+    private static Optional<String> getSha256(MultivaluedMap<String, String> headers) {
+        // Sent by Artifactory and Nexus
+        String checksum = headers.getFirst("X-Checksum-Sha256");
+
+        if (checksum != null && SHA256_HEX.matcher(checksum.trim()).matches()) {
+            return Optional.of(checksum.trim().toLowerCase(Locale.ROOT));
+        }
+
+        for (String name : List.of("Repr-Digest", "Digest")) {
+            List<String> values = headers.get(name);
+
+            if (values == null) {
+                continue;
+            }
+
+            for (String value : values) {
+                Matcher matcher = SHA256_DIGEST.matcher(value);
+
+                if (matcher.find()) {
+                    try {
+                        return Optional.of(HexFormat.of().formatHex(Base64.getDecoder().decode(matcher.group(1))));
+                    } catch (IllegalArgumentException e) {
+                        LOGGER.debug("Invalid {} header: {}", name, value, e);
+                    }
+                }
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    private static String sha256Hex(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import org.jboss.pnc.api.deliverablesanalyzer.dto.FinderResult;
+import org.jboss.pnc.deliverablesanalyzer.model.Attributions;
+
+/**
+ * Result of the analysis of a URL with the build attributions of its files. The attributions are recorded by the
+ * analysis even if the result was cached, or computed by another analysis of the URL.
+ *
+ * @param result the result
+ * @param attributions the attributions of the files of the URL
+ */
+record UrlResult(FinderResult result, Attributions attributions) {
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.jboss.pnc.build.finder.core.BuildFinderListener;
+import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.core.LicenseInfo;
+import org.jboss.pnc.build.finder.koji.KojiBuild;
+
+import com.redhat.red.build.koji.KojiClientException;
+
+/**
+ * Lookups of the files of all the URLs of an analysis. The deliverables of an analysis usually share many files, so
+ * each distinct MD5 checksum is looked up in Koji and PNC only by the first URL which claims it. The other URLs wait
+ * for that lookup and take the attribution from the attributions of the analysis. The files with an attribution in the
+ * baseline analysis are not looked up at all, and neither are the files resolved without Koji and PNC, nor the files
+ * which were recently not found in any build.
+ */
+public class AnalysisLookups {
+    private static final Attributions NONE = new Attributions();
+
+    private final Attributions baseline;
+
+    private final Attributions attributions = new Attributions();
+
+    private final Attributions resolved = new Attributions();
+
+    private final Map<String, CompletableFuture<Void>> lookups = new ConcurrentHashMap<>();
+
+    /**
+     * @param baseline the attributions of the baseline analysis, or null
+     */
+    public AnalysisLookups(Attributions baseline) {
+        this.baseline = baseline;
+    }
+
+    /**
+     * @return the attributions of all the files found by the analysis so far
+     */
+    public Attributions getAttributions() {
+        return attributions;
+    }
+
+    /**
+     * Starts a claim of the lookups of the checksums of a URL.
+     *
+     * @return the claim, which must be completed or failed once Build Finder is done
+     */
+    public Claim newClaim() {
+        return new Claim();
+    }
+
+    /**
+     * Claims the lookup of a checksum computed by DistributionAnalyzer. The files which are known from the baseline are
+     * reported to the listener as checked. Once the claim is completed or failed, nothing more is claimed.
+     *
+     * @param claim the claim
+     * @param checksum the checksum
+     * @param listener the listener for events from Build Finder
+     * @return true if the checksum must be looked up by the caller
+     */
+    public boolean claim(Claim claim, Checksum checksum, BuildFinderListener listener) {
+        String value = checksum.getValue();
+
+        if (value == null || checksum.getType() != ChecksumType.md5) {
+            return true;
+        }
+
+        if (baseline != null && baseline.contains(checksum)) {
+            synchronized (claim) {
+                claim.unchanged.add(checksum);
+            }
+
+            baseline.reportChecked(Collections.singletonList(checksum), listener);
+            return false;
+        }
+
+        synchronized (claim) {
+            if (claim.closed) {
+                return false;
+            }
+
+            if (claim.owned.contains(value) || lookups.putIfAbsent(value, new CompletableFuture<>()) == null) {
+                claim.owned.add(value);
+                return true;
+            }
+
+            claim.shared.add(checksum);
+            return false;
+        }
+    }
+
+    /**
+     * Leaves out the lookup of a checksum whose attribution is known without Koji and PNC. The file is reported to the
+     * listener as checked, and it is added to its build once the claim is completed.
+     *
+     * @param claim the claim
+     * @param checksum the MD5 checksum
+     * @param attribution the attribution of the file
+     * @param listener the listener for events from Build Finder
+     */
+    public void resolve(
+            Claim claim,
+            Checksum checksum,
+            Attributions.Attribution attribution,
+            BuildFinderListener listener) {
+        resolved.put(checksum, attribution);
+
+        synchronized (claim) {
+            claim.resolved.add(checksum);
+        }
+
+        resolved.reportChecked(Collections.singletonList(checksum), listener);
+    }
+
+    /**
+     * Leaves out the lookup of a checksum which was recently not found in any build. The file is reported to the
+     * listener as checked, and it is added as not found once the claim is completed.
+     *
+     * @param claim the claim
+     * @param checksum the MD5 checksum
+     * @param listener the listener for events from Build Finder
+     */
+    public void skipNotFound(Claim claim, Checksum checksum, BuildFinderListener listener) {
+        synchronized (claim) {
+            claim.notFound.add(checksum);
+        }
+
+        NONE.reportChecked(Collections.singletonList(checksum), listener);
+    }
+
+    /**
+     * Adds the files known from the baseline, the resolved files and the files known not to be found to the builds
+     * found by Build Finder, and records the attributions of the builds, so that the other URLs waiting for the lookups
+     * claimed by the caller can use them.
+     *
+     * @param claim the claim
+     * @param builds the builds found by Build Finder
+     * @param files all the files of the URL with their checksums
+     * @param licenses the licenses of the files of the URL
+     */
+    public void complete(
+            Claim claim,
+            Map<BuildSystemInteger, KojiBuild> builds,
+            Map<String, Collection<Checksum>> files,
+            Map<String, Collection<LicenseInfo>> licenses) {
+        if (!claim.getUnchanged().isEmpty()) {
+            baseline.addTo(builds, claim.getUnchanged(), files, licenses);
+        }
+
+        if (!claim.getResolved().isEmpty()) {
+            resolved.addTo(builds, claim.getResolved(), files, licenses);
+        }
+
+        if (!claim.getNotFound().isEmpty()) {
+            NONE.addTo(builds, claim.getNotFound(), files, licenses);
+        }
+
+        attributions.record(builds);
+
+        for (String value : claim.close()) {
+            lookups.get(value).complete(null);
+        }
+    }
+
+    /**
+     * Fails the lookups claimed by the caller, so that the other URLs don't wait for them forever.
+     *
+     * @param claim the claim
+     * @param cause the failure of Build Finder
+     */
+    public void fail(Claim claim, Throwable cause) {
+        for (String value : claim.close()) {
+            lookups.get(value).completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Waits for the lookups of the files claimed by the other URLs and adds the files to the builds found by Build
+     * Finder. The claim must be completed first.
+     *
+     * @param claim the claim
+     * @param builds the builds found by Build Finder
+     * @param files all the files of the URL with their checksums
+     * @param licenses the licenses of the files of the URL
+     * @param listener the listener for events from Build Finder
+     * @throws KojiClientException if the lookup failed in the other URL or the wait was interrupted
+     */
+    public void addShared(
+            Claim claim,
+            Map<BuildSystemInteger, KojiBuild> builds,
+            Map<String, Collection<Checksum>> files,
+            Map<String, Collection<LicenseInfo>> licenses,
+            BuildFinderListener listener) throws KojiClientException {
+        List<Checksum> shared = claim.getShared();
+
+        if (shared.isEmpty()) {
+            return;
+        }
+
+        try {
+            for (Checksum checksum : shared) {
+                lookups.get(checksum.getValue()).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KojiClientException("Interrupted while waiting for lookups of other URLs", e);
+        } catch (ExecutionException e) {
+            throw new KojiClientException("Lookups of other URLs failed", e.getCause());
+        }
+
+        attributions.addTo(builds, shared, files, licenses);
+        attributions.reportChecked(shared, listener);
+    }
+
+    /**
+     * Lookups claimed by a URL. The checksums are claimed while they are computed, concurrently with Build Finder.
+     */
+    public static final class Claim {
+        private final List<Checksum> unchanged = new ArrayList<>();
+
+        private final Set<String> owned = new HashSet<>();
+
+        private final List<Checksum> shared = new ArrayList<>();
+
+        private final List<Checksum> resolved = new ArrayList<>();
+
+        private final List<Checksum> notFound = new ArrayList<>();
+
+        private boolean closed;
+
+        private Claim() {
+        }
+
+        /**
+         * @return the checksums of the files known from the baseline
+         */
+        public synchronized List<Checksum> getUnchanged() {
+            return new ArrayList<>(unchanged);
+        }
+
+        /**
+         * @return the checksums of the files looked up by other URLs
+         */
+        public synchronized List<Checksum> getShared() {
+            return new ArrayList<>(shared);
+        }
+
+        /**
+         * @return the checksums of the files resolved without Koji and PNC
+         */
+        public synchronized List<Checksum> getResolved() {
+            return new ArrayList<>(resolved);
+        }
+
+        /**
+         * @return the checksums of the files which were recently not found in any build
+         */
+        public synchronized List<Checksum> getNotFound() {
+            return new ArrayList<>(notFound);
+        }
+
+        private synchronized Set<String> close() {
+            closed = true;
+            return new HashSet<>(owned);
+        }
+    }
+}
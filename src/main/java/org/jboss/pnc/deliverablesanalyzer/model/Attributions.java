@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer.model;
+
+import static org.jboss.pnc.build.finder.core.BuildFinderUtils.createKojiBuildZero;
+import static org.jboss.pnc.build.finder.core.BuildFinderUtils.isBuildIdZero;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jboss.pnc.build.finder.core.BuildCheckedEvent;
+import org.jboss.pnc.build.finder.core.BuildFinderListener;
+import org.jboss.pnc.build.finder.core.BuildSystem;
+import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.core.LicenseInfo;
+import org.jboss.pnc.build.finder.koji.KojiBuild;
+import org.jboss.pnc.build.finder.koji.KojiLocalArchive;
+
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiChecksumType;
+
+/**
+ * Build attributions of the files found by an analysis, indexed by their MD5 checksum. An analysis of a new version of
+ * a deliverable can use the attributions of the analysis of a previous version as a baseline, so that only the changed
+ * and new files need to be looked up in Koji and PNC. Only the files which were found in a build are kept, the files
+ * which were not found are looked up again, as they may have been built since.
+ */
+public class Attributions {
+    private final Map<String, Attribution> attributions = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the attributions of all the files found in the builds.
+     *
+     * @param builds the builds found by Build Finder
+     */
+    public void record(Map<BuildSystemInteger, KojiBuild> builds) {
+        for (Map.Entry<BuildSystemInteger, KojiBuild> entry : builds.entrySet()) {
+            if (isBuildIdZero(entry.getKey().getValue())) {
+                continue;
+            }
+
+            KojiBuild build = copy(entry.getValue());
+
+            for (KojiLocalArchive localArchive : entry.getValue().getArchives()) {
+                KojiLocalArchive archive = strip(localArchive);
+
+                for (Checksum checksum : localArchive.getChecksums()) {
+                    if (checksum.getType() == ChecksumType.md5) {
+                        attributions.put(checksum.getValue(), new Attribution(entry.getKey(), build, archive));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the attribution of a file.
+     *
+     * @param checksum the MD5 checksum of the file
+     * @param attribution the attribution
+     */
+    public void put(Checksum checksum, Attribution attribution) {
+        attributions.put(checksum.getValue(), attribution);
+    }
+
+    /**
+     * Adds all the attributions of other files.
+     *
+     * @param other the attributions
+     */
+    public void putAll(Attributions other) {
+        attributions.putAll(other.attributions);
+    }
+
+    /**
+     * Returns the attributions as builds with their archives, each archive with the MD5 checksums of the files
+     * attributed to it, so that they can be cached as JSON and restored by {@link #fromBuilds(Map)}.
+     *
+     * @return the builds
+     */
+    public Map<BuildSystemInteger, KojiBuild> toBuilds() {
+        Map<BuildSystemInteger, KojiBuild> builds = new HashMap<>();
+
+        for (Map.Entry<String, Attribution> entry : attributions.entrySet()) {
+            KojiLocalArchive archive = getArchive(builds, entry.getValue());
+            archive.getChecksums().add(new Checksum(ChecksumType.md5, entry.getKey(), (String) null, 0L));
+        }
+
+        return builds;
+    }
+
+    /**
+     * Restores the attributions returned by {@link #toBuilds()}.
+     *
+     * @param builds the builds
+     * @return the attributions
+     */
+    public static Attributions fromBuilds(Map<BuildSystemInteger, KojiBuild> builds) {
+        Attributions attributions = new Attributions();
+        attributions.record(builds);
+        return attributions;
+    }
+
+    public int size() {
+        return attributions.size();
+    }
+
+    /**
+     * Returns whether the file with the checksum has a known attribution.
+     *
+     * @param checksum the checksum of the file
+     * @return true if the file was found in a build
+     */
+    public boolean contains(Checksum checksum) {
+        return checksum.getValue() != null && checksum.getType() == ChecksumType.md5
+                && attributions.containsKey(checksum.getValue());
+    }
+
+    /**
+     * Reports the files as checked to the listener, as if Build Finder looked them up.
+     *
+     * @param checksums the checksums of the files
+     * @param listener the listener for events from Build Finder
+     */
+    public void reportChecked(Collection<Checksum> checksums, BuildFinderListener listener) {
+        if (listener == null) {
+            return;
+        }
+
+        for (Checksum checksum : checksums) {
+            Attribution attribution = attributions.get(checksum.getValue());
+            BuildSystem buildSystem = attribution != null ? attribution.buildKey().getBuildSystem() : BuildSystem.none;
+            listener.buildChecked(new BuildCheckedEvent(checksum, buildSystem));
+        }
+    }
+
+    /**
+     * Adds the files to the builds found by Build Finder, as if Build Finder found them. The files without a known
+     * attribution are added as not found.
+     *
+     * @param builds the builds found by Build Finder
+     * @param checksums the MD5 checksums of the files, which were not looked up by Build Finder
+     * @param files all the files of the analysis with their checksums
+     * @param licenses the licenses of the files of the analysis
+     */
+    public void addTo(
+            Map<BuildSystemInteger, KojiBuild> builds,
+            Collection<Checksum> checksums,
+            Map<String, Collection<Checksum>> files,
+            Map<String, Collection<LicenseInfo>> licenses) {
+        Map<String, KojiLocalArchive> archivesByFilename = new HashMap<>(checksums.size());
+        Map<String, KojiLocalArchive> notFoundArchives = getNotFoundArchives(builds);
+
+        for (Checksum checksum : checksums) {
+            Attribution attribution = attributions.get(checksum.getValue());
+            KojiLocalArchive archive = attribution != null ? getArchive(builds, attribution)
+                    : getNotFoundArchive(builds, notFoundArchives, checksum);
+            String filename = checksum.getFilename();
+
+            archive.getFilenames().add(filename);
+            archive.getChecksums().addAll(files.getOrDefault(filename, Collections.emptyList()));
+            archivesByFilename.put(filename, archive);
+        }
+
+        for (Map.Entry<String, Collection<LicenseInfo>> entry : licenses.entrySet()) {
+            KojiLocalArchive archive = archivesByFilename.get(StringUtils.removeEnd(entry.getKey(), "!/"));
+
+            if (archive != null) {
+                archive.getLicenses().addAll(entry.getValue());
+            }
+        }
+    }
+
+    private static KojiLocalArchive getArchive(Map<BuildSystemInteger, KojiBuild> builds, Attribution attribution) {
+        KojiBuild build = builds.computeIfAbsent(attribution.buildKey(), key -> copy(attribution.build()));
+
+        return build.getArchives()
+                .stream()
+                .filter(localArchive -> isSameArchive(localArchive, attribution.archive()))
+                .findFirst()
+                .orElseGet(() -> {
+                    KojiLocalArchive localArchive = strip(attribution.archive());
+                    build.getArchives().add(localArchive);
+                    return localArchive;
+                });
+    }
+
+    /**
+     * Indexes the archives of build zero by their checksums, so that each file not found is matched in constant time.
+     */
+    private static Map<String, KojiLocalArchive> getNotFoundArchives(Map<BuildSystemInteger, KojiBuild> builds) {
+        Map<String, KojiLocalArchive> notFoundArchives = new HashMap<>();
+        KojiBuild buildZero = builds.get(new BuildSystemInteger(0, BuildSystem.none));
+
+        if (buildZero != null) {
+            for (KojiLocalArchive localArchive : buildZero.getArchives()) {
+                for (Checksum checksum : localArchive.getChecksums()) {
+                    notFoundArchives.putIfAbsent(getNotFoundKey(checksum), localArchive);
+                }
+            }
+        }
+
+        return notFoundArchives;
+    }
+
+    private static String getNotFoundKey(Checksum checksum) {
+        return checksum.getType() + ":" + checksum.getValue();
+    }
+
+    /**
+     * Gets the archive of the file in build zero, like Build Finder does for the files it doesn't find.
+     */
+    private static KojiLocalArchive getNotFoundArchive(
+            Map<BuildSystemInteger, KojiBuild> builds,
+            Map<String, KojiLocalArchive> notFoundArchives,
+            Checksum checksum) {
+        return notFoundArchives.computeIfAbsent(getNotFoundKey(checksum), key -> {
+            KojiBuild buildZero = builds
+                    .computeIfAbsent(new BuildSystemInteger(0, BuildSystem.none), buildKey -> createKojiBuildZero());
+            KojiArchiveInfo archiveInfo = new KojiArchiveInfo();
+            archiveInfo.setBuildId(0);
+            archiveInfo.setFilename("not found");
+            archiveInfo.setChecksum(checksum.getValue());
+            // The size of a Koji archive is an int, so the size of a file over 2 GiB is clamped
+            archiveInfo.setSize((int) Math.min(checksum.getFileSize(), Integer.MAX_VALUE));
+            archiveInfo.setChecksumType(KojiChecksumType.valueOf(checksum.getType().name()));
+            archiveInfo.setArchiveId(-1 * (buildZero.getArchives().size() + 1));
+
+            KojiLocalArchive localArchive = new KojiLocalArchive();
+            localArchive.setArchive(archiveInfo);
+            buildZero.getArchives().add(localArchive);
+            return localArchive;
+        });
+    }
+
+    private static boolean isSameArchive(KojiLocalArchive archive, KojiLocalArchive other) {
+        if (archive.getArchive() != null && other.getArchive() != null) {
+            return archive.getArchive().getArchiveId().equals(other.getArchive().getArchiveId());
+        }
+
+        if (archive.getRpm() != null && other.getRpm() != null) {
+            return archive.getRpm().getId().equals(other.getRpm().getId());
+        }
+
+        return false;
+    }
+
+    /**
+     * Copies the build without its archives and without the data which is not part of the result of the analysis.
+     */
+    private static KojiBuild copy(KojiBuild build) {
+        KojiBuild copy = new KojiBuild(
+                build.getBuildInfo(),
+                build.getTaskInfo(),
+                build.getTaskRequest(),
+                new ArrayList<>(),
+                new ArrayList<>(),
+                build.getTags(),
+                build.getTypes(),
+                new ArrayList<>());
+        copy.setDuplicateArchives(new ArrayList<>());
+        return copy;
+    }
+
+    /**
+     * Copies the archive without its files, which differ between the analyses.
+     */
+    private static KojiLocalArchive strip(KojiLocalArchive archive) {
+        KojiLocalArchive copy = new KojiLocalArchive();
+        copy.setArchive(archive.getArchive());
+        copy.setRpm(archive.getRpm());
+        return copy;
+    }
+
+    /**
+     * Attribution of a file to an archive of a build.
+     *
+     * @param buildKey the key of the build in the builds found by Build Finder
+     * @param build the build without archives
+     * @param archive the archive without files
+     */
+    public record Attribution(BuildSystemInteger buildKey, KojiBuild build, KojiLocalArchive archive) {
+    }
+}
@@ -25,15 +25,14 @@ import java.util.UUID;
 import java.util.concurrent.CancellationException;
 import java.util.stream.Collectors;
 
-import org.eclipse.microprofile.context.ManagedExecutor;
 import org.jboss.pnc.api.deliverablesanalyzer.dto.AnalysisReport;
 import org.jboss.pnc.api.deliverablesanalyzer.dto.AnalyzePayload;
-import org.jboss.pnc.api.deliverablesanalyzer.dto.FinderResult;
 import org.jboss.pnc.api.dto.ExceptionResolution;
 import org.jboss.pnc.api.dto.Request;
 import org.jboss.pnc.api.dto.exception.ReasonedException;
 import org.jboss.pnc.api.enums.ResultStatus;
 import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.deliverablesanalyzer.AdmissionController;
 import org.jboss.pnc.deliverablesanalyzer.Finder;
 import org.jboss.pnc.deliverablesanalyzer.StatusCache;
 import org.jboss.pnc.deliverablesanalyzer.model.AnalyzeResponse;
@@ -46,6 +45,7 @@ import org.slf4j.LoggerFactory;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.ClientErrorException;
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.HttpHeaders;
@@ -58,7 +58,7 @@ public class AnalyzeResource implements AnalyzeService {
     private static final Logger LOGGER = LoggerFactory.getLogger(AnalyzeResource.class);
 
     @Inject
-    ManagedExecutor executor;
+    AdmissionController admissionController;
 
     @Inject
     StatusCache<String, FinderStatus> statuses;
@@ -84,7 +84,7 @@ public class AnalyzeResource implements AnalyzeService {
     @Override
     public Response cancel(String id) {
         heartbeatScheduler.unsubscribeRequest(id);
-        if (finder.cancel(id)) {
+        if (finder.cancel(id) || admissionController.cancel(id)) {
             return Response.ok().build();
         }
 
@@ -92,15 +92,17 @@ public class AnalyzeResource implements AnalyzeService {
     }
 
     @Override
-    public Response analyze(AnalyzePayload analyzePayload) throws URISyntaxException {
+    public Response analyze(AnalyzePayload analyzePayload, String baseline) throws URISyntaxException {
         List<String> urls = analyzePayload.getUrls();
         LOGGER.info(
-                "Analysis request accepted: [urls: {}, config: {}, callback: {}, heartbeat: {}, operationId: {}]",
+                "Analysis request accepted: [urls: {}, config: {}, callback: {}, heartbeat: {}, operationId: {}, "
+                        + "baseline: {}]",
                 analyzePayload.getUrls(),
                 analyzePayload.getConfig(),
                 analyzePayload.getCallback(),
                 analyzePayload.getHeartbeat(),
-                analyzePayload.getOperationId());
+                analyzePayload.getOperationId(),
+                baseline);
         BuildConfig specificConfig = validateInputsLoadConfig(urls, analyzePayload.getConfig());
 
         String id = analyzePayload.getOperationId();
@@ -115,12 +117,11 @@ public class AnalyzeResource implements AnalyzeService {
         if (analyzePayload.getCallback() != null) {
             mergeHttpHeaders(analyzePayload.getCallback(), MdcUtils.mdcToMapWithHeaderKeys());
         }
-        executor.runAsync(() -> {
+        boolean admitted = admissionController.submit(id, () -> {
             LOGGER.info("Analysis with ID {} was initiated. Starting analysis of these URLs: {}", id, urls);
             AnalysisReport analysisReport = null;
             try {
-                List<FinderResult> finderResults = finder.find(id, urls, status, status, specificConfig);
-                analysisReport = new AnalysisReport(finderResults);
+                analysisReport = finder.find(id, urls, baseline, status, status, specificConfig);
                 LOGGER.debug("Analysis finished successfully. Analysis results: {}", analysisReport);
             } catch (CancellationException ce) {
                 // The task was canceled => don't send results using callback
@@ -184,16 +185,63 @@ public class AnalyzeResource implements AnalyzeService {
                 }
             }
 
-        });
+        }, () -> reportCancelled(id, analyzePayload, status));
+
+        if (!admitted) {
+            if (analyzePayload.getHeartbeat() != null) {
+                heartbeatScheduler.unsubscribeRequest(id);
+            }
+
+            // Keep the status of an earlier analysis with the same ID
+            statuses.remove(id, status);
+
+            return createTooManyRequestsResponse();
+        }
 
         return Response.ok().type(MediaType.APPLICATION_JSON).entity(createAnalyzeResponse(id)).build();
     }
 
+    /**
+     * Completes an analysis cancelled before it was started: its status is dropped and the callback gets a cancelled
+     * result, so that the clients waiting for it don't wait forever.
+     */
+    private void reportCancelled(String id, AnalyzePayload analyzePayload, FinderStatus status) {
+        statuses.remove(id, status);
+
+        ExceptionResolution exceptionResolution = ExceptionResolution.builder()
+                .reason(String.format("Analysis with ID %s was cancelled before it was started", id))
+                .build();
+        AnalysisReport analysisReport = AnalysisReport.processWithResolution(
+                ResultStatus.CANCELLED,
+                exceptionResolution);
+
+        if (analyzePayload.getCallback() == null) {
+            LOGGER.warn(
+                    "Analysis with ID {} was cancelled but no callback defined for request {}.",
+                    id,
+                    analyzePayload);
+        } else if (!performCallback(analyzePayload.getCallback(), analysisReport)) {
+            LOGGER.info("Analysis with ID {} was cancelled, but callback couldn't be performed!", id);
+        }
+    }
+
     private AnalyzeResponse createAnalyzeResponse(String id) throws URISyntaxException {
         String cancelUrl = uriInfo.getAbsolutePath() + "/" + id + "/cancel";
         return new AnalyzeResponse(id, new Request(Request.Method.POST, new URI(cancelUrl)));
     }
 
+    private Response createTooManyRequestsResponse() {
+        Response.Status status = Response.Status.TOO_MANY_REQUESTS;
+        ErrorMessage errorMessage = new ErrorMessage(
+                new ClientErrorException("Too many analyses are running or queued, please retry later", status));
+
+        return Response.status(status)
+                .header(HttpHeaders.RETRY_AFTER, admissionController.getRetryAfter().toSeconds())
+                .type(MediaType.APPLICATION_JSON)
+                .entity(errorMessage)
+                .build();
+    }
+
     private boolean performCallback(org.jboss.pnc.api.dto.Request callback, AnalysisReport result) {
 
         addAuthenticationHeaderToCallback(callback);
@@ -35,6 +35,7 @@ import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
@@ -84,6 +85,12 @@ public interface AnalyzeService {
             content = @Content(
                     mediaType = MediaType.APPLICATION_JSON,
                     schema = @Schema(implementation = ErrorMessage.class)))
+    @APIResponse(
+            responseCode = "429",
+            description = "Too many analyses are running or queued. Retry after the time in the Retry-After header.",
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_JSON,
+                    schema = @Schema(implementation = ErrorMessage.class)))
     @APIResponse(
             responseCode = "500",
             description = "Error happened when initializing the analysis.",
@@ -106,6 +113,12 @@ public interface AnalyzeService {
                             + "Users can specify an alternate config for the BuildFinder, which is used "
                             + "as the analysis engine internally."
                             + "The callback is an object AnalysisResult as a JSON.",
-                    schema = @Schema(type = SchemaType.OBJECT)) AnalyzePayload analyzePayload)
+                    schema = @Schema(type = SchemaType.OBJECT)) AnalyzePayload analyzePayload,
+            @QueryParam("baseline") @Parameter(
+                    name = "baseline",
+                    description = "ID of a previous analysis of an earlier version of the deliverables. "
+                            + "The build attributions of the files which didn't change are reused "
+                            + "instead of being looked up again.",
+                    schema = @Schema(type = SchemaType.STRING)) String baseline)
             throws URISyntaxException;
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer.rest;
+
+import org.jboss.pnc.deliverablesanalyzer.CacheSnapshot;
+import org.jboss.pnc.deliverablesanalyzer.ChecksumPrefilter;
+import org.jboss.pnc.deliverablesanalyzer.OfflineLookups;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.ServiceUnavailableException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+
+@ApplicationScoped
+public class CacheResource implements CacheService {
+    @Inject
+    CacheSnapshot cacheSnapshot;
+
+    @Inject
+    OfflineLookups offlineLookups;
+
+    @Inject
+    ChecksumPrefilter checksumPrefilter;
+
+    @Override
+    public Response exportSnapshot() {
+        if (!cacheSnapshot.isAvailable()) {
+            throw new ServiceUnavailableException("The embedded caches have not started");
+        }
+
+        StreamingOutput snapshot = cacheSnapshot::export;
+
+        return Response.ok(snapshot)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"cache-snapshot.gz\"")
+                .build();
+    }
+
+    @Override
+    public Response exportChecksumIndex() {
+        if (!offlineLookups.isExportAvailable()) {
+            throw new ServiceUnavailableException("The caches have not started");
+        }
+
+        StreamingOutput index = offlineLookups::export;
+
+        return Response.ok(index)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"checksums.index\"")
+                .build();
+    }
+
+    @Override
+    public Response exportChecksumFilter() {
+        if (!checksumPrefilter.isExportAvailable()) {
+            throw new ServiceUnavailableException("The caches have not started");
+        }
+
+        StreamingOutput filter = checksumPrefilter::export;
+
+        return Response.ok(filter)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"checksums.filter\"")
+                .build();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer.rest;
+
+import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.eclipse.microprofile.openapi.annotations.media.Content;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
+
+import io.quarkus.security.Authenticated;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+@Path("/cache")
+public interface CacheService {
+    @Operation(
+            summary = "Exports a snapshot of the embedded caches",
+            description = "Streams the entries of all the embedded caches as a compressed snapshot, which a new node "
+                    + "imports at startup from the file set by infinispan.embedded.snapshot.path.")
+    @APIResponse(responseCode = "200", description = "Snapshot of the caches.")
+    @APIResponse(
+            responseCode = "503",
+            description = "The embedded caches have not started, or the cache is remote or disabled.",
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_JSON,
+                    schema = @Schema(implementation = ErrorMessage.class)))
+    @GET
+    @Path("snapshot")
+    @Authenticated
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    Response exportSnapshot();
+
+    @Operation(
+            summary = "Exports a checksum index of the Koji archives",
+            description = "Streams an index of the MD5 checksums of the Koji archives in the checksums-md5 cache, "
+                    + "which nodes which can't reach Koji use from the file set by analysis.checksum-index.path.")
+    @APIResponse(responseCode = "200", description = "Checksum index of the archives.")
+    @APIResponse(
+            responseCode = "503",
+            description = "The caches have not started, or the cache is disabled.",
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_JSON,
+                    schema = @Schema(implementation = ErrorMessage.class)))
+    @GET
+    @Path("checksum-index")
+    @Authenticated
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    Response exportChecksumIndex();
+
+    @Operation(
+            summary = "Exports a checksum filter of the cached checksums",
+            description = "Streams a Bloom filter of the MD5 checksums in the checksums-md5 and checksums-pnc-md5 "
+                    + "caches, which nodes use from the file set by analysis.checksum-filter.path.")
+    @APIResponse(responseCode = "200", description = "Checksum filter of the cached checksums.")
+    @APIResponse(
+            responseCode = "503",
+            description = "The caches have not started, or the cache is disabled.",
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_JSON,
+                    schema = @Schema(implementation = ErrorMessage.class)))
+    @GET
+    @Path("checksum-filter")
+    @Authenticated
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    Response exportChecksumFilter();
+}
@@ -20,8 +20,12 @@ import static jakarta.ws.rs.core.Response.Status.NO_CONTENT;
 import static jakarta.ws.rs.core.Response.Status.OK;
 
 import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.pnc.api.dto.Request;
 import org.jboss.pnc.deliverablesanalyzer.rest.exception.BadRequestException;
 import org.slf4j.Logger;
@@ -29,6 +33,7 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.ws.rs.ProcessingException;
@@ -51,12 +56,23 @@ public class HttpClient {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HttpClient.class);
 
-    private final Client client;
+    @ConfigProperty(name = "analysis.http.connect-timeout", defaultValue = "30s")
+    Duration connectTimeout;
+
+    @ConfigProperty(name = "analysis.http.read-timeout", defaultValue = "1m")
+    Duration readTimeout;
+
+    private Client client;
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    public HttpClient() {
-        client = ClientBuilder.newBuilder().build();
+    @PostConstruct
+    void init() {
+        // Without timeouts, a stalled server holds the thread sending the request forever
+        client = ClientBuilder.newBuilder()
+                .connectTimeout(connectTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
     }
 
     @PreDestroy
@@ -110,6 +126,29 @@ public class HttpClient {
         }
     }
 
+    /**
+     * Sends a HEAD request and returns the response headers. The method validates if the remote endpoint responds with
+     * 200, otherwise IOException is thrown
+     *
+     * @param uri the URI
+     * @return the response headers
+     * @throws IOException Thrown in case of the request failure
+     */
+    public MultivaluedMap<String, String> performHeadRequest(URI uri) throws IOException {
+        LOGGER.debug("Performing HEAD request of {}", uri);
+
+        try (Response response = client.target(uri).request().head()) {
+            if (response.getStatus() != OK.getStatusCode()) {
+                throw new IOException(
+                        String.format("HEAD request of %s failed! ResponseCode: %s", uri, response.getStatus()));
+            }
+
+            return response.getStringHeaders();
+        } catch (ProcessingException e) {
+            throw new IOException("HEAD request of " + uri + " failed!", e);
+        }
+    }
+
     private Response invokeHttpRequest(Request request, Entity<?> entity) throws IOException, ProcessingException {
         WebTarget target = client.target(request.getUri().toString());
         Invocation.Builder requestBuilder = target.request().headers(headersToMap(request.getHeaders()));
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer.utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.jboss.pnc.build.finder.core.BuildConfig;
+
+public final class ConfigUtils {
+    /**
+     * Utility classes shouldn't have a public default constructor
+     */
+    private ConfigUtils() {
+    }
+
+    /**
+     * Computes a fingerprint of all the options of the config which influence the result of an analysis. Two configs
+     * with the same fingerprint produce the same result for the same deliverable, so the fingerprint is stable across
+     * restarts of the service and doesn't depend on options like the number of threads.
+     *
+     * @param config the config
+     * @return the hex-encoded SHA-256 fingerprint of the config
+     */
+    public static String fingerprint(BuildConfig config) {
+        String canonical = String.join(
+                "\n",
+                "archiveExtensions=" + config.getArchiveExtensions(),
+                "archiveTypes=" + config.getArchiveTypes(),
+                "buildSystems=" + config.getBuildSystems(),
+                "checksumOnly=" + config.getChecksumOnly(),
+                "checksumTypes=" + sorted(config.getChecksumTypes()),
+                "disableRecursion=" + config.getDisableRecursion(),
+                "excludes=" + config.getExcludes().stream().map(Pattern::pattern).toList(),
+                "kojiHubURL=" + config.getKojiHubURL(),
+                "pncURL=" + config.getPncURL());
+
+        return sha256Hex(canonical);
+    }
+
+    /**
+     * Computes a fingerprint of the build systems searched by an analysis. A checksum which is not found with one
+     * config is not found with any other config with the same fingerprint.
+     *
+     * @param config the config
+     * @return the hex-encoded SHA-256 fingerprint of the build systems of the config
+     */
+    public static String lookupFingerprint(BuildConfig config) {
+        return sha256Hex(
+                String.join(
+                        "\n",
+                        "buildSystems=" + sorted(config.getBuildSystems()),
+                        "kojiHubURL=" + config.getKojiHubURL(),
+                        "pncURL=" + config.getPncURL()));
+    }
+
+    private static String sha256Hex(String canonical) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String sorted(Collection<?> values) {
+        return values.stream().map(String::valueOf).sorted().collect(Collectors.joining(",", "[", "]"));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer.utils;
+
+public final class DigestUtils {
+    private static final int MD5_HEX_LENGTH = 32;
+
+    /**
+     * Utility classes shouldn't have a public default constructor
+     */
+    private DigestUtils() {
+    }
+
+    /**
+     * @param value the value
+     * @return true if the value is a hex-encoded MD5 checksum, in any case
+     */
+    public static boolean isMd5(String value) {
+        if (value == null || value.length() != MD5_HEX_LENGTH) {
+            return false;
+        }
+
+        for (int i = 0; i < MD5_HEX_LENGTH; i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses 8 bytes of a hex-encoded digest, without allocating.
+     *
+     * @param value the hex-encoded digest
+     * @param start the index of the first of the 16 hex digits
+     * @return the bytes, big-endian
+     */
+    public static long parseHexLong(String value, int start) {
+        long result = 0L;
+
+        for (int i = start; i < start + 16; i++) {
+            result = (result << 4) | Character.digit(value.charAt(i), 16);
+        }
+
+        return result;
+    }
+}
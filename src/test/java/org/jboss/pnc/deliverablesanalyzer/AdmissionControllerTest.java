@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AdmissionControllerTest {
+    @Test
+    void cancelledQueuedAnalysisRunsItsCancelAction() {
+        List<String> events = new ArrayList<>();
+        CompletableFuture<Void> running = new CompletableFuture<>();
+        AdmissionController admissionController = new AdmissionController();
+        admissionController.executor = new AnalysisExecutor() {
+            @Override
+            public Runnable contextualRunnable(Runnable runnable) {
+                return runnable;
+            }
+
+            @Override
+            public CompletableFuture<Void> runAsync(Runnable runnable) {
+                runnable.run();
+                return running;
+            }
+        };
+        admissionController.registry = new SimpleMeterRegistry();
+        admissionController.maxConcurrent = 1;
+        admissionController.maxQueued = 1;
+        admissionController.retryAfter = Duration.ofSeconds(60L);
+        admissionController.init();
+
+        assertTrue(admissionController.submit("1", () -> events.add("run 1"), () -> events.add("cancel 1")));
+        assertTrue(admissionController.submit("2", () -> events.add("run 2"), () -> events.add("cancel 2")));
+        assertFalse(admissionController.submit("3", () -> events.add("run 3"), () -> events.add("cancel 3")));
+        assertEquals(1, admissionController.getQueueDepth());
+
+        assertTrue(admissionController.cancel("2"));
+        assertFalse(admissionController.cancel("2"));
+        assertFalse(admissionController.cancel("1"));
+        assertEquals(0, admissionController.getQueueDepth());
+
+        running.complete(null);
+
+        assertEquals(List.of("run 1", "cancel 2"), events);
+        assertEquals(0, admissionController.getRunning());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.jboss.pnc.api.enums.ResultStatus;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.junit.jupiter.api.Test;
+
+class AnalysisBudgetTest {
+    private static Checksum md5(String value, long size) {
+        return new Checksum(ChecksumType.md5, value, value + ".jar", size);
+    }
+
+    @Test
+    void downloadOverBudgetIsNotDegradable() {
+        AnalysisBudget budget = new AnalysisBudget(100L, Long.MAX_VALUE, Long.MAX_VALUE);
+        budget.chargeDownload(100L);
+
+        BudgetExceededException e = assertThrows(BudgetExceededException.class, () -> budget.chargeDownload(1L));
+
+        assertEquals(ResultStatus.FAILED, e.getResult());
+        assertFalse(e.isDegradable());
+        assertSame(e, assertThrows(BudgetExceededException.class, budget::throwIfExceeded));
+    }
+
+    @Test
+    void filesOverBudgetAreDegradable() {
+        AnalysisBudget budget = new AnalysisBudget(Long.MAX_VALUE, 1000L, 2L);
+        budget.chargeFile(md5("aa", 10L));
+        budget.chargeFile(new Checksum());
+        budget.chargeFile(md5("bb", 10L));
+
+        BudgetExceededException e = assertThrows(BudgetExceededException.class, () -> budget.chargeFile(md5("cc", 1L)));
+
+        assertTrue(e.isDegradable());
+        assertEquals(3L, budget.getFiles());
+        assertEquals(21L, budget.getExtractedBytes());
+    }
+
+    @Test
+    void filesAreChargedOnceWithAllChecksumTypes() {
+        AnalysisBudget budget = new AnalysisBudget(Long.MAX_VALUE, 20L, 2L);
+
+        // DistributionAnalyzer queues a checksum of every configured type for each file
+        for (String value : new String[] { "aa", "bb" }) {
+            for (ChecksumType checksumType : ChecksumType.values()) {
+                budget.chargeFile(new Checksum(checksumType, checksumType + value, value + ".jar", 10L));
+            }
+        }
+
+        assertEquals(2L, budget.getFiles());
+        assertEquals(20L, budget.getExtractedBytes());
+        assertDoesNotThrow(budget::throwIfExceeded);
+    }
+
+    @Test
+    void renewedBudgetStartsEmpty() {
+        AnalysisBudget budget = new AnalysisBudget(Long.MAX_VALUE, 10L, Long.MAX_VALUE);
+        assertThrows(BudgetExceededException.class, () -> budget.chargeFile(md5("aa", 11L)));
+
+        AnalysisBudget renewed = budget.renew();
+
+        assertDoesNotThrow(renewed::throwIfExceeded);
+        assertEquals(0L, renewed.getExtractedBytes());
+        assertThrows(BudgetExceededException.class, () -> renewed.chargeFile(md5("aa", 11L)));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AnalysisScopeTest {
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void joinReturnsAllResults() throws Exception {
+        try (AnalysisScope<String> scope = new AnalysisScope<>(executor, null)) {
+            scope.fork(() -> "a");
+            scope.fork(() -> "b");
+
+            List<String> results = scope.join();
+
+            assertEquals(2, results.size());
+            assertTrue(results.containsAll(List.of("a", "b")));
+        }
+    }
+
+    @Test
+    void failureInterruptsSiblings() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+
+        try (AnalysisScope<String> scope = new AnalysisScope<>(executor, null)) {
+            scope.fork(() -> blockUntilInterrupted(started, interrupted));
+            scope.fork(() -> {
+                started.await();
+                throw new IllegalStateException("Failed");
+            });
+
+            ExecutionException e = assertThrows(ExecutionException.class, scope::join);
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        assertTrue(interrupted.get());
+    }
+
+    @Test
+    void cancelInterruptsAllTasks() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+
+        try (AnalysisScope<String> scope = new AnalysisScope<>(executor, null)) {
+            scope.fork(() -> blockUntilInterrupted(started, interrupted));
+            started.await();
+            scope.cancel();
+
+            assertThrows(CancellationException.class, scope::join);
+        }
+
+        assertTrue(interrupted.get());
+    }
+
+    @Test
+    void deadlineInterruptsAllTasks() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+
+        try (AnalysisScope<String> scope = new AnalysisScope<>(executor, Duration.ofMillis(100L))) {
+            scope.fork(() -> blockUntilInterrupted(started, interrupted));
+
+            assertThrows(TimeoutException.class, scope::join);
+        }
+
+        assertTrue(interrupted.get());
+    }
+
+    private static String blockUntilInterrupted(CountDownLatch started, AtomicBoolean interrupted) {
+        started.countDown();
+
+        try {
+            TimeUnit.MINUTES.sleep(1L);
+        } catch (InterruptedException e) {
+            interrupted.set(true);
+        }
+
+        return "interrupted";
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.infinispan.client.hotrod.MetadataValue;
+import org.infinispan.client.hotrod.configuration.NearCacheConfiguration;
+import org.infinispan.client.hotrod.configuration.NearCacheMode;
+import org.infinispan.client.hotrod.impl.MetadataValueImpl;
+import org.infinispan.client.hotrod.near.NearCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class BoundedNearCacheFactoryTest {
+    private final AtomicLong nanos = new AtomicLong();
+
+    private final Set<String> removed = ConcurrentHashMap.newKeySet();
+
+    private SimpleMeterRegistry registry;
+
+    private BoundedNearCacheFactory factory;
+
+    private static MetadataValue<String> value(String value) {
+        return new MetadataValueImpl<>(0L, -1, 0L, -1, 1L, value);
+    }
+
+    private NearCache<String, String> createNearCache(int maxEntries) {
+        return factory.createNearCache(
+                new NearCacheConfiguration(NearCacheMode.INVALIDATED, maxEntries, false),
+                (key, value) -> removed.add(key));
+    }
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        factory = new BoundedNearCacheFactory("builds", Duration.ofMinutes(10L), registry, nanos::get);
+    }
+
+    @Test
+    void staleEntriesAreFetchedAgain() {
+        NearCache<String, String> nearCache = createNearCache(100);
+
+        assertTrue(nearCache.putIfAbsent("a", value("1")));
+        assertFalse(nearCache.putIfAbsent("a", value("2")));
+        assertEquals("1", nearCache.get("a").getValue());
+        assertNull(nearCache.get("b"));
+
+        nanos.addAndGet(Duration.ofMinutes(11L).toNanos());
+
+        assertNull(nearCache.get("a"));
+        assertEquals(1.0d, registry.get("infinispan.near-cache.hits").tag("cache", "builds").counter().count());
+        assertEquals(2.0d, registry.get("infinispan.near-cache.misses").tag("cache", "builds").counter().count());
+        assertEquals(1.0d / 3.0d, factory.getHitRatio(), 1.0e-9d);
+    }
+
+    @Test
+    void nearCacheIsBounded() {
+        NearCache<String, String> nearCache = createNearCache(10);
+
+        for (int i = 0; i < 100; i++) {
+            nearCache.putIfAbsent("key-" + i, value(String.valueOf(i)));
+        }
+
+        await().atMost(Duration.ofSeconds(30L)).until(() -> nearCache.size() <= 10);
+        await().atMost(Duration.ofSeconds(30L)).until(() -> removed.size() >= 90);
+
+        assertEquals(
+                (double) nearCache.size(),
+                registry.get("infinispan.near-cache.size").tag("cache", "builds").gauge().value());
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+class CacheMaintenanceTest {
+    @Test
+    void maintenanceWaitsForLowLoadUntilLate() {
+        CacheMaintenance maintenance = new CacheMaintenance();
+        maintenance.interval = Duration.ofHours(6L);
+        maintenance.maxRunning = 1;
+
+        Instant start = Instant.now();
+
+        assertFalse(maintenance.isDue(start.plus(Duration.ofHours(5L)), 0));
+        assertTrue(maintenance.isDue(start.plus(Duration.ofHours(7L)), 1));
+        assertFalse(maintenance.isDue(start.plus(Duration.ofHours(7L)), 2));
+        assertTrue(maintenance.isDue(start.plus(Duration.ofHours(13L)), 2));
+    }
+}
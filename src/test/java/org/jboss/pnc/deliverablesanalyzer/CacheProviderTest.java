@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.Map;
+import java.util.Optional;
+
+import org.infinispan.configuration.cache.Configuration;
+import org.infinispan.configuration.cache.StoreConfiguration;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.quarkus.runtime.configuration.MemorySize;
+import io.quarkus.runtime.configuration.MemorySizeConverter;
+import io.smallrye.config.PropertiesConfigSource;
+import io.smallrye.config.SmallRyeConfigBuilder;
+
+class CacheProviderTest {
+    private CacheProvider cacheProvider;
+
+    /**
+     * Returns whether the configurations of the embedded caches can be built, which needs the version of
+     * infinispan-commons matching the one of infinispan-core.
+     */
+    private static boolean isEmbeddedConfigurationAvailable() {
+        try {
+            new org.infinispan.configuration.cache.ConfigurationBuilder();
+            return true;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(isEmbeddedConfigurationAvailable(), "infinispan-commons doesn't match infinispan-core");
+
+        cacheProvider = new CacheProvider();
+        cacheProvider.config = new BuildConfig();
+        cacheProvider.embeddedMaxEntries = Optional.empty();
+        cacheProvider.embeddedMaxMemory = Optional.empty();
+        cacheProvider.embeddedCompactionThreshold = 0.5d;
+        cacheProvider.embeddedWriteBehind = true;
+        cacheProvider.embeddedWriteBehindQueueSize = 500;
+        cacheProvider.mpConfig = new SmallRyeConfigBuilder()
+                .withConverter(MemorySize.class, 100, new MemorySizeConverter())
+                .withSources(
+                        new PropertiesConfigSource(
+                                Map.of("infinispan.embedded.cache.builds.write-behind", "false"),
+                                "test",
+                                100))
+                .build();
+    }
+
+    @Test
+    void writeBehindCachesHaveAnAsyncStore() {
+        Configuration configuration = cacheProvider.getEmbeddedConfiguration("files", "/tmp/files");
+        StoreConfiguration store = configuration.persistence().stores().get(0);
+
+        assertTrue(store.async().enabled());
+        assertEquals(500, store.async().modificationQueueSize());
+    }
+
+    @Test
+    void otherCachesWriteTheirStoreSynchronously() {
+        Configuration configuration = cacheProvider.getEmbeddedConfiguration("builds", "/tmp/builds");
+
+        assertFalse(configuration.persistence().stores().get(0).async().enabled());
+        assertTrue(
+                cacheProvider.getEmbeddedConfiguration(NotFoundCache.CACHE_NAME, "/tmp/not-found")
+                        .persistence()
+                        .stores()
+                        .isEmpty());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.infinispan.protostream.ImmutableSerializationContext;
+import org.jboss.pnc.build.finder.koji.KojiBuild;
+import org.junit.jupiter.api.Test;
+
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
+
+class CacheSnapshotTest {
+    private final ImmutableSerializationContext serializationContext = CacheSnapshot.createSerializationContext();
+
+    @Test
+    void entriesAreReadInTheOrderTheyWereWritten() throws IOException {
+        KojiBuildInfo buildInfo = new KojiBuildInfo();
+        buildInfo.setId(7);
+        buildInfo.setNvr("a-1.0-1");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (CacheSnapshot.Writer writer = new CacheSnapshot.Writer(out, serializationContext)) {
+            writer.writeCache(
+                    ResultCache.CACHE_NAME,
+                    List.of(new CacheSnapshot.SnapshotEntry("key", "{}", 1000L)).iterator());
+            writer.writeCache("files-md5", Collections.emptyIterator());
+            writer.writeCache(
+                    "builds",
+                    List.of(new CacheSnapshot.SnapshotEntry(7, new KojiBuild(buildInfo), -1L)).iterator());
+        }
+
+        List<String> cacheNames = new ArrayList<>();
+        List<CacheSnapshot.SnapshotEntry> entries = new ArrayList<>();
+        Map<String, Long> counts = CacheSnapshot
+                .read(new ByteArrayInputStream(out.toByteArray()), serializationContext, (cacheName, entry) -> {
+                    cacheNames.add(cacheName);
+                    entries.add(entry);
+                });
+
+        assertEquals(Map.of(ResultCache.CACHE_NAME, 1L, "files-md5", 0L, "builds", 1L), counts);
+        assertEquals(List.of(ResultCache.CACHE_NAME, "builds"), cacheNames);
+        assertEquals(new CacheSnapshot.SnapshotEntry("key", "{}", 1000L), entries.get(0));
+        assertEquals(7, entries.get(1).key());
+        assertEquals("a-1.0-1", ((KojiBuild) entries.get(1).value()).getBuildInfo().getNvr());
+        assertEquals(400L, entries.get(0).getLifespan(600L));
+        assertEquals(0L, entries.get(0).getLifespan(2000L));
+        assertEquals(-1L, entries.get(1).getLifespan(2000L));
+    }
+
+    @Test
+    void otherFilesAreNotRead() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        }
+
+        assertThrows(
+                IOException.class,
+                () -> CacheSnapshot.read(
+                        new ByteArrayInputStream(out.toByteArray()),
+                        serializationContext,
+                        (cacheName, entry) -> {
+                        }));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.infinispan.commons.api.BasicCache;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class CacheStartupTest {
+    private FakeCacheContainer cacheManager;
+
+    private CacheStartup cacheStartup;
+
+    /**
+     * Container of the defined caches, whose caches can't be used.
+     */
+    private static final class FakeCacheContainer implements BasicCacheContainer {
+        private final Set<String> defined = new HashSet<>();
+
+        private final Map<String, BasicCache<?, ?>> caches = new ConcurrentHashMap<>();
+
+        void defineConfiguration(String name) {
+            defined.add(name);
+        }
+
+        @Override
+        public <K, V> BasicCache<K, V> getCache() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <K, V> BasicCache<K, V> getCache(String name) {
+            if (!defined.contains(name)) {
+                return null;
+            }
+
+            return (BasicCache<K, V>) caches.computeIfAbsent(
+                    name,
+                    key -> (BasicCache<?, ?>) Proxy.newProxyInstance(
+                            BasicCache.class.getClassLoader(),
+                            new Class<?>[] { BasicCache.class },
+                            (proxy, method, args) -> {
+                                throw new UnsupportedOperationException();
+                            }));
+        }
+
+        public void stopCache(String name) {
+            caches.remove(name);
+        }
+
+        @Override
+        public Set<String> getCacheNames() {
+            return caches.keySet();
+        }
+
+        @Override
+        public void start() {
+            // Nothing to start
+        }
+
+        @Override
+        public void stop() {
+            caches.clear();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        BuildConfig config = new BuildConfig();
+        config.setDisableCache(false);
+        config.setChecksumTypes(EnumSet.of(ChecksumType.md5));
+
+        cacheManager = new FakeCacheContainer();
+        cacheStartup = new CacheStartup();
+        cacheStartup.config = config;
+        cacheStartup.cacheProvider = () -> cacheManager;
+        cacheStartup.registry = new SimpleMeterRegistry();
+        cacheStartup.readyRatio = 1.0d;
+        cacheStartup.cacheSnapshot = new CacheSnapshot();
+        cacheStartup.cacheSnapshot.snapshotPath = Optional.empty();
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheStartup.close();
+        cacheManager.stop();
+    }
+
+    @Test
+    void cachesAreHandedOutOnceStarted() {
+        for (String name : CacheProvider.getCacheNames(EnumSet.of(ChecksumType.md5))) {
+            cacheManager.defineConfiguration(name);
+        }
+
+        assertNull(cacheStartup.getCache(ResultCache.CACHE_NAME));
+
+        cacheStartup.onStart(null);
+
+        await().atMost(Duration.ofSeconds(30)).until(() -> cacheStartup.getCacheManager() != null);
+
+        assertTrue(cacheStartup.isReady());
+        assertSame(cacheManager, cacheStartup.getCacheManager());
+        assertNotNull(cacheStartup.getCache(ResultCache.CACHE_NAME));
+        assertEquals(
+                Collections.nCopies(9, CacheStartup.State.STARTED),
+                cacheStartup.getStates().values().stream().toList());
+    }
+
+    @Test
+    void buildFinderRunsWithoutCachesIfOneFails() {
+        for (String name : CacheProvider.getCacheNames(EnumSet.of(ChecksumType.md5))) {
+            if (!name.equals("builds")) {
+                cacheManager.defineConfiguration(name);
+            }
+        }
+
+        cacheStartup.readyRatio = 0.5d;
+        cacheStartup.onStart(null);
+
+        await().atMost(Duration.ofSeconds(30))
+                .until(
+                        () -> cacheStartup.getStates()
+                                .values()
+                                .stream()
+                                .allMatch(state -> state == CacheStartup.State.STARTED
+                                        || state == CacheStartup.State.FAILED));
+
+        assertEquals(CacheStartup.State.FAILED, cacheStartup.getStates().get("builds"));
+        assertNull(cacheStartup.getCacheManager());
+        assertNull(cacheStartup.getCache("builds"));
+        assertNotNull(cacheStartup.getCache("builds-pnc"));
+        assertTrue(cacheStartup.isReady());
+
+        // Build Finder gets the caches which have started, and looks up the entries of the others
+        BasicCacheContainer startedCacheManager = cacheStartup.getStartedCacheManager();
+        BasicCache<Integer, String> builds = startedCacheManager.getCache("builds");
+
+        assertSame(cacheStartup.getCache("builds-pnc"), startedCacheManager.getCache("builds-pnc"));
+        assertNull(builds.put(1, "build"));
+        assertNull(builds.get(1));
+        assertTrue(builds.isEmpty());
+        assertEquals(Map.of(), builds.getAllAsync(Set.of(1)).join());
+
+        // A cache which failed to start doesn't keep the service from being ready
+        cacheStartup.readyRatio = 1.0d;
+
+        assertTrue(cacheStartup.isReady());
+    }
+
+    @Test
+    void startedCachesAreHandedOutAfterSnapshotImport() {
+        cacheManager.defineConfiguration(ResultCache.CACHE_NAME);
+        cacheStartup.cacheSnapshot.snapshotPath = Optional.of(Path.of("cache-snapshot.gz"));
+        cacheStartup.onStart(null);
+
+        await().atMost(Duration.ofSeconds(30)).until(() -> cacheStartup.getStartedCacheManager() != null);
+
+        // The snapshot is imported once all the caches have started or failed
+        assertTrue(
+                cacheStartup.getStates()
+                        .values()
+                        .stream()
+                        .allMatch(state -> state == CacheStartup.State.STARTED || state == CacheStartup.State.FAILED));
+        assertNull(cacheStartup.getCacheManager());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.pnc.build.finder.koji.ClientSession;
+import org.junit.jupiter.api.Test;
+
+import com.redhat.red.build.koji.KojiClientException;
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveQuery;
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveType;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiIdOrName;
+import com.redhat.red.build.koji.model.xmlrpc.KojiRpmInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiTagInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiTaskInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiTaskRequest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class CachingClientSessionTest {
+    private final List<List<String>> multiCalls = new CopyOnWriteArrayList<>();
+
+    private final AtomicBoolean failing = new AtomicBoolean();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final ClientSession hub = new ClientSession() {
+        @Override
+        public List<List<KojiArchiveInfo>> listArchives(List<KojiArchiveQuery> queries) throws KojiClientException {
+            if (failing.get()) {
+                throw new KojiClientException("Hub is down");
+            }
+
+            multiCalls.add(queries.stream().map(KojiArchiveQuery::getChecksum).toList());
+
+            return queries.stream().map(query -> {
+                KojiArchiveInfo archiveInfo = new KojiArchiveInfo();
+                archiveInfo.setChecksum(query.getChecksum());
+                return List.of(archiveInfo);
+            }).toList();
+        }
+
+        @Override
+        public List<KojiArchiveInfo> listArchives(KojiArchiveQuery query) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, KojiArchiveType> getArchiveTypeMap() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public KojiBuildInfo getBuild(int buildId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public KojiTaskInfo getTaskInfo(int taskId, boolean request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public KojiTaskRequest getTaskRequest(int taskId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<KojiTagInfo> listTags(int id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void enrichArchiveTypeInfo(List<KojiArchiveInfo> archiveInfos) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<KojiBuildInfo> getBuild(List<KojiIdOrName> idsOrNames) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<KojiRpmInfo> getRPM(List<KojiIdOrName> idsOrNames) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<KojiTaskInfo> getTaskInfo(List<Integer> taskIds, List<Boolean> requests) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<List<KojiRpmInfo>> listBuildRPMs(List<KojiIdOrName> idsOrNames) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<List<KojiTagInfo>> listTags(List<KojiIdOrName> idsOrNames) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    private static List<KojiArchiveQuery> queries(String... checksums) {
+        return Arrays.stream(checksums).map(checksum -> new KojiArchiveQuery().withChecksum(checksum)).toList();
+    }
+
+    private double lookups(String result) {
+        return registry.get("koji.client.lookups")
+                .tag("method", "listArchives")
+                .tag("result", result)
+                .counter()
+                .count();
+    }
+
+    @Test
+    void memoizesArchivesOfChecksums() throws KojiClientException {
+        CachingClientSession session = new CachingClientSession(hub, 100, Duration.ZERO, 10, registry);
+
+        session.listArchives(queries("aa", "bb"));
+        List<List<KojiArchiveInfo>> archives = session.listArchives(queries("bb", "cc"));
+
+        assertEquals(List.of(List.of("aa", "bb"), List.of("cc")), multiCalls);
+        assertEquals("bb", archives.get(0).get(0).getChecksum());
+        assertEquals("cc", archives.get(1).get(0).getChecksum());
+        assertEquals(1.0, lookups("hit"));
+        assertEquals(3.0, lookups("miss"));
+    }
+
+    @Test
+    void mergesConcurrentLookupsIntoOneMultiCall() throws Exception {
+        CachingClientSession session = new CachingClientSession(hub, 100, Duration.ofSeconds(5L), 3, registry);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        try {
+            Future<List<List<KojiArchiveInfo>>> first = executor.submit(() -> session.listArchives(queries("aa")));
+            Future<List<List<KojiArchiveInfo>>> second = executor
+                    .submit(() -> session.listArchives(queries("aa", "bb")));
+            Future<List<List<KojiArchiveInfo>>> third = executor.submit(() -> session.listArchives(queries("cc")));
+
+            assertEquals("aa", first.get(10L, TimeUnit.SECONDS).get(0).get(0).getChecksum());
+            assertEquals("bb", second.get(10L, TimeUnit.SECONDS).get(1).get(0).getChecksum());
+            assertEquals("cc", third.get(10L, TimeUnit.SECONDS).get(0).get(0).getChecksum());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, multiCalls.size());
+        assertEquals(List.of("aa", "bb", "cc"), multiCalls.get(0).stream().sorted().toList());
+        assertEquals(1.0, lookups("coalesced") + lookups("hit"));
+    }
+
+    @Test
+    void doesNotMemoizeFailures() throws KojiClientException {
+        CachingClientSession session = new CachingClientSession(hub, 100, Duration.ZERO, 10, registry);
+        failing.set(true);
+
+        assertThrows(KojiClientException.class, () -> session.listArchives(queries("aa")));
+
+        failing.set(false);
+
+        assertEquals("aa", session.listArchives(queries("aa")).get(0).get(0).getChecksum());
+        assertEquals(List.of(List.of("aa")), multiCalls);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class CancellationTokenTest {
+    @Test
+    void cancelRunsRegisteredCallbacksOnce() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger runs = new AtomicInteger();
+        AtomicInteger removedRuns = new AtomicInteger();
+        token.onCancel(runs::incrementAndGet);
+        token.onCancel(removedRuns::incrementAndGet).close();
+
+        assertDoesNotThrow(token::throwIfCancelled);
+        assertEquals(Duration.ZERO, token.getTimeSinceCancel());
+
+        token.cancel();
+        token.cancel();
+
+        assertTrue(token.isCancelled());
+        assertEquals(1, runs.get());
+        assertEquals(0, removedRuns.get());
+        assertThrows(CancellationException.class, token::throwIfCancelled);
+    }
+
+    @Test
+    void callbackRegisteredAfterCancelRunsImmediately() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger runs = new AtomicInteger();
+        token.onCancel(() -> {
+            throw new IllegalStateException("Failing callback");
+        });
+
+        token.cancel();
+        token.onCancel(runs::incrementAndGet);
+
+        assertEquals(1, runs.get());
+    }
+}
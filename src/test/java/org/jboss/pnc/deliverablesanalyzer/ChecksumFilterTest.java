@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ChecksumFilterTest {
+    private static final Instant SNAPSHOT_TIME = Instant.parse("2024-01-01T00:00:00Z");
+
+    @TempDir
+    Path tempDir;
+
+    private static String randomMd5(Random random) {
+        byte[] digest = new byte[16];
+        random.nextBytes(digest);
+        return HexFormat.of().formatHex(digest);
+    }
+
+    @Test
+    void containsAddedChecksums() {
+        ChecksumFilter filter = ChecksumFilter.create(10_000L, 0.01d, SNAPSHOT_TIME);
+        Random random = new Random(42L);
+
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(randomMd5(random));
+        }
+
+        random = new Random(42L);
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain(randomMd5(random)));
+        }
+
+        int falsePositives = 0;
+
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain(randomMd5(random))) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < 200, "Too many false positives: " + falsePositives);
+        assertTrue(filter.mightContain("not an md5"));
+        assertThrows(IllegalArgumentException.class, () -> filter.add("not an md5"));
+    }
+
+    @Test
+    void readsWrittenFilter() throws IOException {
+        ChecksumFilter filter = ChecksumFilter.create(1_000L, 0.01d, SNAPSHOT_TIME);
+        filter.add("d41d8cd98f00b204e9800998ecf8427e");
+        Path file = tempDir.resolve("checksums.filter");
+
+        filter.writeTo(file);
+        ChecksumFilter read = ChecksumFilter.read(file);
+
+        assertEquals(1L, read.getEntries());
+        assertEquals(filter.getNumBits(), read.getNumBits());
+        assertEquals(filter.getNumHashes(), read.getNumHashes());
+        assertEquals(SNAPSHOT_TIME, read.getSnapshotTime());
+        assertTrue(read.mightContain("D41D8CD98F00B204E9800998ECF8427E"));
+        assertFalse(read.mightContain("00000000000000000000000000000000"));
+
+        Files.write(file, new byte[] { 1, 2, 3 });
+        assertThrows(IOException.class, () -> ChecksumFilter.read(file));
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import org.infinispan.commons.api.BasicCache;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.build.finder.core.BuildSystem;
+import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.koji.KojiBuild;
+import org.jboss.pnc.build.finder.protobuf.ListKojiArchiveInfoProtobufWrapper;
+import org.jboss.pnc.deliverablesanalyzer.model.Attributions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiChecksumType;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ChecksumIndexTest {
+    private static final Instant SNAPSHOT_TIME = Instant.parse("2024-01-01T00:00:00Z");
+
+    @TempDir
+    Path tempDir;
+
+    private static ChecksumIndex.Entry entry(String md5, int buildId, int archiveId) {
+        return new ChecksumIndex.Entry(md5, new BuildSystemInteger(buildId, BuildSystem.koji), archiveId);
+    }
+
+    @Test
+    void looksUpAllArchivesOfChecksum() throws IOException {
+        String shared = "d41d8cd98f00b204e9800998ecf8427e";
+        String lowest = "00000000000000000000000000000000";
+        String highest = "ffffffffffffffffffffffffffffffff";
+        Path file = tempDir.resolve("checksums.index");
+
+        ChecksumIndex.write(
+                file,
+                List.of(entry(highest, 3, 30), entry(shared, 2, 21), entry(lowest, 1, 10), entry(shared, 1, 11)),
+                SNAPSHOT_TIME);
+        ChecksumIndex index = ChecksumIndex.open(file);
+
+        assertEquals(4L, index.size());
+        assertEquals(SNAPSHOT_TIME, index.getSnapshotTime());
+        assertEquals(List.of(entry(shared, 1, 11), entry(shared, 2, 21)), index.lookup(shared));
+        assertEquals(List.of(entry(lowest, 1, 10)), index.lookup(lowest));
+        assertEquals(List.of(entry(highest, 3, 30)), index.lookup(highest));
+        assertEquals(List.of(entry(highest.toUpperCase(), 3, 30)), index.lookup(highest.toUpperCase()));
+        assertTrue(index.lookup("d41d8cd98f00b204e9800998ecf8427f").isEmpty());
+        assertTrue(index.lookup("not an md5").isEmpty());
+    }
+
+    @Test
+    void mergesRunsSortedOnDisk() throws IOException {
+        Path file = tempDir.resolve("checksums.index");
+        List<ChecksumIndex.Entry> entries = new ArrayList<>();
+
+        for (int i = 999; i >= 0; i--) {
+            entries.add(entry(String.format("%032x", (long) i * 7919L), i, i * 10));
+        }
+
+        try (ChecksumIndex.Writer writer = new ChecksumIndex.Writer(file, SNAPSHOT_TIME, 64)) {
+            for (ChecksumIndex.Entry entry : entries) {
+                writer.add(entry);
+            }
+
+            assertEquals(1000L, writer.finish());
+        }
+
+        ChecksumIndex index = ChecksumIndex.open(file);
+
+        assertEquals(1000L, index.size());
+
+        for (ChecksumIndex.Entry entry : entries) {
+            assertEquals(List.of(entry), index.lookup(entry.md5()));
+        }
+
+        // Only the index is left once the runs are merged
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    @Test
+    void exportsKojiArchivesOfChecksumCache() throws IOException {
+        String md5 = "d41d8cd98f00b204e9800998ecf8427e";
+        KojiArchiveInfo archive = new KojiArchiveInfo();
+        archive.setChecksum(md5);
+        archive.setChecksumType(KojiChecksumType.md5);
+        archive.setBuildId(2);
+        archive.setArchiveId(20);
+        KojiArchiveInfo withoutBuild = new KojiArchiveInfo();
+        withoutBuild.setChecksum("00000000000000000000000000000000");
+        withoutBuild.setChecksumType(KojiChecksumType.md5);
+        withoutBuild.setArchiveId(30);
+        List<ListKojiArchiveInfoProtobufWrapper> values = List.of(
+                new ListKojiArchiveInfoProtobufWrapper(List.of(archive)),
+                new ListKojiArchiveInfoProtobufWrapper(List.of(withoutBuild)));
+        BasicCache<?, ?> cache = (BasicCache<?, ?>) Proxy.newProxyInstance(
+                BasicCache.class.getClassLoader(),
+                new Class<?>[] { BasicCache.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("values")) {
+                        return values;
+                    }
+
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        BasicCacheContainer cacheManager = (BasicCacheContainer) Proxy.newProxyInstance(
+                BasicCacheContainer.class.getClassLoader(),
+                new Class<?>[] { BasicCacheContainer.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getCache") && "checksums-md5".equals(args[0])) {
+                        return cache;
+                    }
+
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        Path file = tempDir.resolve("checksums.index");
+
+        OfflineLookups.export(cacheManager, file);
+        ChecksumIndex index = ChecksumIndex.open(file);
+
+        assertEquals(1L, index.size());
+        assertEquals(List.of(entry(md5, 2, 20)), index.lookup(md5));
+    }
+
+    private static KojiBuild build(int buildId, int archiveId) {
+        KojiArchiveInfo archive = new KojiArchiveInfo();
+        archive.setBuildId(buildId);
+        archive.setArchiveId(archiveId);
+        KojiBuild build = new KojiBuild();
+        build.setRemoteArchives(List.of(archive));
+        return build;
+    }
+
+    @Test
+    void resolvesBatchWithSingleReadOfBuilds() throws IOException {
+        String shared = "d41d8cd98f00b204e9800998ecf8427e";
+        String uncached = "ffffffffffffffffffffffffffffffff";
+        Path file = tempDir.resolve("checksums.index");
+        ChecksumIndex.write(
+                file,
+                List.of(entry(shared, 1, 11), entry(shared, 2, 21), entry(uncached, 3, 30)),
+                SNAPSHOT_TIME);
+
+        Map<Integer, KojiBuild> builds = Map.of(1, build(1, 11), 2, build(2, 21));
+        List<Set<?>> reads = new ArrayList<>();
+        BasicCache<?, ?> buildCache = (BasicCache<?, ?>) Proxy.newProxyInstance(
+                BasicCache.class.getClassLoader(),
+                new Class<?>[] { BasicCache.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getAllAsync")) {
+                        Set<?> keys = (Set<?>) args[0];
+                        reads.add(keys);
+                        Map<Object, KojiBuild> found = new HashMap<>();
+                        keys.stream().filter(builds::containsKey).forEach(key -> found.put(key, builds.get(key)));
+                        return CompletableFuture.completedFuture(found);
+                    }
+
+                    throw new UnsupportedOperationException(method.getName());
+                });
+
+        OfflineLookups offlineLookups = new OfflineLookups();
+        offlineLookups.config = new BuildConfig();
+        offlineLookups.registry = new SimpleMeterRegistry();
+        offlineLookups.path = Optional.of(file);
+        offlineLookups.cacheStartup = new CacheStartup() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> BasicCache<K, V> getCache(String name) {
+                return "builds".equals(name) ? (BasicCache<K, V>) buildCache : null;
+            }
+        };
+        offlineLookups.init();
+
+        Checksum first = new Checksum(ChecksumType.md5, shared, "first.jar", 1L);
+        Checksum second = new Checksum(ChecksumType.md5, uncached, "second.jar", 1L);
+        Checksum unknown = new Checksum(ChecksumType.md5, "00000000000000000000000000000000", "unknown.jar", 1L);
+        Map<Checksum, Attributions.Attribution> resolved = offlineLookups.resolveAll(List.of(first, second, unknown));
+
+        // The newest build of the checksum is used, and the build which is not cached is looked up
+        assertEquals(List.of(Set.of(1, 2, 3)), reads);
+        assertEquals(Set.of(first), resolved.keySet());
+        assertEquals(21, resolved.get(first).archive().getArchive().getArchiveId());
+        assertEquals(1.0d, offlineLookups.registry.get("analysis.checksum-index.unresolved").counter().count());
+    }
+
+    @Test
+    void rejectsCorruptedIndex() throws IOException {
+        Path file = tempDir.resolve("checksums.index");
+        ChecksumIndex.write(file, List.of(entry("d41d8cd98f00b204e9800998ecf8427e", 1, 10)), SNAPSHOT_TIME);
+
+        Files.write(file, new byte[] { 0, 0, 0 }, StandardOpenOption.APPEND);
+
+        assertThrows(IOException.class, () -> ChecksumIndex.open(file));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> ChecksumIndex.write(file, List.of(entry("not an md5", 1, 10)), SNAPSHOT_TIME));
+    }
+}
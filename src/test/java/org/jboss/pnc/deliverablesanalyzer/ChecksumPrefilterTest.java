@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.infinispan.commons.api.BasicCache;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.jboss.pnc.build.finder.core.BuildSystem;
+import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.koji.KojiBuild;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ChecksumPrefilterTest {
+    private static final String KNOWN = "d41d8cd98f00b204e9800998ecf8427e";
+
+    private static final Checksum UNKNOWN = new Checksum(
+            ChecksumType.md5,
+            "00000000000000000000000000000000",
+            "unknown.jar",
+            1L);
+
+    @TempDir
+    Path tempDir;
+
+    private ChecksumPrefilter prefilter(Instant snapshotTime) throws IOException {
+        ChecksumFilter filter = ChecksumFilter.create(1_000L, 0.01d, snapshotTime);
+        filter.add(KNOWN);
+        Path file = tempDir.resolve("checksums.filter");
+        filter.writeTo(file);
+
+        ChecksumPrefilter prefilter = new ChecksumPrefilter();
+        prefilter.registry = new SimpleMeterRegistry();
+        prefilter.path = Optional.of(file);
+        prefilter.refreshInterval = Duration.ofMinutes(10L);
+        prefilter.maxAge = Duration.ofHours(1L);
+        prefilter.init();
+        return prefilter;
+    }
+
+    @Test
+    void staleFilterIsNotUsedOnFreshNode() throws IOException {
+        ChecksumPrefilter prefilter = prefilter(Instant.now().minus(Duration.ofDays(30L)));
+
+        try {
+            // No build was found yet, but builds may have completed since the snapshot
+            assertFalse(prefilter.rejects(UNKNOWN));
+        } finally {
+            prefilter.close();
+        }
+    }
+
+    @Test
+    void recentFilterIsUsedUntilNewerBuildIsFound() throws IOException {
+        ChecksumPrefilter prefilter = prefilter(Instant.now().minus(Duration.ofMinutes(1L)));
+
+        try {
+            assertTrue(prefilter.rejects(UNKNOWN));
+            assertFalse(prefilter.rejects(new Checksum(ChecksumType.md5, KNOWN, "known.jar", 1L)));
+
+            KojiBuildInfo buildInfo = new KojiBuildInfo();
+            buildInfo.setNvr("newer-1.0-1");
+            buildInfo.setCompletionTime(Date.from(Instant.now()));
+            KojiBuild build = new KojiBuild(buildInfo);
+            prefilter.recordBuilds(Map.of(new BuildSystemInteger(1, BuildSystem.koji), build));
+
+            assertFalse(prefilter.rejects(UNKNOWN));
+        } finally {
+            prefilter.close();
+        }
+    }
+
+    @Test
+    void exportsChecksumsOfKojiAndPncCaches() throws IOException {
+        String pncMd5 = "0123456789abcdef0123456789abcdef";
+        Map<String, Set<String>> keys = Map
+                .of("checksums-md5", Set.of(KNOWN, "not an md5"), "checksums-pnc-md5", Set.of(pncMd5));
+        BasicCacheContainer cacheManager = (BasicCacheContainer) Proxy.newProxyInstance(
+                BasicCacheContainer.class.getClassLoader(),
+                new Class<?>[] { BasicCacheContainer.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getCache") && args.length == 1) {
+                        Set<String> cacheKeys = keys.get((String) args[0]);
+
+                        return cacheKeys == null ? null
+                                : Proxy.newProxyInstance(
+                                        BasicCache.class.getClassLoader(),
+                                        new Class<?>[] { BasicCache.class },
+                                        (cacheProxy, cacheMethod, cacheArgs) -> switch (cacheMethod.getName()) {
+                                            case "size" -> cacheKeys.size();
+                                            case "keySet" -> cacheKeys;
+                                            default -> throw new UnsupportedOperationException(cacheMethod.getName());
+                                        });
+                    }
+
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        Path file = tempDir.resolve("checksums.filter");
+
+        ChecksumPrefilter.export(cacheManager, 0.01d, file);
+        ChecksumFilter filter = ChecksumFilter.read(file);
+
+        assertEquals(2L, filter.getEntries());
+        assertTrue(filter.mightContain(KNOWN));
+        assertTrue(filter.mightContain(pncMd5));
+        assertFalse(filter.mightContain("9e107d9d372bb6826bd81d3542a419d6"));
+    }
+}
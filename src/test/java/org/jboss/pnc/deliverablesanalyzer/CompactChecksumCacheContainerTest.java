@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.infinispan.commons.api.BasicCache;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.infinispan.protostream.ImmutableSerializationContext;
+import org.infinispan.protostream.ProtobufUtil;
+import org.jboss.pnc.build.finder.koji.KojiJSONUtils;
+import org.jboss.pnc.build.finder.protobuf.ListKojiArchiveInfoProtobufWrapper;
+import org.junit.jupiter.api.Test;
+
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBtype;
+import com.redhat.red.build.koji.model.xmlrpc.KojiChecksumType;
+
+class CompactChecksumCacheContainerTest {
+    private static final String MD5 = "0123456789abcdef0123456789abcdef";
+
+    /**
+     * Container of map caches, which run the methods of the cache on a map, ignoring the lifespans and the max idle
+     * times, and complete the asynchronous methods at once.
+     */
+    private static final class MapCacheContainer implements BasicCacheContainer {
+        private final Map<String, ConcurrentMap<Object, Object>> maps = new ConcurrentHashMap<>();
+
+        @Override
+        public <K, V> BasicCache<K, V> getCache() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <K, V> BasicCache<K, V> getCache(String name) {
+            ConcurrentMap<Object, Object> map = maps.computeIfAbsent(name, key -> new ConcurrentHashMap<>());
+
+            return (BasicCache<K, V>) Proxy.newProxyInstance(
+                    BasicCache.class.getClassLoader(),
+                    new Class<?>[] { BasicCache.class },
+                    (proxy, method, args) -> invoke(map, method, args));
+        }
+
+        private static Object invoke(ConcurrentMap<Object, Object> map, Method method, Object[] args)
+                throws ReflectiveOperationException {
+            String name = method.getName();
+
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(map, args);
+            }
+
+            if (name.equals("getAllAsync")) {
+                return CompletableFuture.completedFuture(
+                        ((Set<?>) args[0]).stream()
+                                .filter(map::containsKey)
+                                .collect(Collectors.toMap(key -> key, map::get)));
+            }
+
+            boolean async = name.endsWith("Async");
+            int count = args == null ? 0 : args.length;
+
+            while (count >= 2 && method.getParameterTypes()[count - 1] == TimeUnit.class) {
+                count -= 2;
+            }
+
+            Method mapMethod = ConcurrentMap.class.getMethod(
+                    async ? name.substring(0, name.length() - "Async".length()) : name,
+                    Arrays.copyOf(method.getParameterTypes(), count));
+            Object result = mapMethod.invoke(map, args == null ? null : Arrays.copyOf(args, count));
+            return async ? CompletableFuture.completedFuture(result) : result;
+        }
+
+        @Override
+        public Set<String> getCacheNames() {
+            return maps.keySet();
+        }
+
+        @Override
+        public void start() {
+            // Nothing to start
+        }
+
+        @Override
+        public void stop() {
+            maps.clear();
+        }
+    }
+
+    static KojiArchiveInfo archive(String checksum) {
+        KojiArchiveInfo archive = new KojiArchiveInfo();
+        archive.setArchiveId(1234567);
+        archive.setBuildId(765432);
+        archive.setFilename("commons-io-2.11.0.redhat-00001.jar");
+        archive.setSize(327135);
+        archive.setChecksum(checksum);
+        archive.setChecksumType(KojiChecksumType.md5);
+        archive.setExtension("jar");
+        archive.setTypeId(1);
+        archive.setTypeExtensions("jar");
+        archive.setTypeDescription("Jar file");
+        archive.setBuildType(KojiBtype.maven);
+        archive.setBuildTypeId(2);
+        archive.setGroupId("commons-io");
+        archive.setArtifactId("commons-io");
+        archive.setVersion("2.11.0.redhat-00001");
+        archive.setBuildrootId(98765);
+        archive.setMetadataOnly(false);
+        archive.setExtra(Map.of("source", Map.of("original_url", "git+https://example.com/commons-io.git#abc")));
+        return archive;
+    }
+
+    @Test
+    void checksumsAreStoredCompactly() throws IOException {
+        MapCacheContainer delegate = new MapCacheContainer();
+        CompactChecksumCacheContainer container = new CompactChecksumCacheContainer(delegate);
+        BasicCache<String, ListKojiArchiveInfoProtobufWrapper> checksums = container.getCache("checksums-md5");
+        KojiArchiveInfo archive = archive(MD5);
+        String json = KojiJSONUtils.writeValueAsString(archive);
+
+        assertNull(checksums.put(MD5, new ListKojiArchiveInfoProtobufWrapper(List.of(archive))));
+        assertTrue(checksums.containsKey(MD5));
+        assertFalse(checksums.containsKey("not-a-checksum"));
+        assertEquals(json, KojiJSONUtils.writeValueAsString(checksums.get(MD5).getData().get(0)));
+        assertEquals(1, checksums.values().size());
+
+        Object stored = delegate.getCache("checksums-md5").get(ChecksumKey.of(MD5));
+        assertInstanceOf(CompactArchives.class, stored);
+
+        ImmutableSerializationContext serializationContext = CacheSnapshot.createSerializationContext();
+        CompactArchives read = ProtobufUtil.fromWrappedByteArray(
+                serializationContext,
+                ProtobufUtil.toWrappedByteArray(serializationContext, stored));
+        ChecksumKey key = ProtobufUtil.fromWrappedByteArray(
+                serializationContext,
+                ProtobufUtil.toWrappedByteArray(serializationContext, ChecksumKey.of(MD5)));
+
+        assertNull(read.getArchives().get(0).getChecksum());
+        assertEquals(json, KojiJSONUtils.writeValueAsString(read.toWrapper(key.toHex()).getData().get(0)));
+    }
+
+    @Test
+    void checksumsAreStoredCompactlyInBulk() {
+        MapCacheContainer delegate = new MapCacheContainer();
+        CompactChecksumCacheContainer container = new CompactChecksumCacheContainer(delegate);
+        BasicCache<String, ListKojiArchiveInfoProtobufWrapper> checksums = container.getCache("checksums-md5");
+        String other = MD5.replace('0', 'f');
+        ListKojiArchiveInfoProtobufWrapper archives = new ListKojiArchiveInfoProtobufWrapper(List.of(archive(MD5)));
+
+        checksums.putAll(Map.of(MD5, archives));
+        checksums.putAsync(other, new ListKojiArchiveInfoProtobufWrapper(List.of(archive(other)))).join();
+
+        assertInstanceOf(CompactArchives.class, delegate.getCache("checksums-md5").get(ChecksumKey.of(MD5)));
+        assertInstanceOf(CompactArchives.class, delegate.getCache("checksums-md5").get(ChecksumKey.of(other)));
+
+        Map<String, ListKojiArchiveInfoProtobufWrapper> entries = checksums
+                .getAllAsync(Set.of(MD5, other, "not-a-checksum"))
+                .join();
+
+        assertEquals(Set.of(MD5, other), entries.keySet());
+        assertEquals(MD5, entries.get(MD5).getData().get(0).getChecksum());
+        assertEquals(other, entries.get(other).getData().get(0).getChecksum());
+    }
+
+    @Test
+    void checksumsAreEncodedByEveryMethod() {
+        MapCacheContainer delegate = new MapCacheContainer();
+        CompactChecksumCacheContainer container = new CompactChecksumCacheContainer(delegate);
+        BasicCache<String, ListKojiArchiveInfoProtobufWrapper> checksums = container.getCache("checksums-md5");
+        BasicCache<Object, Object> stored = delegate.getCache("checksums-md5");
+        String other = MD5.replace('0', 'f');
+        ListKojiArchiveInfoProtobufWrapper archives = new ListKojiArchiveInfoProtobufWrapper(List.of(archive(MD5)));
+        ListKojiArchiveInfoProtobufWrapper otherArchives = new ListKojiArchiveInfoProtobufWrapper(
+                List.of(archive(other)));
+
+        assertNull(checksums.put(MD5, archives, 1L, TimeUnit.DAYS));
+        assertNull(checksums.putIfAbsent(other, otherArchives, 1L, TimeUnit.DAYS, 1L, TimeUnit.HOURS));
+        assertInstanceOf(CompactArchives.class, stored.get(ChecksumKey.of(MD5)));
+        assertInstanceOf(CompactArchives.class, stored.get(ChecksumKey.of(other)));
+
+        Map<String, ListKojiArchiveInfoProtobufWrapper> entries = checksums.getAllAsync(Set.of(MD5, other)).join();
+
+        assertEquals(Set.of(MD5, other), entries.keySet());
+        assertEquals(MD5, entries.get(MD5).getData().get(0).getChecksum());
+        assertEquals(Set.of(MD5, other), checksums.keySet());
+        assertEquals(
+                Set.of(MD5, other),
+                checksums.entrySet()
+                        .stream()
+                        .map(entry -> entry.getValue().getData().get(0).getChecksum())
+                        .collect(Collectors.toSet()));
+        assertEquals(MD5, checksums.get(MD5).getData().get(0).getChecksum());
+
+        assertTrue(checksums.replace(MD5, checksums.get(MD5), otherArchives, 1L, TimeUnit.DAYS));
+        assertEquals(other, checksums.get(MD5).getData().get(0).getChecksum());
+
+        List<String> seen = new ArrayList<>();
+        ListKojiArchiveInfoProtobufWrapper computed = checksums.compute(other, (checksum, value) -> {
+            seen.add(checksum);
+            seen.add(value.getData().get(0).getChecksum());
+            return archives;
+        }, 1L, TimeUnit.DAYS);
+
+        assertEquals(List.of(other, other), seen);
+        assertEquals(MD5, computed.getData().get(0).getChecksum());
+        assertInstanceOf(CompactArchives.class, stored.get(ChecksumKey.of(other)));
+        assertEquals(MD5, checksums.merge(other, otherArchives, (oldValue, value) -> oldValue).getData().get(0)
+                .getChecksum());
+        assertTrue(checksums.remove(other, checksums.get(other)));
+        assertFalse(checksums.containsKey(other));
+        assertEquals(1, checksums.values().size());
+    }
+
+    @Test
+    void objectMethodsAndOtherKeysAreNotEncoded() {
+        MapCacheContainer delegate = new MapCacheContainer();
+        CompactChecksumCacheContainer container = new CompactChecksumCacheContainer(delegate);
+        BasicCache<Object, Object> checksums = container.getCache("checksums-md5");
+
+        assertTrue(checksums.equals(checksums));
+        assertFalse(checksums.equals(delegate.getCache("checksums-md5")));
+        assertEquals(System.identityHashCode(checksums), checksums.hashCode());
+        assertTrue(checksums.toString().startsWith("compact "));
+
+        checksums.put(42, "value");
+
+        assertEquals("value", delegate.getCache("checksums-md5").get(42));
+        assertEquals("value", checksums.get(42));
+    }
+
+    @Test
+    void otherCachesAndKeysAreKeptAsTheyAre() {
+        MapCacheContainer delegate = new MapCacheContainer();
+        CompactChecksumCacheContainer container = new CompactChecksumCacheContainer(delegate);
+        ListKojiArchiveInfoProtobufWrapper archives = new ListKojiArchiveInfoProtobufWrapper(List.of(archive("X")));
+
+        container.getCache("checksums-pnc-md5").put(MD5, archives);
+        container.<String, ListKojiArchiveInfoProtobufWrapper> getCache("checksums-md5").put("ABC", archives);
+
+        assertEquals(archives, delegate.getCache("checksums-pnc-md5").get(MD5));
+        assertInstanceOf(CompactArchives.class, delegate.getCache("checksums-md5").get("ABC"));
+        assertNull(ChecksumKey.of(MD5.toUpperCase()));
+    }
+}
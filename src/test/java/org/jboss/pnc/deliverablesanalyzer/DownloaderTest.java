@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+
+class DownloaderTest {
+    private static final byte[] CONTENT = "content".getBytes(UTF_8);
+
+    @TempDir
+    Path tempDir;
+
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    private HttpServer server;
+
+    private Downloader downloader;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/complete", exchange -> {
+            exchange.sendResponseHeaders(200, CONTENT.length);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(CONTENT);
+            }
+        });
+        server.createContext("/stalled", exchange -> {
+            exchange.sendResponseHeaders(200, CONTENT.length * 2L);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(CONTENT);
+                out.flush();
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+
+        downloader = new Downloader();
+        downloader.connectTimeout = Duration.ofSeconds(5L);
+        downloader.idleTimeout = Duration.ofMillis(500L);
+        downloader.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        downloader.destroy();
+        server.stop(0);
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + path);
+    }
+
+    @Test
+    void downloadsContent() throws IOException {
+        Path target = tempDir.resolve("complete");
+
+        assertEquals(
+                CONTENT.length,
+                downloader.download(uri("/complete"), target, new CancellationToken(), bytes -> {
+                }));
+        assertEquals("content", Files.readString(target, UTF_8));
+    }
+
+    @Test
+    void computesDigestOfContent() throws Exception {
+        Path target = tempDir.resolve("complete");
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+        downloader.download(uri("/complete"), target, new CancellationToken(), bytes -> {
+        }, digest);
+
+        assertEquals(
+                HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(CONTENT)),
+                HexFormat.of().formatHex(digest.digest()));
+        assertEquals("content", Files.readString(target, UTF_8));
+    }
+
+    @Test
+    void stalledDownloadTimesOut() {
+        Path target = tempDir.resolve("stalled");
+
+        assertThrows(
+                HttpTimeoutException.class,
+                () -> downloader.download(uri("/stalled"), target, new CancellationToken(), bytes -> {
+                }));
+    }
+}
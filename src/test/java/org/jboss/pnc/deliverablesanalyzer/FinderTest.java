@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.infinispan.commons.api.BasicCache;
+import org.jboss.pnc.api.deliverablesanalyzer.dto.FinderResult;
+import org.jboss.pnc.api.dto.exception.ReasonedException;
+import org.jboss.pnc.api.enums.ResultStatus;
+import org.jboss.pnc.build.finder.core.BuildCheckedEvent;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.build.finder.core.BuildFinderListener;
+import org.jboss.pnc.build.finder.core.BuildSystem;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.core.ChecksumsComputedEvent;
+import org.jboss.pnc.build.finder.core.DistributionAnalyzerListener;
+import org.jboss.pnc.deliverablesanalyzer.model.Attributions;
+import org.jboss.pnc.deliverablesanalyzer.model.FinderStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.red.build.koji.KojiClientException;
+
+class FinderTest {
+    private static final BuildConfig CONFIG = new BuildConfig();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final AtomicInteger analyses = new AtomicInteger();
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    private final Attributions attributions = new Attributions();
+
+    private final URL url;
+
+    @FunctionalInterface
+    private interface Analysis {
+        UrlResult analyze(
+                int number,
+                String id,
+                DistributionAnalyzerListener distributionAnalyzerListener,
+                BuildFinderListener buildFinderListener) throws KojiClientException;
+    }
+
+    FinderTest() throws Exception {
+        url = URI.create("https://example.com/product.zip").toURL();
+    }
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        executor.shutdownNow();
+    }
+
+    private Finder finder(Analysis analysis) {
+        // The analysis of the URL is replaced, so only attaching to the running analysis is tested
+        return new Finder() {
+            @Override
+            UrlResult findCached(
+                    String id,
+                    URL url,
+                    AnalysisContext context,
+                    DistributionAnalyzerListener distributionAnalyzerListener,
+                    BuildFinderListener buildFinderListener,
+                    BuildConfig config) throws KojiClientException {
+                return analysis.analyze(
+                        analyses.incrementAndGet(),
+                        id,
+                        distributionAnalyzerListener,
+                        buildFinderListener);
+            }
+        };
+    }
+
+    private Future<UrlResult> analyze(Finder finder, String id, DistributionAnalyzerListener listener) {
+        return analyze(finder, id, listener, null);
+    }
+
+    private Future<UrlResult> analyze(
+            Finder finder,
+            String id,
+            DistributionAnalyzerListener distributionAnalyzerListener,
+            BuildFinderListener buildFinderListener) {
+        return executor.submit(
+                () -> finder.findOrAttach(id, url, null, distributionAnalyzerListener, buildFinderListener, CONFIG));
+    }
+
+    private UrlResult result(String id) {
+        return new UrlResult(FinderResult.builder().id(id).url(url).builds(Set.of()).build(), attributions);
+    }
+
+    private void startAndWait() {
+        started.countDown();
+
+        try {
+            released.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted");
+        }
+    }
+
+    private static BuildCheckedEvent buildChecked(String filename) {
+        return new BuildCheckedEvent(new Checksum(ChecksumType.md5, "0", filename, 1L), BuildSystem.koji);
+    }
+
+    @Test
+    void attachedAnalysisGetsResultAndEventsOfRunningAnalysis() throws Exception {
+        Finder finder = finder((number, id, distributionAnalyzerListener, buildFinderListener) -> {
+            distributionAnalyzerListener.checksumsComputed(new ChecksumsComputedEvent(2));
+            buildFinderListener.buildChecked(buildChecked("first"));
+            startAndWait();
+            buildFinderListener.buildChecked(buildChecked("second"));
+            return result(id);
+        });
+        FinderStatus runningStatus = new FinderStatus();
+        FinderStatus attachedStatus = new FinderStatus();
+
+        Future<UrlResult> running = analyze(finder, "1", runningStatus, runningStatus);
+        assertTrue(started.await(10L, TimeUnit.SECONDS));
+        Future<UrlResult> attached = analyze(finder, "2", attachedStatus, attachedStatus);
+
+        // The events received before attaching are sent to the attached analysis
+        await().until(() -> attachedStatus.getPercent() == 50);
+        released.countDown();
+
+        assertEquals("1", running.get().result().getId());
+        assertEquals("2", attached.get().result().getId());
+        assertEquals(url, attached.get().result().getUrl());
+        assertSame(attributions, attached.get().attributions());
+        assertEquals(100, runningStatus.getPercent());
+        assertEquals(100, attachedStatus.getPercent());
+        assertEquals(1, analyses.get());
+    }
+
+    @Test
+    void attachedAnalysisTakesOverCancelledAnalysis() throws Exception {
+        CountDownLatch attached = new CountDownLatch(1);
+        Finder finder = finder((number, id, distributionAnalyzerListener, buildFinderListener) -> {
+            if (number == 1) {
+                distributionAnalyzerListener.checksumsComputed(new ChecksumsComputedEvent(1));
+                startAndWait();
+                throw new CancellationException("Analysis " + id + " was cancelled");
+            }
+
+            return result(id);
+        });
+
+        Future<UrlResult> running = analyze(finder, "1", null);
+        assertTrue(started.await(10L, TimeUnit.SECONDS));
+        Future<UrlResult> waiting = analyze(finder, "2", event -> attached.countDown());
+        assertTrue(attached.await(10L, TimeUnit.SECONDS));
+        released.countDown();
+
+        assertInstanceOf(CancellationException.class, assertThrows(ExecutionException.class, running::get).getCause());
+        assertEquals("2", waiting.get().result().getId());
+        assertEquals(2, analyses.get());
+    }
+
+    private Throwable failureOfAttachedAnalysis(Throwable failure) throws Exception {
+        CountDownLatch attached = new CountDownLatch(1);
+        Finder finder = finder((number, id, distributionAnalyzerListener, buildFinderListener) -> {
+            distributionAnalyzerListener.checksumsComputed(new ChecksumsComputedEvent(1));
+            startAndWait();
+
+            if (failure instanceof KojiClientException e) {
+                throw e;
+            }
+
+            if (failure instanceof RuntimeException e) {
+                throw e;
+            }
+
+            throw (Error) failure;
+        });
+
+        Future<UrlResult> running = analyze(finder, "1", null);
+        assertTrue(started.await(10L, TimeUnit.SECONDS));
+        Future<UrlResult> waiting = analyze(finder, "2", event -> attached.countDown());
+        assertTrue(attached.await(10L, TimeUnit.SECONDS));
+        released.countDown();
+
+        assertSame(failure, assertThrows(ExecutionException.class, running::get).getCause());
+        Throwable cause = assertThrows(ExecutionException.class, waiting::get).getCause();
+        assertEquals(1, analyses.get());
+
+        return cause;
+    }
+
+    @Test
+    void attachedAnalysisThrowsKojiClientExceptionOfRunningAnalysis() throws Exception {
+        KojiClientException failure = new KojiClientException("Koji is unavailable");
+
+        assertSame(failure, failureOfAttachedAnalysis(failure));
+    }
+
+    @Test
+    void attachedAnalysisThrowsRuntimeExceptionOfRunningAnalysis() throws Exception {
+        ReasonedException failure = new ReasonedException(ResultStatus.FAILED, "Invalid URL", null);
+
+        assertSame(failure, failureOfAttachedAnalysis(failure));
+    }
+
+    @Test
+    void attachedAnalysisFailsWithSystemErrorOnErrorOfRunningAnalysis() throws Exception {
+        AssertionError failure = new AssertionError("Broken");
+
+        ReasonedException e = assertInstanceOf(ReasonedException.class, failureOfAttachedAnalysis(failure));
+        assertEquals(ResultStatus.SYSTEM_ERROR, e.getResult());
+        assertSame(failure, e.getCause());
+    }
+
+    @Test
+    void cachedAnalysisIsBaselineOfOtherAnalyses(@TempDir Path tempDir) throws Exception {
+        Map<Object, Object> entries = new ConcurrentHashMap<>();
+        BasicCache<?, ?> cache = (BasicCache<?, ?>) Proxy.newProxyInstance(
+                BasicCache.class.getClassLoader(),
+                new Class<?>[] { BasicCache.class },
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "get" -> entries.get(args[0]);
+                    case "put" -> entries.put(args[0], args[1]);
+                    case "putAsync" -> CompletableFuture.completedFuture(entries.put(args[0], args[1]));
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        CacheStartup cacheStartup = new CacheStartup() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> BasicCache<K, V> getCache(String name) {
+                return (BasicCache<K, V>) cache;
+            }
+        };
+        BuildConfig config = new BuildConfig();
+        config.setOutputDirectory(tempDir.toString());
+
+        // The deliverable was analyzed before, so its result is served by the result cache
+        ResultCache resultCache = new ResultCache() {
+            @Override
+            public Optional<String> getKey(URL url, BuildConfig usedConfig) {
+                return Optional.of("product");
+            }
+        };
+        resultCache.config = config;
+        resultCache.cacheStartup = cacheStartup;
+        resultCache.objectMapper = new ObjectMapper();
+        resultCache.enabled = true;
+        resultCache.init();
+        resultCache.put("product", result("1").result(), ResultCacheTest.attributions("aa"));
+
+        AttributionsCache attributionsCache = new AttributionsCache();
+        attributionsCache.config = config;
+        attributionsCache.cacheStartup = cacheStartup;
+        attributionsCache.lifespan = Duration.ofDays(1L);
+        attributionsCache.init();
+
+        Finder finder = new Finder();
+        finder.config = config;
+        finder.cleaner = new Cleaner();
+        finder.executor = new AnalysisExecutor() {
+            @Override
+            public void execute(Runnable command) {
+                executor.execute(command);
+            }
+        };
+        finder.resultCache = resultCache;
+        finder.attributionsCache = attributionsCache;
+        finder.analysisTimeout = Optional.empty();
+        finder.maxDownloadedSize = Optional.empty();
+        finder.maxExtractedSize = Optional.empty();
+        finder.maxFiles = OptionalLong.empty();
+
+        assertEquals(1, finder.find("2", List.of(url.toExternalForm()), null, null, null, config).getResults().size());
+
+        Attributions baseline = attributionsCache.get("2");
+
+        assertNotNull(baseline);
+        assertTrue(baseline.contains(new Checksum(ChecksumType.md5, "aa", "product.zip!/x.jar", 1L)));
+    }
+}
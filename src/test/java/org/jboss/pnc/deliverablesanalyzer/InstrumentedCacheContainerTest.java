@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.infinispan.commons.api.BasicCache;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class InstrumentedCacheContainerTest {
+    @TempDir
+    Path storeLocation;
+
+    /**
+     * Container of a single cache, which only supports the reads and the writes of single entries.
+     */
+    private static final class MapCacheContainer implements BasicCacheContainer {
+        private final Map<Object, Object> map = new ConcurrentHashMap<>();
+
+        private boolean stopped;
+
+        @Override
+        public <K, V> BasicCache<K, V> getCache() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <K, V> BasicCache<K, V> getCache(String name) {
+            if (!name.equals("builds")) {
+                return null;
+            }
+
+            return (BasicCache<K, V>) Proxy.newProxyInstance(
+                    BasicCache.class.getClassLoader(),
+                    new Class<?>[] { BasicCache.class },
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "get" -> map.get(args[0]);
+                        case "containsKey" -> map.containsKey(args[0]);
+                        case "put" -> map.put(args[0], args[1]);
+                        case "getName" -> name;
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+
+        @Override
+        public Set<String> getCacheNames() {
+            return Set.of("builds");
+        }
+
+        @Override
+        public void start() {
+            stopped = false;
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+    }
+
+    @Test
+    void readsAndWritesAreMeasuredByCache() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MapCacheContainer delegate = new MapCacheContainer();
+        Files.createDirectories(storeLocation.resolve("builds").resolve("data"));
+        Files.write(storeLocation.resolve("builds").resolve("data").resolve("ispn12.0"), new byte[100]);
+
+        try (InstrumentedCacheContainer container = new InstrumentedCacheContainer(
+                delegate,
+                storeLocation,
+                registry)) {
+            assertNull(container.getCache("missing"));
+
+            BasicCache<String, String> cache = container.getCache("builds");
+
+            assertNull(cache.put("a", "1"));
+            assertEquals("1", cache.get("a"));
+            assertNull(cache.get("b"));
+            assertFalse(cache.containsKey("b"));
+            assertTrue(container.<String, String> getCache("builds").containsKey("a"));
+        }
+
+        assertTrue(delegate.stopped);
+        assertEquals(
+                2L,
+                registry.get("infinispan.cache.gets").tags("cache", "builds", "result", "hit").timer().count());
+        assertEquals(
+                2L,
+                registry.get("infinispan.cache.gets").tags("cache", "builds", "result", "miss").timer().count());
+        assertEquals(1L, registry.get("infinispan.cache.puts").tag("cache", "builds").timer().count());
+        assertEquals(100.0d, registry.get("infinispan.cache.store-size").tag("cache", "builds").gauge().value());
+        assertTrue(Double.isNaN(registry.get("infinispan.cache.entries").tag("cache", "builds").gauge().value()));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.commons.api.BasicCache;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.build.finder.core.BuildSystem;
+import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.koji.KojiBuild;
+import org.jboss.pnc.build.finder.koji.KojiLocalArchive;
+import org.jboss.pnc.deliverablesanalyzer.utils.ConfigUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class NotFoundCacheTest {
+    private static final String MD5_NOT_FOUND = "a".repeat(32);
+
+    private static final String MD5_FOUND = "b".repeat(32);
+
+    private final Map<Object, Object> entries = new ConcurrentHashMap<>();
+
+    private final Map<Object, Long> lifespans = new ConcurrentHashMap<>();
+
+    private volatile boolean started = true;
+
+    private SimpleMeterRegistry registry;
+
+    private NotFoundCache notFoundCache;
+
+    private BuildConfig usedConfig;
+
+    @BeforeEach
+    void setUp() {
+        BasicCache<?, ?> cache = (BasicCache<?, ?>) Proxy.newProxyInstance(
+                BasicCache.class.getClassLoader(),
+                new Class<?>[] { BasicCache.class },
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getAllAsync" -> {
+                        Map<Object, Object> found = new HashMap<>();
+
+                        for (Object key : (Set<?>) args[0]) {
+                            if (entries.containsKey(key)) {
+                                found.put(key, entries.get(key));
+                            }
+                        }
+
+                        yield CompletableFuture.completedFuture(found);
+                    }
+                    case "putAllAsync" -> {
+                        Map<?, ?> values = (Map<?, ?>) args[0];
+                        long lifespan = ((TimeUnit) args[2]).toMillis((Long) args[1]);
+                        entries.putAll(values);
+                        values.keySet().forEach(key -> lifespans.put(key, lifespan));
+                        yield CompletableFuture.completedFuture(null);
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+
+        registry = new SimpleMeterRegistry();
+        notFoundCache = new NotFoundCache();
+        notFoundCache.config = new BuildConfig();
+        notFoundCache.registry = registry;
+        notFoundCache.cacheStartup = new CacheStartup() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> BasicCache<K, V> getCache(String name) {
+                return started && name.equals(NotFoundCache.CACHE_NAME) ? (BasicCache<K, V>) cache : null;
+            }
+        };
+        notFoundCache.enabled = true;
+        notFoundCache.lifespan = Duration.ofHours(1L);
+        notFoundCache.init();
+
+        usedConfig = new BuildConfig();
+        usedConfig.setBuildSystems(List.of(BuildSystem.koji));
+    }
+
+    private static Checksum md5(String value, String filename) {
+        return new Checksum(ChecksumType.md5, value, filename, 1L);
+    }
+
+    /**
+     * Returns the builds found by Build Finder, the files not found being the archives of build zero.
+     */
+    private static Map<BuildSystemInteger, KojiBuild> builds() {
+        KojiLocalArchive notFound = new KojiLocalArchive();
+        notFound.setChecksums(List.of(md5(MD5_NOT_FOUND, "third-party.jar")));
+        KojiBuild buildZero = new KojiBuild();
+        buildZero.setArchives(List.of(notFound));
+
+        KojiLocalArchive found = new KojiLocalArchive();
+        found.setChecksums(List.of(md5(MD5_FOUND, "built.jar")));
+        KojiBuild build = new KojiBuild();
+        build.setArchives(List.of(found));
+
+        return Map.of(new BuildSystemInteger(0), buildZero, new BuildSystemInteger(1, BuildSystem.koji), build);
+    }
+
+    @Test
+    void recordsTheChecksumsNotFoundWithTheLifespan() {
+        notFoundCache.record(builds(), usedConfig);
+
+        String key = MD5_NOT_FOUND + "-" + ConfigUtils.lookupFingerprint(usedConfig);
+
+        assertEquals(Map.of(key, "third-party.jar"), entries);
+        assertEquals(Map.of(key, Duration.ofHours(1L).toMillis()), lifespans);
+        assertEquals(1.0d, registry.get("analysis.not-found-cache.recorded").counter().count());
+    }
+
+    @Test
+    void findsTheChecksumsNotFoundWithTheSameBuildSystems() {
+        notFoundCache.record(builds(), usedConfig);
+
+        List<Checksum> checksums = List.of(md5(MD5_NOT_FOUND, "third-party.jar"), md5(MD5_FOUND, "built.jar"));
+
+        assertEquals(Set.of(MD5_NOT_FOUND), notFoundCache.findAll(checksums, usedConfig));
+        assertEquals(1.0d, registry.get("analysis.not-found-cache.saved").counter().count());
+
+        // The checksum may be found in the other build systems
+        BuildConfig otherConfig = new BuildConfig();
+        otherConfig.setBuildSystems(List.of(BuildSystem.koji, BuildSystem.pnc));
+
+        assertTrue(notFoundCache.findAll(checksums, otherConfig).isEmpty());
+    }
+
+    @Test
+    void doesNothingUntilTheCacheHasStarted() {
+        started = false;
+
+        notFoundCache.record(builds(), usedConfig);
+
+        assertTrue(entries.isEmpty());
+        assertTrue(notFoundCache.findAll(List.of(md5(MD5_NOT_FOUND, "third-party.jar")), usedConfig).isEmpty());
+        assertEquals(0.0d, registry.get("analysis.not-found-cache.recorded").counter().count());
+
+        started = true;
+        notFoundCache.record(builds(), usedConfig);
+
+        assertEquals(1, entries.size());
+    }
+}
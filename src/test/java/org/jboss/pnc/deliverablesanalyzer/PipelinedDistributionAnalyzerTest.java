@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PipelinedDistributionAnalyzerTest {
+    @TempDir
+    Path tempDir;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static List<Checksum> drain(PipelinedDistributionAnalyzer analyzer) throws InterruptedException {
+        List<Checksum> checksums = new ArrayList<>();
+        Checksum checksum;
+
+        do {
+            checksum = analyzer.getQueue().poll(30, TimeUnit.SECONDS);
+            checksums.add(checksum);
+        } while (checksum != null && checksum.getValue() != null);
+
+        return checksums;
+    }
+
+    @Test
+    void relaysFilteredChecksums() throws Exception {
+        Path zip = tempDir.resolve("test.zip");
+
+        try (OutputStream out = Files.newOutputStream(zip); ZipOutputStream zipOut = new ZipOutputStream(out)) {
+            for (String name : List.of("a.jar", "b.jar", "c.jar")) {
+                zipOut.putNextEntry(new ZipEntry(name));
+                zipOut.write(name.getBytes(UTF_8));
+                zipOut.closeEntry();
+            }
+        }
+
+        PipelinedDistributionAnalyzer analyzer = new PipelinedDistributionAnalyzer(
+                List.of(zip.toUri().toString()),
+                new BuildConfig(),
+                null);
+        Future<?> relay = executor.submit(() -> {
+            analyzer.relay(checksum -> !checksum.getFilename().endsWith("b.jar"));
+            return null;
+        });
+        Future<?> checksums = executor.submit(analyzer);
+
+        List<Checksum> relayed = drain(analyzer);
+
+        checksums.get(30, TimeUnit.SECONDS);
+        relay.get(30, TimeUnit.SECONDS);
+        assertNull(relayed.get(relayed.size() - 1).getValue());
+        assertEquals(
+                List.of("test.zip!/a.jar", "test.zip!/c.jar"),
+                relayed.subList(0, relayed.size() - 1).stream().map(Checksum::getFilename).sorted().toList());
+    }
+
+    @Test
+    void relaysBatchesOfComputedChecksums() throws Exception {
+        Path zip = tempDir.resolve("test.zip");
+
+        try (OutputStream out = Files.newOutputStream(zip); ZipOutputStream zipOut = new ZipOutputStream(out)) {
+            for (String name : List.of("a.jar", "b.jar", "c.jar")) {
+                zipOut.putNextEntry(new ZipEntry(name));
+                zipOut.write(name.getBytes(UTF_8));
+                zipOut.closeEntry();
+            }
+        }
+
+        PipelinedDistributionAnalyzer analyzer = new PipelinedDistributionAnalyzer(
+                List.of(zip.toUri().toString()),
+                new BuildConfig(),
+                null);
+        List<Integer> batchSizes = new ArrayList<>();
+
+        // All the checksums are computed before the relay starts
+        analyzer.call();
+        analyzer.relay(2, batch -> {
+            batchSizes.add(batch.size());
+            return batch.stream().filter(checksum -> !checksum.getFilename().endsWith("b.jar")).toList();
+        });
+
+        List<Checksum> relayed = drain(analyzer);
+
+        assertNull(relayed.get(relayed.size() - 1).getValue());
+        assertTrue(batchSizes.stream().allMatch(size -> size > 0 && size <= 2));
+        assertEquals(2, batchSizes.get(0));
+        assertEquals(
+                List.of("test.zip!/a.jar", "test.zip!/c.jar"),
+                relayed.subList(0, relayed.size() - 1)
+                        .stream()
+                        .map(Checksum::getFilename)
+                        .filter(filename -> filename.endsWith(".jar"))
+                        .distinct()
+                        .sorted()
+                        .toList());
+    }
+
+    @Test
+    void hashingAndRelayWaitWhileQueuesAreFull() throws Exception {
+        Path zip = tempDir.resolve("test.zip");
+
+        try (OutputStream out = Files.newOutputStream(zip); ZipOutputStream zipOut = new ZipOutputStream(out)) {
+            for (int i = 0; i < 10; i++) {
+                String name = "file-" + i + ".jar";
+                zipOut.putNextEntry(new ZipEntry(name));
+                zipOut.write(name.getBytes(UTF_8));
+                zipOut.closeEntry();
+            }
+        }
+
+        PipelinedDistributionAnalyzer analyzer = new PipelinedDistributionAnalyzer(
+                List.of(zip.toUri().toString()),
+                new BuildConfig(),
+                null,
+                2);
+        Future<?> checksums = executor.submit(analyzer);
+
+        // The hashing waits for the relay, which hasn't started
+        assertThrows(TimeoutException.class, () -> checksums.get(1, TimeUnit.SECONDS));
+
+        Future<?> relay = executor.submit(() -> {
+            analyzer.relay(2, batch -> batch);
+            return null;
+        });
+
+        await().atMost(Duration.ofSeconds(30)).until(() -> analyzer.getQueue().remainingCapacity() == 0);
+
+        assertFalse(relay.isDone());
+        assertFalse(checksums.isDone());
+
+        List<Checksum> relayed = drain(analyzer);
+
+        checksums.get(30, TimeUnit.SECONDS);
+        relay.get(30, TimeUnit.SECONDS);
+        assertNull(relayed.get(relayed.size() - 1).getValue());
+        assertTrue(relayed.size() > 10);
+    }
+
+    @Test
+    void hashingEndsWhenRelayFails() throws Exception {
+        Path zip = tempDir.resolve("test.zip");
+
+        try (OutputStream out = Files.newOutputStream(zip); ZipOutputStream zipOut = new ZipOutputStream(out)) {
+            for (int i = 0; i < 10; i++) {
+                String name = "file-" + i + ".jar";
+                zipOut.putNextEntry(new ZipEntry(name));
+                zipOut.write(name.getBytes(UTF_8));
+                zipOut.closeEntry();
+            }
+        }
+
+        PipelinedDistributionAnalyzer analyzer = new PipelinedDistributionAnalyzer(
+                List.of(zip.toUri().toString()),
+                new BuildConfig(),
+                null,
+                2);
+        Future<?> checksums = executor.submit(analyzer);
+        Future<?> relay = executor.submit(() -> {
+            analyzer.relay(2, batch -> {
+                throw new IllegalStateException("Failed");
+            });
+            return null;
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> relay.get(30, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        // Nothing takes the checksums anymore, but the hashing doesn't wait forever
+        checksums.get(30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void listenerFailureStopsHashing() throws Exception {
+        Path zip = tempDir.resolve("test.zip");
+
+        try (OutputStream out = Files.newOutputStream(zip); ZipOutputStream zipOut = new ZipOutputStream(out)) {
+            for (int i = 0; i < 10; i++) {
+                String name = "file-" + i + ".jar";
+                zipOut.putNextEntry(new ZipEntry(name));
+                zipOut.write(name.getBytes(UTF_8));
+                zipOut.closeEntry();
+            }
+        }
+
+        PipelinedDistributionAnalyzer analyzer = new PipelinedDistributionAnalyzer(
+                List.of(zip.toUri().toString()),
+                new BuildConfig(),
+                null,
+                2);
+        AtomicInteger computed = new AtomicInteger();
+        analyzer.setComputedListener(checksum -> {
+            computed.incrementAndGet();
+            throw new BudgetExceededException("Analysis found more than 0 archives", true);
+        });
+        Future<?> relay = executor.submit(() -> {
+            analyzer.relay(2, batch -> batch);
+            return null;
+        });
+        Future<?> checksums = executor.submit(analyzer);
+
+        List<Checksum> relayed = drain(analyzer);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> checksums.get(30, TimeUnit.SECONDS));
+        assertInstanceOf(BudgetExceededException.class, e.getCause());
+        relay.get(30, TimeUnit.SECONDS);
+        assertEquals(1, computed.get());
+        assertEquals(1, relayed.size());
+        assertNull(relayed.get(0).getValue());
+    }
+
+    @Test
+    void endsRelayWhenAnalysisFails() throws Exception {
+        PipelinedDistributionAnalyzer analyzer = new PipelinedDistributionAnalyzer(
+                List.of(tempDir.resolve("missing.zip").toUri().toString()),
+                new BuildConfig(),
+                null);
+        Future<?> relay = executor.submit(() -> {
+            analyzer.relay(checksum -> true);
+            return null;
+        });
+        Future<?> checksums = executor.submit(analyzer);
+
+        List<Checksum> relayed = drain(analyzer);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> checksums.get(30, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+        relay.get(30, TimeUnit.SECONDS);
+        assertEquals(1, relayed.size());
+        assertNull(relayed.get(0).getValue());
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.build.finder.pnc.client.PncClient;
+import org.jboss.pnc.client.RemoteCollection;
+import org.jboss.pnc.dto.Artifact;
+import org.jboss.pnc.dto.BuildPushReport;
+import org.jboss.pnc.dto.ProductVersion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PncClientPoolTest {
+    private final List<FakePncClient> created = new ArrayList<>();
+
+    private PncClientPool pool;
+
+    private SimpleMeterRegistry registry;
+
+    private static final class FakePncClient implements PncClient {
+        private final AtomicInteger requests = new AtomicInteger();
+
+        private boolean closed;
+
+        private RemoteCollection<Artifact> artifacts;
+
+        @Override
+        public RemoteCollection<Artifact> getArtifactsByMd5(String md5) {
+            requests.incrementAndGet();
+            return null;
+        }
+
+        @Override
+        public RemoteCollection<Artifact> getArtifactsBySha1(String sha1) {
+            requests.incrementAndGet();
+            return artifacts;
+        }
+
+        @Override
+        public RemoteCollection<Artifact> getArtifactsBySha256(String sha256) {
+            requests.incrementAndGet();
+            return null;
+        }
+
+        @Override
+        public BuildPushReport getBuildPushReport(String buildId) {
+            requests.incrementAndGet();
+            return null;
+        }
+
+        @Override
+        public ProductVersion getProductVersion(String productMilestoneId) {
+            requests.incrementAndGet();
+            return null;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * Collection fetching one artifact per page while it is iterated, like the collections of the PNC REST client.
+     */
+    private static RemoteCollection<Artifact> pagedArtifacts(List<Artifact> artifacts, AtomicInteger pagesFetched) {
+        return new RemoteCollection<>() {
+            @Override
+            public int size() {
+                return artifacts.size();
+            }
+
+            @Override
+            public Collection<Artifact> getAll() {
+                List<Artifact> all = new ArrayList<>();
+                forEach(all::add);
+                return all;
+            }
+
+            @Override
+            public Iterator<Artifact> iterator() {
+                Iterator<Artifact> pages = artifacts.iterator();
+
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return pages.hasNext();
+                    }
+
+                    @Override
+                    public Artifact next() {
+                        pagesFetched.incrementAndGet();
+                        return pages.next();
+                    }
+                };
+            }
+        };
+    }
+
+    private static BuildConfig config(String pncUrl) throws Exception {
+        BuildConfig config = new BuildConfig();
+        config.setPncURL(new URL(pncUrl));
+        return config;
+    }
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        pool = new PncClientPool();
+        pool.registry = registry;
+        pool.maxConcurrentRequests = 4;
+        pool.clientFactory = config -> {
+            FakePncClient client = new FakePncClient();
+            created.add(client);
+            return client;
+        };
+        pool.init();
+    }
+
+    @Test
+    void leasesShareClientsOfSameUrl() throws Exception {
+        try (PncClient lease = pool.lease(config("https://pnc.example.com"))) {
+            assertNull(lease.getArtifactsByMd5("aa"));
+            assertNull(lease.getArtifactsByMd5("bb"));
+        }
+
+        try (PncClient lease = pool.lease(config("https://pnc.example.com"))) {
+            lease.getArtifactsBySha256("cc");
+        }
+
+        assertEquals(2, created.size());
+        assertEquals(List.of(2, 1), created.stream().map(client -> client.requests.get()).toList());
+        assertEquals(List.of(false, false), created.stream().map(client -> client.closed).toList());
+        assertEquals(2.0, registry.get("pnc.client.leases").counter().count());
+        assertEquals(2.0, registry.get("pnc.client.created").counter().count());
+        assertEquals(2L, registry.get("pnc.client.requests").tag("operation", "artifacts_by_md5").timer().count());
+
+        pool.lease(config("https://other-pnc.example.com")).close();
+        pool.close();
+
+        assertEquals(4, created.size());
+        assertEquals(List.of(true, true, true, true), created.stream().map(client -> client.closed).toList());
+    }
+
+    @Test
+    void artifactPagesAreFetchedWithinTheRequest() throws Exception {
+        List<Artifact> artifacts = List.of(
+                Artifact.builder().id("1").build(),
+                Artifact.builder().id("2").build(),
+                Artifact.builder().id("3").build());
+        AtomicInteger pagesFetched = new AtomicInteger();
+
+        try (PncClient lease = pool.lease(config("https://pnc.example.com"))) {
+            created.forEach(client -> client.artifacts = pagedArtifacts(artifacts, pagesFetched));
+
+            RemoteCollection<Artifact> result = lease.getArtifactsBySha1("aa");
+
+            assertEquals(3, pagesFetched.get());
+            assertEquals(artifacts, List.copyOf(result.getAll()));
+            assertEquals(3, pagesFetched.get());
+        }
+
+        assertEquals(1L, registry.get("pnc.client.requests").tag("operation", "artifacts_by_sha1").timer().count());
+    }
+}
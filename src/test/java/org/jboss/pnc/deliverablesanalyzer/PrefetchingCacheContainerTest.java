@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.infinispan.commons.api.BasicCache;
+import org.infinispan.commons.api.BasicCacheContainer;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.koji.KojiBuild;
+import org.jboss.pnc.build.finder.protobuf.ListKojiArchiveInfoProtobufWrapper;
+import org.junit.jupiter.api.Test;
+
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+
+class PrefetchingCacheContainerTest {
+    private static final String FOUND = "0123456789abcdef0123456789abcdef";
+
+    private static final String NOT_FOUND = "fedcba9876543210fedcba9876543210";
+
+    private static final String OTHER = "00000000000000000000000000000000";
+
+    /**
+     * Container of map caches, which counts the reads of the caches.
+     */
+    private static final class MapCacheContainer implements BasicCacheContainer {
+        private final Map<String, Map<Object, Object>> maps = new ConcurrentHashMap<>();
+
+        private final Map<String, AtomicInteger> reads = new ConcurrentHashMap<>();
+
+        @Override
+        public <K, V> BasicCache<K, V> getCache() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <K, V> BasicCache<K, V> getCache(String name) {
+            Map<Object, Object> map = maps.computeIfAbsent(name, key -> new ConcurrentHashMap<>());
+            AtomicInteger cacheReads = reads.computeIfAbsent(name, key -> new AtomicInteger());
+
+            return (BasicCache<K, V>) Proxy.newProxyInstance(
+                    BasicCache.class.getClassLoader(),
+                    new Class<?>[] { BasicCache.class },
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "get" -> {
+                            cacheReads.incrementAndGet();
+                            yield map.get(args[0]);
+                        }
+                        case "getAllAsync" -> {
+                            cacheReads.incrementAndGet();
+                            Map<Object, Object> entries = new HashMap<>();
+
+                            for (Object key : (Set<?>) args[0]) {
+                                if (map.containsKey(key)) {
+                                    entries.put(key, map.get(key));
+                                }
+                            }
+
+                            yield CompletableFuture.completedFuture(entries);
+                        }
+                        case "put" -> map.put(args[0], args[1]);
+                        case "putAsync" -> CompletableFuture.supplyAsync(() -> map.put(args[0], args[1]));
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+
+        @Override
+        public Set<String> getCacheNames() {
+            return maps.keySet();
+        }
+
+        @Override
+        public void start() {
+            // Nothing to start
+        }
+
+        @Override
+        public void stop() {
+            maps.clear();
+        }
+
+        int getReads(String name) {
+            return reads.get(name).get();
+        }
+    }
+
+    private static Checksum md5(String value) {
+        return new Checksum(ChecksumType.md5, value, "a.zip!/" + value + ".jar", 1L);
+    }
+
+    @Test
+    void batchesAreReadInBulk() {
+        MapCacheContainer delegate = new MapCacheContainer();
+        KojiArchiveInfo archive = new KojiArchiveInfo();
+        archive.setChecksum(FOUND);
+        archive.setBuildId(7);
+        ListKojiArchiveInfoProtobufWrapper archives = new ListKojiArchiveInfoProtobufWrapper(List.of(archive));
+        KojiBuild build = new KojiBuild();
+        delegate.getCache(PrefetchingCacheContainer.CHECKSUMS_CACHE_NAME).put(FOUND, archives);
+        delegate.getCache(PrefetchingCacheContainer.BUILDS_CACHE_NAME).put(7, build);
+
+        PrefetchingCacheContainer container = new PrefetchingCacheContainer(delegate);
+        BasicCache<String, ListKojiArchiveInfoProtobufWrapper> checksums = container
+                .getCache(PrefetchingCacheContainer.CHECKSUMS_CACHE_NAME);
+        BasicCache<Integer, KojiBuild> builds = container.getCache(PrefetchingCacheContainer.BUILDS_CACHE_NAME);
+
+        container.prefetch(List.of(md5(FOUND), md5(NOT_FOUND)));
+
+        assertSame(archives, checksums.get(FOUND));
+        assertNull(checksums.get(NOT_FOUND));
+        assertSame(build, builds.get(7));
+        assertEquals(1, delegate.getReads(PrefetchingCacheContainer.CHECKSUMS_CACHE_NAME));
+        assertEquals(1, delegate.getReads(PrefetchingCacheContainer.BUILDS_CACHE_NAME));
+
+        // The checksums which were not prefetched are read as usual
+        assertNull(checksums.get(OTHER));
+        assertEquals(2, delegate.getReads(PrefetchingCacheContainer.CHECKSUMS_CACHE_NAME));
+
+        // The checksums which were already prefetched are not read again
+        container.prefetch(List.of(md5(FOUND)));
+        assertEquals(2, delegate.getReads(PrefetchingCacheContainer.CHECKSUMS_CACHE_NAME));
+    }
+
+    @Test
+    void writesAreAsynchronous() {
+        MapCacheContainer delegate = new MapCacheContainer();
+        PrefetchingCacheContainer container = new PrefetchingCacheContainer(delegate);
+        BasicCache<String, ListKojiArchiveInfoProtobufWrapper> checksums = container
+                .getCache(PrefetchingCacheContainer.CHECKSUMS_CACHE_NAME);
+        ListKojiArchiveInfoProtobufWrapper archives = new ListKojiArchiveInfoProtobufWrapper(List.of());
+
+        container.prefetch(List.of(md5(NOT_FOUND)));
+
+        assertNull(checksums.put(NOT_FOUND, archives));
+        assertSame(archives, checksums.get(NOT_FOUND));
+        container.getPendingWrites().join();
+        assertSame(archives, delegate.getCache(PrefetchingCacheContainer.CHECKSUMS_CACHE_NAME).get(NOT_FOUND));
+        assertEquals(2, delegate.getReads(PrefetchingCacheContainer.CHECKSUMS_CACHE_NAME));
+
+        // The other caches are used as usual
+        container.getCache("files").put("a", "b");
+        assertEquals("b", delegate.getCache("files").get("a"));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.infinispan.commons.api.BasicCache;
+import org.jboss.pnc.api.deliverablesanalyzer.dto.FinderResult;
+import org.jboss.pnc.build.finder.core.BuildConfig;
+import org.jboss.pnc.build.finder.core.BuildSystem;
+import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.koji.KojiBuild;
+import org.jboss.pnc.build.finder.koji.KojiLocalArchive;
+import org.jboss.pnc.deliverablesanalyzer.model.Attributions;
+import org.jboss.pnc.deliverablesanalyzer.utils.ConfigUtils;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
+
+class ResultCacheTest {
+    private static final String SHA256 = "a".repeat(64);
+
+    private final Map<Object, Object> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the attributions of a file with the MD5 checksum found in a Koji build.
+     */
+    static Attributions attributions(String md5) {
+        KojiBuildInfo buildInfo = new KojiBuildInfo();
+        buildInfo.setId(42);
+        buildInfo.setName("commons-io");
+        buildInfo.setVersion("2.11.0.redhat_00001");
+        buildInfo.setRelease("1");
+        KojiArchiveInfo archiveInfo = new KojiArchiveInfo();
+        archiveInfo.setArchiveId(70);
+        archiveInfo.setBuildId(42);
+        KojiLocalArchive archive = new KojiLocalArchive();
+        archive.setArchive(archiveInfo);
+        archive.getChecksums().add(new Checksum(ChecksumType.md5, md5, "product.zip!/x.jar", 1L));
+        KojiBuild build = new KojiBuild(buildInfo);
+        build.getArchives().add(archive);
+
+        return Attributions.fromBuilds(Map.of(new BuildSystemInteger(42, BuildSystem.koji), build));
+    }
+
+    private ResultCache createResultCache() {
+        BasicCache<?, ?> cache = (BasicCache<?, ?>) Proxy.newProxyInstance(
+                BasicCache.class.getClassLoader(),
+                new Class<?>[] { BasicCache.class },
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "get" -> entries.get(args[0]);
+                    case "put" -> entries.put(args[0], args[1]);
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+
+        ResultCache resultCache = new ResultCache();
+        resultCache.config = new BuildConfig();
+        resultCache.objectMapper = new ObjectMapper();
+        resultCache.cacheStartup = new CacheStartup() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> BasicCache<K, V> getCache(String name) {
+                return (BasicCache<K, V>) cache;
+            }
+        };
+        resultCache.enabled = true;
+        resultCache.init();
+
+        return resultCache;
+    }
+
+    @Test
+    void resultOfIdenticalContentHasTheRequestedUrl() throws Exception {
+        ResultCache resultCache = createResultCache();
+
+        URL first = URI.create("https://example.com/first/product.zip").toURL();
+        URL second = URI.create("https://example.com/second/product.zip").toURL();
+
+        // Both URLs have the same content, so they have the same key
+        String key = SHA256 + "-" + ConfigUtils.fingerprint(resultCache.config);
+
+        resultCache.put(key, FinderResult.builder().id("1").url(first).builds(Set.of()).build(), new Attributions());
+        FinderResult result = resultCache.get(key, "2", second).orElseThrow();
+
+        assertEquals("2", result.getId());
+        assertEquals(second, result.getUrl());
+        assertEquals(first, resultCache.get(key, "3", first).orElseThrow().getUrl());
+    }
+
+    @Test
+    void streamedDigestIsKeyOfContent() throws Exception {
+        ResultCache resultCache = createResultCache();
+
+        assertTrue(resultCache.newStreamDigest().isEmpty());
+
+        resultCache.streamDigest = true;
+        MessageDigest digest = resultCache.newStreamDigest().orElseThrow();
+        digest.update("content".getBytes(UTF_8));
+        String sha256 = HexFormat.of()
+                .formatHex(MessageDigest.getInstance("SHA-256").digest("content".getBytes(UTF_8)));
+
+        assertEquals(
+                sha256 + "-" + ConfigUtils.fingerprint(resultCache.config),
+                resultCache.getKey(digest, resultCache.config).orElseThrow());
+    }
+
+    @Test
+    void attributionsAreCachedNextToTheResult() throws Exception {
+        ResultCache resultCache = createResultCache();
+        URL url = URI.create("https://example.com/product.zip").toURL();
+        FinderResult result = FinderResult.builder().id("1").url(url).builds(Set.of()).build();
+
+        resultCache.put("a", result, new Attributions());
+
+        assertEquals(1, entries.size());
+        assertEquals(0, resultCache.getAttributions("a").size());
+
+        resultCache.put("b", result, attributions("aa"));
+
+        assertTrue(
+                resultCache.getAttributions("b")
+                        .contains(new Checksum(ChecksumType.md5, "aa", "other.zip!/x.jar", 1L)));
+    }
+}
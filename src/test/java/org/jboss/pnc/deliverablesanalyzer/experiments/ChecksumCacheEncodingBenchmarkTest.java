@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer.experiments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+
+import org.infinispan.protostream.ImmutableSerializationContext;
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.jboss.pnc.build.finder.protobuf.ListKojiArchiveInfoProtobufWrapper;
+import org.jboss.pnc.build.finder.protobuf.ProtobufSerializerImpl;
+import org.jboss.pnc.deliverablesanalyzer.ChecksumKey;
+import org.jboss.pnc.deliverablesanalyzer.CompactArchives;
+import org.jboss.pnc.deliverablesanalyzer.CompactChecksumSerializer;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBtype;
+import com.redhat.red.build.koji.model.xmlrpc.KojiChecksumType;
+
+/**
+ * Compares the size and the cost of marshalling the entries of a {@code checksums-md5} cache in the encoding of
+ * Build Finder, with the checksum as key and the archives as JSON, and in the compact encoding. The size of a
+ * marshalled entry is what the cache store writes for it, besides a fixed header.
+ */
+@Disabled
+class ChecksumCacheEncodingBenchmarkTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChecksumCacheEncodingBenchmarkTest.class);
+
+    private static final int ENTRIES = 100_000;
+
+    private static final int ROUNDS = 5;
+
+    private record Entry(Object key, Object value) {
+    }
+
+    private static KojiArchiveInfo archive(SplittableRandom random, String checksum) {
+        int id = random.nextInt(1_000_000, 10_000_000);
+        KojiArchiveInfo archive = new KojiArchiveInfo();
+        archive.setArchiveId(id);
+        archive.setBuildId(id / 10);
+        archive.setFilename("artifact-" + id + "-1.0.0.redhat-00001.jar");
+        archive.setSize(random.nextInt(1_000, 10_000_000));
+        archive.setChecksum(checksum);
+        archive.setChecksumType(KojiChecksumType.md5);
+        archive.setExtension("jar");
+        archive.setTypeId(1);
+        archive.setTypeExtensions("jar");
+        archive.setTypeDescription("Jar file");
+        archive.setBuildType(KojiBtype.maven);
+        archive.setBuildTypeId(2);
+        archive.setGroupId("org.example.group" + id % 100);
+        archive.setArtifactId("artifact-" + id);
+        archive.setVersion("1.0.0.redhat-00001");
+        archive.setBuildrootId(id / 5);
+        archive.setMetadataOnly(false);
+        archive.setExtra(Map.of());
+        return archive;
+    }
+
+    private static List<Entry> marshal(
+            ImmutableSerializationContext serializationContext,
+            String[] checksums,
+            Function<String, Object> key,
+            Function<Integer, Object> value) throws IOException {
+        List<Entry> entries = new ArrayList<>(checksums.length);
+
+        for (int i = 0; i < checksums.length; i++) {
+            entries.add(
+                    new Entry(
+                            ProtobufUtil.toWrappedByteArray(serializationContext, key.apply(checksums[i])),
+                            ProtobufUtil.toWrappedByteArray(serializationContext, value.apply(i))));
+        }
+
+        return entries;
+    }
+
+    private static void measure(
+            String encoding,
+            ImmutableSerializationContext serializationContext,
+            String[] checksums,
+            Function<String, Object> key,
+            Function<Integer, Object> value) throws IOException {
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            List<Entry> entries = marshal(serializationContext, checksums, key, value);
+            long writes = System.nanoTime() - start;
+            long keyBytes = 0L;
+            long valueBytes = 0L;
+            start = System.nanoTime();
+
+            for (Entry entry : entries) {
+                keyBytes += ((byte[]) entry.key()).length;
+                valueBytes += ((byte[]) entry.value()).length;
+                ProtobufUtil.fromWrappedByteArray(serializationContext, (byte[]) entry.key());
+                ProtobufUtil.fromWrappedByteArray(serializationContext, (byte[]) entry.value());
+            }
+
+            long reads = System.nanoTime() - start;
+
+            assertEquals(ENTRIES, entries.size());
+            LOGGER.info(
+                    "{} round {}: {} key bytes, {} value bytes per entry, {} ns per write, {} ns per read",
+                    encoding,
+                    round,
+                    (double) keyBytes / ENTRIES,
+                    (double) valueBytes / ENTRIES,
+                    (double) writes / ENTRIES,
+                    (double) reads / ENTRIES);
+        }
+    }
+
+    @Test
+    void testEncodings() throws IOException {
+        SerializationContext serializationContext = ProtobufUtil.newSerializationContext();
+        ProtobufSerializerImpl serializer = new ProtobufSerializerImpl();
+        serializer.registerSchema(serializationContext);
+        serializer.registerMarshallers(serializationContext);
+        CompactChecksumSerializer compactSerializer = new CompactChecksumSerializer();
+        compactSerializer.registerSchema(serializationContext);
+        compactSerializer.registerMarshallers(serializationContext);
+
+        SplittableRandom random = new SplittableRandom(42L);
+        HexFormat hex = HexFormat.of();
+        byte[] digest = new byte[16];
+        String[] checksums = new String[ENTRIES];
+        List<List<KojiArchiveInfo>> archives = new ArrayList<>(ENTRIES);
+
+        for (int i = 0; i < ENTRIES; i++) {
+            random.nextBytes(digest);
+            checksums[i] = hex.formatHex(digest);
+            // Most files are in one build, a few in several ones
+            int count = random.nextInt(10) == 0 ? 2 : 1;
+            List<KojiArchiveInfo> list = new ArrayList<>(count);
+
+            for (int j = 0; j < count; j++) {
+                list.add(archive(random, checksums[i]));
+            }
+
+            archives.add(list);
+        }
+
+        measure(
+                "JSON",
+                serializationContext,
+                checksums,
+                checksum -> checksum,
+                i -> new ListKojiArchiveInfoProtobufWrapper(archives.get(i)));
+        measure(
+                "Compact",
+                serializationContext,
+                checksums,
+                ChecksumKey::of,
+                i -> new CompactArchives(checksums[i], archives.get(i)));
+    }
+}
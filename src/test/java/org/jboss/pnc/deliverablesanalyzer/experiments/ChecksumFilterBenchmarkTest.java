@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer.experiments;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.SplittableRandom;
+
+import org.jboss.pnc.deliverablesanalyzer.ChecksumFilter;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the cost of a lookup in a {@link ChecksumFilter} of 50 million checksums, and its false positive rate. The
+ * filter takes about 60 MB of heap at a 1% false positive rate.
+ */
+@Disabled
+class ChecksumFilterBenchmarkTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChecksumFilterBenchmarkTest.class);
+
+    private static final long ENTRIES = 50_000_000L;
+
+    private static final double FALSE_POSITIVE_RATE = 0.01d;
+
+    private static final int LOOKUPS = 2_000_000;
+
+    private static final int ROUNDS = 5;
+
+    private static String[] randomMd5s(SplittableRandom random, int count) {
+        HexFormat hex = HexFormat.of();
+        String[] checksums = new String[count];
+        byte[] digest = new byte[16];
+
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(digest);
+            checksums[i] = hex.formatHex(digest);
+        }
+
+        return checksums;
+    }
+
+    @Test
+    void testLookups() {
+        ChecksumFilter filter = ChecksumFilter.create(ENTRIES, FALSE_POSITIVE_RATE, Instant.now());
+        SplittableRandom random = new SplittableRandom(42L);
+        HexFormat hex = HexFormat.of();
+        byte[] digest = new byte[16];
+        long start = System.nanoTime();
+
+        for (long i = 0; i < ENTRIES; i++) {
+            random.nextBytes(digest);
+            filter.add(hex.formatHex(digest));
+        }
+
+        LOGGER.info(
+                "Added {} checksums to {} bits with {} hashes in {} ms",
+                ENTRIES,
+                filter.getNumBits(),
+                filter.getNumHashes(),
+                (System.nanoTime() - start) / 1_000_000L);
+
+        // The checksums which were not added are a different sequence of the same generator
+        String[] unknown = randomMd5s(new SplittableRandom(-42L), LOOKUPS);
+        long falsePositives = 0L;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            falsePositives = 0L;
+            start = System.nanoTime();
+
+            for (String checksum : unknown) {
+                if (filter.mightContain(checksum)) {
+                    falsePositives++;
+                }
+            }
+
+            long elapsed = System.nanoTime() - start;
+
+            LOGGER.info("Round {}: {} ns per lookup", round, (double) elapsed / LOOKUPS);
+        }
+
+        double rate = (double) falsePositives / LOOKUPS;
+
+        LOGGER.info("False positive rate with {} checksums: {}", ENTRIES, rate);
+        assertTrue(rate < FALSE_POSITIVE_RATE * 1.2d, "False positive rate " + rate + " is too high");
+    }
+}
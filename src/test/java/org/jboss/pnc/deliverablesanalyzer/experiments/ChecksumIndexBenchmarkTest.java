@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer.experiments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.jboss.pnc.build.finder.core.BuildSystem;
+import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.deliverablesanalyzer.ChecksumIndex;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the cost of a lookup in a memory-mapped {@link ChecksumIndex}, for checksums which are in the index and
+ * for checksums which are not.
+ */
+@Disabled
+class ChecksumIndexBenchmarkTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChecksumIndexBenchmarkTest.class);
+
+    private static final int ENTRIES = 5_000_000;
+
+    private static final int LOOKUPS = 1_000_000;
+
+    private static final int ROUNDS = 5;
+
+    @TempDir
+    Path tempDir;
+
+    private static String[] randomMd5s(SplittableRandom random, int count) {
+        HexFormat hex = HexFormat.of();
+        String[] checksums = new String[count];
+        byte[] digest = new byte[16];
+
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(digest);
+            checksums[i] = hex.formatHex(digest);
+        }
+
+        return checksums;
+    }
+
+    @Test
+    void testLookups() throws IOException {
+        String[] known = randomMd5s(new SplittableRandom(42L), ENTRIES);
+        List<ChecksumIndex.Entry> entries = new ArrayList<>(ENTRIES);
+
+        for (int i = 0; i < ENTRIES; i++) {
+            entries.add(new ChecksumIndex.Entry(known[i], new BuildSystemInteger(i, BuildSystem.koji), i));
+        }
+
+        Path file = tempDir.resolve("checksums.index");
+        ChecksumIndex.write(file, entries, Instant.now());
+        entries = null;
+
+        ChecksumIndex index = ChecksumIndex.open(file);
+        String[] unknown = randomMd5s(new SplittableRandom(-42L), LOOKUPS);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            int found = 0;
+            long start = System.nanoTime();
+
+            for (int i = 0; i < LOOKUPS; i++) {
+                found += index.lookup(known[i * (ENTRIES / LOOKUPS)]).size();
+            }
+
+            long hits = System.nanoTime() - start;
+            start = System.nanoTime();
+
+            for (String checksum : unknown) {
+                found += index.lookup(checksum).size();
+            }
+
+            long misses = System.nanoTime() - start;
+
+            assertEquals(LOOKUPS, found);
+            LOGGER.info(
+                    "Round {}: {} ns per hit, {} ns per miss",
+                    round,
+                    (double) hits / LOOKUPS,
+                    (double) misses / LOOKUPS);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer.experiments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.microprofile.context.ManagedExecutor;
+import org.eclipse.microprofile.context.ThreadContext;
+import org.jboss.pnc.deliverablesanalyzer.AnalysisExecutor;
+import org.jboss.pnc.deliverablesanalyzer.AnalysisExecutor.ExecutionMode;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Compares the platform-thread and the virtual-thread execution modes of {@link AnalysisExecutor} with many concurrent
+ * analyses, each of which is blocked on a download, a Koji call and a PNC call. The analyses are submitted like the
+ * analyses of the service, so the thread context and the MDC are propagated to each of them.
+ */
+@Disabled
+class ExecutionModeBenchmarkTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecutionModeBenchmarkTest.class);
+
+    private static final String MDC_KEY = "analysisId";
+
+    private static final int ANALYSES = 2000;
+
+    private static final int PLATFORM_THREADS = 200;
+
+    private static final long DOWNLOAD_LATENCY_MILLIS = 50L;
+
+    private static final long KOJI_LATENCY_MILLIS = 20L;
+
+    private static final long PNC_LATENCY_MILLIS = 10L;
+
+    @Test
+    void testPlatformThreads() throws Exception {
+        run(ExecutionMode.PLATFORM);
+    }
+
+    @Test
+    void testVirtualThreads() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "Virtual threads are not supported by this Java version");
+
+        run(ExecutionMode.VIRTUAL);
+    }
+
+    private static void run(ExecutionMode mode) {
+        ManagedExecutor managedExecutor = ManagedExecutor.builder().maxAsync(PLATFORM_THREADS).build();
+        AnalysisExecutor executor = new AnalysisExecutor(managedExecutor, ThreadContext.builder().build(), mode);
+        executor.init();
+
+        try {
+            // Warm up the executor first
+            submitAll(executor, PLATFORM_THREADS);
+
+            long timeBefore = System.nanoTime();
+            int done = submitAll(executor, ANALYSES);
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - timeBefore);
+
+            assertEquals(ANALYSES, done);
+
+            LOGGER.info(
+                    "{} analyses on {} threads took {}ms ({} analyses/s)",
+                    ANALYSES,
+                    mode,
+                    elapsed,
+                    ANALYSES * 1000L / Math.max(1L, elapsed));
+        } finally {
+            executor.destroy();
+            managedExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Submits the analyses, each with its own id in the MDC, and returns the number of analyses which ran with their id
+     * in the MDC, on a thread other than the submitting thread.
+     */
+    private static int submitAll(AnalysisExecutor executor, int count) {
+        Thread submitter = Thread.currentThread();
+        AtomicInteger done = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            String analysisId = Integer.toString(i);
+
+            try (MDC.MDCCloseable mdc = MDC.putCloseable(MDC_KEY, analysisId)) {
+                futures.add(executor.runAsync(() -> {
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(DOWNLOAD_LATENCY_MILLIS);
+                        TimeUnit.MILLISECONDS.sleep(KOJI_LATENCY_MILLIS);
+                        TimeUnit.MILLISECONDS.sleep(PNC_LATENCY_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+
+                    assertNotEquals(submitter, Thread.currentThread());
+
+                    if (analysisId.equals(MDC.get(MDC_KEY))) {
+                        done.incrementAndGet();
+                    }
+                }));
+            }
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+        return done.get();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.pnc.build.finder.core.BuildSystem;
+import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.koji.KojiBuild;
+import org.jboss.pnc.build.finder.koji.KojiLocalArchive;
+import org.junit.jupiter.api.Test;
+
+import com.redhat.red.build.koji.KojiClientException;
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
+
+class AnalysisLookupsTest {
+    private static Checksum md5(String value, String filename) {
+        return new Checksum(ChecksumType.md5, value, filename, 1L);
+    }
+
+    private static List<Checksum> claim(AnalysisLookups lookups, AnalysisLookups.Claim claim, Checksum... checksums) {
+        List<Checksum> lookedUp = new ArrayList<>();
+
+        for (Checksum checksum : checksums) {
+            if (lookups.claim(claim, checksum, null)) {
+                lookedUp.add(checksum);
+            }
+        }
+
+        return lookedUp;
+    }
+
+    @Test
+    void eachChecksumIsClaimedOnce() {
+        AnalysisLookups lookups = new AnalysisLookups(null);
+        AnalysisLookups.Claim first = lookups.newClaim();
+        AnalysisLookups.Claim second = lookups.newClaim();
+
+        List<Checksum> firstLookedUp = claim(
+                lookups,
+                first,
+                md5("aa", "a.zip!/x.jar"),
+                md5("aa", "a.zip!/y.jar"),
+                md5("bb", "a.zip"),
+                new Checksum());
+        List<Checksum> secondLookedUp = claim(lookups, second, md5("aa", "b.zip!/x.jar"), md5("cc", "b.zip"));
+
+        assertEquals(4, firstLookedUp.size());
+        assertNull(firstLookedUp.get(3).getValue());
+        assertTrue(first.getShared().isEmpty());
+        assertEquals(List.of(md5("cc", "b.zip")), secondLookedUp);
+        assertEquals(List.of(md5("aa", "b.zip!/x.jar")), second.getShared());
+    }
+
+    @Test
+    void sharedChecksumNotFoundByOwnerIsNotFound() throws KojiClientException {
+        AnalysisLookups lookups = new AnalysisLookups(null);
+        AnalysisLookups.Claim firstClaim = lookups.newClaim();
+        AnalysisLookups.Claim secondClaim = lookups.newClaim();
+        claim(lookups, firstClaim, md5("aa", "a.zip!/x.jar"));
+        claim(lookups, secondClaim, md5("aa", "b.zip!/x.jar"));
+        Map<BuildSystemInteger, KojiBuild> builds = new HashMap<>();
+
+        lookups.complete(firstClaim, new HashMap<>(), Map.of(), Map.of());
+        lookups.addShared(secondClaim, builds, Map.of(), Map.of(), null);
+
+        List<KojiLocalArchive> archives = builds.get(new BuildSystemInteger(0)).getArchives();
+        assertEquals(1, archives.size());
+        assertEquals(Set.of("b.zip!/x.jar"), archives.get(0).getFilenames());
+        assertEquals("aa", archives.get(0).getArchive().getChecksum());
+    }
+
+    @Test
+    void skippedChecksumIsNotFound() {
+        AnalysisLookups lookups = new AnalysisLookups(null);
+        AnalysisLookups.Claim claim = lookups.newClaim();
+        Map<BuildSystemInteger, KojiBuild> builds = new HashMap<>();
+
+        lookups.skipNotFound(claim, md5("aa", "a.zip!/x.jar"), null);
+        lookups.complete(claim, builds, Map.of(), Map.of());
+
+        List<KojiLocalArchive> archives = builds.get(new BuildSystemInteger(0)).getArchives();
+        assertEquals(List.of(md5("aa", "a.zip!/x.jar")), claim.getNotFound());
+        assertEquals(1, archives.size());
+        assertEquals(Set.of("a.zip!/x.jar"), archives.get(0).getFilenames());
+        assertEquals("aa", archives.get(0).getArchive().getChecksum());
+        assertEquals(0, lookups.getAttributions().size());
+    }
+
+    @Test
+    void resolvedChecksumIsAddedToItsBuild() {
+        AnalysisLookups lookups = new AnalysisLookups(null);
+        AnalysisLookups.Claim claim = lookups.newClaim();
+        Map<BuildSystemInteger, KojiBuild> builds = new HashMap<>();
+        BuildSystemInteger buildKey = new BuildSystemInteger(7, BuildSystem.koji);
+        KojiArchiveInfo archiveInfo = new KojiArchiveInfo();
+        archiveInfo.setArchiveId(70);
+        KojiLocalArchive archive = new KojiLocalArchive();
+        archive.setArchive(archiveInfo);
+
+        lookups.resolve(
+                claim,
+                md5("aa", "a.zip!/x.jar"),
+                new Attributions.Attribution(buildKey, new KojiBuild(new KojiBuildInfo()), archive),
+                null);
+        lookups.complete(claim, builds, Map.of("a.zip!/x.jar", List.of(md5("aa", "a.zip!/x.jar"))), Map.of());
+
+        List<KojiLocalArchive> archives = builds.get(buildKey).getArchives();
+        assertEquals(1, archives.size());
+        assertEquals(Set.of("a.zip!/x.jar"), archives.get(0).getFilenames());
+        assertEquals(70, archives.get(0).getArchive().getArchiveId());
+        assertEquals(1, lookups.getAttributions().size());
+    }
+
+    @Test
+    void failedOwnerFailsSharedChecksums() {
+        AnalysisLookups lookups = new AnalysisLookups(null);
+        AnalysisLookups.Claim firstClaim = lookups.newClaim();
+        AnalysisLookups.Claim secondClaim = lookups.newClaim();
+        claim(lookups, firstClaim, md5("aa", "a.zip!/x.jar"));
+        claim(lookups, secondClaim, md5("aa", "b.zip!/x.jar"));
+
+        lookups.fail(firstClaim, new IllegalStateException("Koji is down"));
+
+        KojiClientException e = assertThrows(
+                KojiClientException.class,
+                () -> lookups.addShared(secondClaim, new HashMap<>(), Map.of(), Map.of(), null));
+        assertEquals("Koji is down", e.getCause().getMessage());
+    }
+}
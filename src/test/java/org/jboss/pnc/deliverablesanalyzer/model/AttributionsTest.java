@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2019 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.deliverablesanalyzer.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.pnc.build.finder.core.BuildSystem;
+import org.jboss.pnc.build.finder.core.BuildSystemInteger;
+import org.jboss.pnc.build.finder.core.Checksum;
+import org.jboss.pnc.build.finder.core.ChecksumType;
+import org.jboss.pnc.build.finder.koji.KojiBuild;
+import org.jboss.pnc.build.finder.koji.KojiJSONUtils;
+import org.jboss.pnc.build.finder.koji.KojiLocalArchive;
+import org.jboss.pnc.deliverablesanalyzer.AttributionsCache;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
+
+class AttributionsTest {
+    private static Checksum md5(String value, String filename, long fileSize) {
+        return new Checksum(ChecksumType.md5, value, filename, fileSize);
+    }
+
+    @Test
+    void attributionsAreRestoredFromTheirJson() throws JsonProcessingException {
+        BuildSystemInteger buildKey = new BuildSystemInteger(42, BuildSystem.koji);
+        KojiBuildInfo buildInfo = new KojiBuildInfo();
+        buildInfo.setId(42);
+        buildInfo.setName("commons-io");
+        buildInfo.setVersion("2.11.0.redhat_00001");
+        buildInfo.setRelease("1");
+        KojiArchiveInfo archiveInfo = new KojiArchiveInfo();
+        archiveInfo.setArchiveId(70);
+        archiveInfo.setBuildId(42);
+        KojiLocalArchive archive = new KojiLocalArchive();
+        archive.setArchive(archiveInfo);
+        archive.getChecksums().add(md5("aa", "a.zip!/x.jar", 1L));
+        archive.getChecksums().add(md5("bb", "a.zip!/y.jar", 1L));
+        KojiBuild build = new KojiBuild(buildInfo);
+        build.getArchives().add(archive);
+        Attributions attributions = new Attributions();
+        attributions.record(Map.of(buildKey, build));
+
+        AttributionsCache.Builds builds = new AttributionsCache.Builds();
+        builds.builds = attributions.toBuilds();
+        String json = KojiJSONUtils.writeValueAsString(builds);
+        Attributions restored = Attributions
+                .fromBuilds(KojiJSONUtils.readValue(json, AttributionsCache.Builds.class).builds);
+
+        assertEquals(2, restored.size());
+        assertTrue(restored.contains(md5("aa", "b.zip!/x.jar", 1L)));
+
+        Map<BuildSystemInteger, KojiBuild> found = new HashMap<>();
+        restored.addTo(
+                found,
+                List.of(md5("aa", "b.zip!/x.jar", 1L), md5("bb", "b.zip!/y.jar", 1L)),
+                Map.of(),
+                Map.of());
+
+        List<KojiLocalArchive> archives = found.get(buildKey).getArchives();
+        assertEquals(1, archives.size());
+        assertEquals(70, archives.get(0).getArchive().getArchiveId());
+        assertEquals(Set.of("b.zip!/x.jar", "b.zip!/y.jar"), archives.get(0).getFilenames());
+    }
+
+    @Test
+    void filesNotFoundAreAddedOnceToBuildZero() {
+        Map<BuildSystemInteger, KojiBuild> builds = new HashMap<>();
+
+        new Attributions().addTo(
+                builds,
+                List.of(
+                        md5("aa", "a.zip!/x.iso", 3L * 1024L * 1024L * 1024L),
+                        md5("bb", "a.zip!/y.jar", 1L),
+                        md5("aa", "a.zip!/z.iso", 3L * 1024L * 1024L * 1024L)),
+                Map.of(),
+                Map.of());
+
+        List<KojiLocalArchive> archives = builds.get(new BuildSystemInteger(0, BuildSystem.none)).getArchives();
+        assertEquals(2, archives.size());
+        assertEquals(Set.of("a.zip!/x.iso", "a.zip!/z.iso"), archives.get(0).getFilenames());
+        assertEquals(Integer.MAX_VALUE, archives.get(0).getArchive().getSize());
+        assertEquals(Set.of("a.zip!/y.jar"), archives.get(1).getFilenames());
+        assertEquals(-2, archives.get(1).getArchive().getArchiveId());
+    }
+}
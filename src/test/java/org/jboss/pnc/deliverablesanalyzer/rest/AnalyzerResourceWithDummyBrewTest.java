@@ -158,8 +158,9 @@ class AnalyzerResourceWithDummyBrewTest extends AbstractAnalyzeResourceTest {
         WIREMOCK.stubFor(post(urlEqualTo(CALLBACK_RELATIVE_PATH)).willReturn(aResponse().withStatus(HTTP_OK)));
 
         // when
-        try (jakarta.ws.rs.core.Response response = analyzeResource
-                .analyze(new AnalyzePayload("1234", List.of("xxyy:/malformedUrl.zip"), null, callbackRequest, null))) {
+        try (jakarta.ws.rs.core.Response response = analyzeResource.analyze(
+                new AnalyzePayload("1234", List.of("xxyy:/malformedUrl.zip"), null, callbackRequest, null),
+                null)) {
             assertEquals(jakarta.ws.rs.core.Response.Status.OK.getStatusCode(), response.getStatus());
         }
 